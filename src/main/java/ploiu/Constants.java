@@ -3,6 +3,14 @@ package ploiu;
 public final class Constants {
     public static final String CACHE_DIR = System.getProperty("user.home") + "/.file-server-cache-dir";
     public static final int LIST_IMAGE_SIZE = 100;
+    /**
+     * how many search results are added to the file pane at a time while a search is still streaming in
+     */
+    public static final int SEARCH_CHUNK_SIZE = 50;
+    /**
+     * the longest a chunk of search results waits to fill up before it's added anyway, so a slow trickle of results still shows up
+     */
+    public static final long SEARCH_CHUNK_MILLIS = 100;
 
     private Constants() {
     }
@@ -5,10 +5,17 @@ import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
 import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
+import org.jetbrains.annotations.Nullable;
+import ploiu.http.BulkTransfer;
+import ploiu.http.NoRetry;
 import ploiu.model.FileApi;
+import ploiu.model.StartUploadRequest;
 import ploiu.model.UpdateFileRequest;
+import ploiu.model.UploadSession;
 import ploiu.search.Attribute;
+import retrofit2.Response;
 import retrofit2.http.*;
 
 import java.util.Collection;
@@ -21,16 +28,59 @@ public interface FileClient {
     @GET("/files/metadata")
     Single<Collection<FileApi>> search(@Query("search") String search, @Query("tags") Collection<String> tags, @Query("attributes") Collection<Attribute> attributes);
 
+    /**
+     * same as {@link #search(String, Collection, Collection)}, but the body isn't read up front so results can be parsed as they arrive
+     */
+    @Streaming
+    @GET("/files/metadata")
+    Single<ResponseBody> searchStreaming(@Query("search") String search, @Query("tags") Collection<String> tags, @Query("attributes") Collection<Attribute> attributes);
+
     @Multipart
     @POST("/files")
+    @BulkTransfer(BulkTransfer.Direction.UPLOAD)
     Single<FileApi> createFile(@Part MultipartBody.Part file, @Part MultipartBody.Part extension, @Part MultipartBody.Part folderId);
 
+    /**
+     * starts a chunked upload. Only available if the server reports {@link ploiu.model.ApiInfo#CHUNKED_UPLOAD}
+     */
+    @POST("/files/uploads")
+    Single<UploadSession> startUpload(@Body StartUploadRequest request);
+
+    /**
+     * checks how much of a chunked upload the server has, so an interrupted upload knows where to pick back up
+     */
+    @GET("/files/uploads/{id}")
+    Single<UploadSession> getUpload(@Path("id") String id);
+
+    /**
+     * sends the bytes of a chunked upload starting at {@code offset}, which must match {@link UploadSession#received()}.
+     * Not retried here, since the server may have kept part of a failed chunk. {@link ploiu.transfer.ChunkedUploader} asks where
+     * to carry on from instead
+     */
+    @PUT("/files/uploads/{id}")
+    @BulkTransfer(BulkTransfer.Direction.UPLOAD)
+    @NoRetry
+    Single<UploadSession> uploadChunk(@Path("id") String id, @Header("Upload-Offset") long offset, @Body RequestBody chunk);
+
+    /**
+     * turns a chunked upload that has every byte into a real file
+     */
+    @POST("/files/uploads/{id}/complete")
+    Single<FileApi> completeUpload(@Path("id") String id);
+
     @GET("/files/metadata/{id}")
     Maybe<FileApi> getMetadata(@Path("id") long id);
 
+    /**
+     * @param range   a {@code Range} header to only download part of the file, or null for all of it
+     * @param ifRange an ETag or Last-Modified date; if the file doesn't match, the server ignores {@code range} and sends all of it
+     */
     @Streaming
     @GET("/files/{id}")
-    Single<ResponseBody> getFileContents(@Path("id") long id);
+    // byte offsets for resuming have to be offsets into the file itself, not a compressed copy of it
+    @Headers("Accept-Encoding: identity")
+    @BulkTransfer(BulkTransfer.Direction.DOWNLOAD)
+    Single<Response<ResponseBody>> getFileContents(@Path("id") long id, @Nullable @Header("Range") String range, @Nullable @Header("If-Range") String ifRange);
 
     @PUT("/files")
     Single<FileApi> updateFile(@Body UpdateFileRequest file);
@@ -1,11 +1,13 @@
 package ploiu.client;
 
 import io.reactivex.rxjava3.core.Completable;
-import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
 import okhttp3.ResponseBody;
+import org.jetbrains.annotations.Nullable;
+import ploiu.http.BulkTransfer;
 import ploiu.model.FolderApi;
 import ploiu.model.FolderRequest;
+import retrofit2.Response;
 import retrofit2.http.*;
 
 import java.util.Map;
@@ -14,9 +16,14 @@ public interface FolderClient {
     @GET("/folders/metadata/{id}")
     Single<FolderApi> getFolder(@Path("id") long id);
 
+    /**
+     * downloads the folder as a tar archive. {@code range} and {@code ifRange} work the same as {@link FileClient#getFileContents(long, String, String)}
+     */
     @Streaming
     @GET("/folders/{id}")
-    Observable<ResponseBody> downloadFolder(@Path("id") long id);
+    @Headers("Accept-Encoding: identity")
+    @BulkTransfer(BulkTransfer.Direction.DOWNLOAD)
+    Single<Response<ResponseBody>> downloadFolder(@Path("id") long id, @Nullable @Header("Range") String range, @Nullable @Header("If-Range") String ifRange);
 
     @GET("/folders/preview/{id}")
     Single<Map<Long, byte[]>> getPreviewsForFolder(@Path("id") long id);
@@ -0,0 +1,31 @@
+package ploiu.config;
+
+import lombok.Getter;
+
+import java.util.Properties;
+
+import static ploiu.config.PropertiesLoader.getLong;
+
+/**
+ * limits for what's kept on disk between runs. Every property is optional
+ */
+@Getter
+public class CacheConfig {
+    /**
+     * how many bytes of opened files to keep around so they can be opened again without downloading them
+     */
+    private final long fileCacheMaxBytes;
+    /**
+     * how much memory decoded file previews can take up
+     */
+    private final long previewCacheMaxBytes;
+
+    public CacheConfig() {
+        this(PropertiesLoader.load());
+    }
+
+    public CacheConfig(Properties props) {
+        this.fileCacheMaxBytes = getLong(props, "cache.files.max-bytes", 2L * 1024 * 1024 * 1024);
+        this.previewCacheMaxBytes = getLong(props, "cache.previews.max-bytes", 128L * 1024 * 1024);
+    }
+}
@@ -0,0 +1,92 @@
+package ploiu.config;
+
+import lombok.Getter;
+
+import java.util.Properties;
+
+import static ploiu.config.PropertiesLoader.getBoolean;
+import static ploiu.config.PropertiesLoader.getInt;
+import static ploiu.config.PropertiesLoader.getLong;
+
+/**
+ * tuning for the shared http transport. Every property is optional
+ */
+@Getter
+public class HttpConfig {
+    /**
+     * how many idle connections to keep around for re-use
+     */
+    private final int maxIdleConnections;
+    private final long keepAliveSeconds;
+    /**
+     * max number of calls executing at once, across every host
+     */
+    private final int maxRequests;
+    private final int maxRequestsPerHost;
+    private final boolean http2Enabled;
+    /**
+     * upper bound for the folder / file metadata kept around for conditional requests
+     */
+    private final long metadataCacheMaxBytes;
+    /**
+     * how long a {@code /api/disk} response is re-used for
+     */
+    private final long storageInfoTtlMillis;
+    /**
+     * how many times a request that's safe to repeat is tried before giving up (including the first try)
+     */
+    private final int retryMaxAttempts;
+    private final long retryBaseDelayMillis;
+    private final long retryMaxDelayMillis;
+    /**
+     * how many failed requests in a row it takes to consider the server down
+     */
+    private final int breakerFailureThreshold;
+    /**
+     * how long to fail fast after the server is considered down, before checking if it's back
+     */
+    private final long breakerOpenMillis;
+    /**
+     * whether to ask the server to compress responses
+     */
+    private final boolean compressionEnabled;
+    /**
+     * the most bytes per second all uploads / downloads combined can use. 0 means unlimited
+     */
+    private final long uploadBytesPerSecond;
+    private final long downloadBytesPerSecond;
+    /**
+     * the most bytes per second a single upload / download can use. 0 means unlimited
+     */
+    private final long perTransferUploadBytesPerSecond;
+    private final long perTransferDownloadBytesPerSecond;
+    /**
+     * where to write the per-endpoint latency report when the app exits. Nothing is written if this isn't set
+     */
+    private final String latencyReportFile;
+
+    public HttpConfig() {
+        this(PropertiesLoader.load());
+    }
+
+    public HttpConfig(Properties props) {
+        this.maxIdleConnections = getInt(props, "http.pool.max-idle", 8);
+        this.keepAliveSeconds = getLong(props, "http.pool.keep-alive-seconds", 300);
+        this.maxRequests = getInt(props, "http.dispatcher.max-requests", 64);
+        this.maxRequestsPerHost = getInt(props, "http.dispatcher.max-requests-per-host", 16);
+        this.http2Enabled = getBoolean(props, "http.http2.enabled", true);
+        this.metadataCacheMaxBytes = getLong(props, "http.metadata-cache.max-bytes", 32L * 1024 * 1024);
+        this.storageInfoTtlMillis = getLong(props, "http.coalesce.storage-ttl-ms", 5000);
+        this.retryMaxAttempts = getInt(props, "http.retry.max-attempts", 3);
+        this.retryBaseDelayMillis = getLong(props, "http.retry.base-delay-ms", 250);
+        this.retryMaxDelayMillis = getLong(props, "http.retry.max-delay-ms", 5000);
+        this.breakerFailureThreshold = getInt(props, "http.breaker.failure-threshold", 5);
+        this.breakerOpenMillis = getLong(props, "http.breaker.open-ms", 10000);
+        this.compressionEnabled = getBoolean(props, "http.compression.enabled", true);
+        this.uploadBytesPerSecond = getLong(props, "http.bandwidth.upload-bytes-per-second", 0);
+        this.downloadBytesPerSecond = getLong(props, "http.bandwidth.download-bytes-per-second", 0);
+        this.perTransferUploadBytesPerSecond = getLong(props, "http.bandwidth.per-transfer-upload-bytes-per-second", 0);
+        this.perTransferDownloadBytesPerSecond = getLong(props, "http.bandwidth.per-transfer-download-bytes-per-second", 0);
+        this.latencyReportFile = props.getProperty("http.latency.report-file");
+    }
+}
@@ -0,0 +1,44 @@
+package ploiu.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * reads {@code app.properties} for config classes whose settings are all optional.
+ * Unlike {@link ServerConfig} and {@link AuthenticationConfig}, a missing file is not an error; every property falls back to its default
+ */
+@Slf4j
+final class PropertiesLoader {
+    private PropertiesLoader() {
+    }
+
+    static Properties load() {
+        var props = new Properties();
+        try (var inStream = PropertiesLoader.class.getClassLoader().getResourceAsStream("app.properties")) {
+            if (inStream != null) {
+                props.load(inStream);
+            }
+        } catch (IOException e) {
+            log.error("Failed to read properties file", e);
+            throw new RuntimeException(e);
+        }
+        return props;
+    }
+
+    static int getInt(Properties props, String key, int defaultValue) {
+        var value = props.getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    static long getLong(Properties props, String key, long defaultValue) {
+        var value = props.getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    static boolean getBoolean(Properties props, String key, boolean defaultValue) {
+        var value = props.getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+}
@@ -0,0 +1,35 @@
+package ploiu.config;
+
+import lombok.Getter;
+
+import java.util.Properties;
+
+import static ploiu.config.PropertiesLoader.getBoolean;
+import static ploiu.config.PropertiesLoader.getInt;
+
+/**
+ * tuning for how the file / folder views load. Every property is optional
+ */
+@Getter
+public class UiConfig {
+    /**
+     * how far (in pixels) past the top and bottom of the visible area file previews are loaded, so they're usually ready by
+     * the time they're scrolled to
+     */
+    private final int previewPrefetchMargin;
+    /**
+     * if a dropped directory goes into a folder that already has one with the same name, whether its contents are added to that
+     * folder instead of a new one. Files already in the existing folder are skipped, so re-dropping a directory only uploads
+     * what changed. Off by default, since it changes what a drop does
+     */
+    private final boolean mergeDroppedFolders;
+
+    public UiConfig() {
+        this(PropertiesLoader.load());
+    }
+
+    public UiConfig(Properties props) {
+        this.previewPrefetchMargin = getInt(props, "ui.previews.prefetch-margin", 400);
+        this.mergeDroppedFolders = getBoolean(props, "ui.drop.merge-folders", false);
+    }
+}
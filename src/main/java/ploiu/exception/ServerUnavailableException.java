@@ -1,6 +1,12 @@
 package ploiu.exception;
 
-public class ServerUnavailableException extends RuntimeException {
+import java.io.IOException;
+
+/**
+ * thrown when we know the server is down and don't even try to reach it.
+ * This is an {@link IOException} so that okhttp hands it to the caller like any other network failure
+ */
+public class ServerUnavailableException extends IOException {
     public ServerUnavailableException() {
         super("The server is not up");
     }
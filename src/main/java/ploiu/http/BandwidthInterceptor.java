@@ -0,0 +1,226 @@
+package ploiu.http;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import lombok.Getter;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ploiu.config.HttpConfig;
+import ploiu.util.TokenBucket;
+import retrofit2.Invocation;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * limits how fast file contents are uploaded and downloaded, so a big transfer doesn't hog the connection from everyone else.
+ * <p>
+ * Only calls to client methods marked with {@link BulkTransfer} are limited. Each of those goes through 2 token buckets: a global
+ * one shared by every transfer going the same direction, and its own per-transfer one. Every limit can be changed while
+ * transfers are running
+ */
+@Singleton
+public class BandwidthInterceptor implements Interceptor {
+    // small enough that a limited transfer moves smoothly instead of in big bursts
+    private static final long CHUNK_SIZE = 8192;
+
+    @Getter
+    private final TokenBucket uploadBucket;
+    @Getter
+    private final TokenBucket downloadBucket;
+    private volatile long perTransferUploadRate;
+    private volatile long perTransferDownloadRate;
+    private final Set<TokenBucket> activeUploads = ConcurrentHashMap.newKeySet();
+    private final Set<TokenBucket> activeDownloads = ConcurrentHashMap.newKeySet();
+
+    @Inject
+    public BandwidthInterceptor(HttpConfig httpConfig) {
+        this(httpConfig.getUploadBytesPerSecond(), httpConfig.getDownloadBytesPerSecond(), httpConfig.getPerTransferUploadBytesPerSecond(), httpConfig.getPerTransferDownloadBytesPerSecond());
+    }
+
+    BandwidthInterceptor(long uploadRate, long downloadRate, long perTransferUploadRate, long perTransferDownloadRate) {
+        this.uploadBucket = new TokenBucket(uploadRate);
+        this.downloadBucket = new TokenBucket(downloadRate);
+        this.perTransferUploadRate = perTransferUploadRate;
+        this.perTransferDownloadRate = perTransferDownloadRate;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull Chain chain) throws IOException {
+        var request = chain.request();
+        var direction = direction(request.tag(Invocation.class));
+        if (direction == BulkTransfer.Direction.UPLOAD && request.body() != null) {
+            return chain.proceed(request.newBuilder()
+                    .method(request.method(), new LimitedRequestBody(request.body()))
+                    .build());
+        }
+        var response = chain.proceed(request);
+        var body = response.body();
+        if (direction == BulkTransfer.Direction.DOWNLOAD && body != null) {
+            var transfer = new TokenBucket(perTransferDownloadRate);
+            activeDownloads.add(transfer);
+            var limited = new LimitedSource(body.source(), List.of(downloadBucket, transfer), () -> activeDownloads.remove(transfer));
+            return response.newBuilder()
+                    .body(ResponseBody.create(Okio.buffer(limited), body.contentType(), body.contentLength()))
+                    .build();
+        }
+        return response;
+    }
+
+    /**
+     * @param bytesPerSecond the new limit for all uploads combined, 0 or less for unlimited
+     */
+    public void setUploadRate(long bytesPerSecond) {
+        uploadBucket.setRate(bytesPerSecond);
+    }
+
+    /**
+     * @param bytesPerSecond the new limit for all downloads combined, 0 or less for unlimited
+     */
+    public void setDownloadRate(long bytesPerSecond) {
+        downloadBucket.setRate(bytesPerSecond);
+    }
+
+    /**
+     * @param bytesPerSecond the new limit for each upload, including ones already running. 0 or less for unlimited
+     */
+    public void setPerTransferUploadRate(long bytesPerSecond) {
+        perTransferUploadRate = bytesPerSecond;
+        activeUploads.forEach(bucket -> bucket.setRate(bytesPerSecond));
+    }
+
+    /**
+     * @param bytesPerSecond the new limit for each download, including ones already running. 0 or less for unlimited
+     */
+    public void setPerTransferDownloadRate(long bytesPerSecond) {
+        perTransferDownloadRate = bytesPerSecond;
+        activeDownloads.forEach(bucket -> bucket.setRate(bytesPerSecond));
+    }
+
+    /**
+     * @return how many bytes per second all uploads combined are actually getting
+     */
+    public long effectiveUploadRate() {
+        return uploadBucket.getEffectiveRate();
+    }
+
+    /**
+     * @return how many bytes per second all downloads combined are actually getting
+     */
+    public long effectiveDownloadRate() {
+        return downloadBucket.getEffectiveRate();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("uploads: %s (%d running), downloads: %s (%d running)", uploadBucket, activeUploads.size(), downloadBucket, activeDownloads.size());
+    }
+
+    @Nullable
+    private static BulkTransfer.Direction direction(@Nullable Invocation invocation) {
+        if (invocation == null) {
+            return null;
+        }
+        var annotation = invocation.method().getAnnotation(BulkTransfer.class);
+        return annotation == null ? null : annotation.value();
+    }
+
+    private static void acquire(List<TokenBucket> buckets, long bytes) throws IOException {
+        for (var bucket : buckets) {
+            bucket.acquire(bytes);
+        }
+    }
+
+    private class LimitedRequestBody extends RequestBody {
+        private final RequestBody delegate;
+
+        LimitedRequestBody(RequestBody delegate) {
+            this.delegate = delegate;
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return delegate.isOneShot();
+        }
+
+        @Override
+        public void writeTo(@NotNull BufferedSink sink) throws IOException {
+            var transfer = new TokenBucket(perTransferUploadRate);
+            activeUploads.add(transfer);
+            try {
+                var limited = Okio.buffer(new LimitedSink(sink, List.of(uploadBucket, transfer)));
+                delegate.writeTo(limited);
+                limited.emit();
+            } finally {
+                activeUploads.remove(transfer);
+            }
+        }
+    }
+
+    private static class LimitedSink extends ForwardingSink {
+        private final List<TokenBucket> buckets;
+
+        LimitedSink(Sink delegate, List<TokenBucket> buckets) {
+            super(delegate);
+            this.buckets = buckets;
+        }
+
+        @Override
+        public void write(@NotNull Buffer source, long byteCount) throws IOException {
+            var remaining = byteCount;
+            while (remaining > 0) {
+                var chunk = Math.min(remaining, CHUNK_SIZE);
+                acquire(buckets, chunk);
+                super.write(source, chunk);
+                remaining -= chunk;
+            }
+        }
+    }
+
+    private static class LimitedSource extends ForwardingSource {
+        private final List<TokenBucket> buckets;
+        private final Runnable onClose;
+
+        LimitedSource(Source delegate, List<TokenBucket> buckets, Runnable onClose) {
+            super(delegate);
+            this.buckets = buckets;
+            this.onClose = onClose;
+        }
+
+        @Override
+        public long read(@NotNull Buffer sink, long byteCount) throws IOException {
+            var read = super.read(sink, Math.min(byteCount, CHUNK_SIZE));
+            if (read > 0) {
+                // bytes are already here by the time we know how many there are, so the wait is paid after the fact
+                acquire(buckets, read);
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            onClose.run();
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package ploiu.http;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * marks a client method as moving file contents rather than metadata, so {@link BandwidthInterceptor} limits how fast it goes.
+ * Retrofit ignores annotations it doesn't know about
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface BulkTransfer {
+    Direction value();
+
+    enum Direction {
+        /**
+         * the request body is what's limited
+         */
+        UPLOAD,
+        /**
+         * the response body is what's limited
+         */
+        DOWNLOAD
+    }
+}
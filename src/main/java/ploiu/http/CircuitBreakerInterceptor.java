@@ -0,0 +1,137 @@
+package ploiu.http;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import ploiu.config.HttpConfig;
+import ploiu.exception.ServerUnavailableException;
+
+import java.io.IOException;
+
+/**
+ * stops sending requests to the server once it looks like it's down, instead of letting every request hang until it times out.
+ * <ul>
+ *     <li>{@link State#CLOSED}: requests go through as normal. Too many failures in a row (network errors or 5xx) opens the breaker</li>
+ *     <li>{@link State#OPEN}: every request immediately fails with {@link ServerUnavailableException}</li>
+ *     <li>{@link State#HALF_OPEN}: after waiting a while, 1 request checks {@code /api/version}. If that works the breaker closes,
+ *     otherwise it opens again. Everything else keeps failing fast while the check is running</li>
+ * </ul>
+ */
+@Slf4j
+@Singleton
+public class CircuitBreakerInterceptor implements Interceptor {
+    private static final String PROBE_PATH = "/api/version";
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+
+    @Inject
+    public CircuitBreakerInterceptor(HttpConfig httpConfig) {
+        this(httpConfig.getBreakerFailureThreshold(), httpConfig.getBreakerOpenMillis());
+    }
+
+    CircuitBreakerInterceptor(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull Chain chain) throws IOException {
+        var request = chain.request();
+        boolean shouldProbe = false;
+        State current;
+        synchronized (this) {
+            if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+                state = State.HALF_OPEN;
+                shouldProbe = true;
+            }
+            current = state;
+        }
+        if (current == State.OPEN || (current == State.HALF_OPEN && !shouldProbe)) {
+            throw new ServerUnavailableException();
+        }
+        if (shouldProbe) {
+            probe(chain, request);
+        }
+        try {
+            var response = chain.proceed(request);
+            if (response.code() >= 500) {
+                recordFailure();
+            } else {
+                recordSuccess();
+            }
+            return response;
+        } catch (IOException e) {
+            // a cancelled call says nothing about the server, e.g. a preview request for a tile that was scrolled away
+            if (!chain.call().isCanceled()) {
+                recordFailure();
+            }
+            throw e;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void probe(Chain chain, Request original) throws IOException {
+        var builder = new Request.Builder().url(original.url().resolve(PROBE_PATH)).get();
+        var auth = original.header("Authorization");
+        if (auth != null) {
+            builder.header("Authorization", auth);
+        }
+        boolean reachable;
+        try (var response = chain.proceed(builder.build())) {
+            reachable = response.isSuccessful();
+        } catch (IOException e) {
+            if (chain.call().isCanceled()) {
+                // openedAt is left alone so the next request probes again instead of waiting out another openMillis
+                synchronized (this) {
+                    state = State.OPEN;
+                }
+                throw e;
+            }
+            reachable = false;
+        }
+        synchronized (this) {
+            if (reachable) {
+                log.info("Server is reachable again, closing circuit breaker");
+                state = State.CLOSED;
+                consecutiveFailures = 0;
+            } else {
+                state = State.OPEN;
+                openedAt = System.currentTimeMillis();
+            }
+        }
+        if (!reachable) {
+            throw new ServerUnavailableException();
+        }
+    }
+
+    private synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+    }
+
+    private synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            log.warn("{} requests in a row failed, opening circuit breaker for {}ms", consecutiveFailures, openMillis);
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+}
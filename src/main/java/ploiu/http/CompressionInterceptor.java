@@ -0,0 +1,184 @@
+package ploiu.http;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.*;
+import org.jetbrains.annotations.NotNull;
+import ploiu.config.HttpConfig;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.zip.Inflater;
+
+/**
+ * asks the server to compress responses and decompresses them as they're read, so nothing is buffered in memory.
+ * Also counts how many bytes came over the wire vs how many bytes they decompressed to, per endpoint.
+ * <p>
+ * Requests that already have an {@code Accept-Encoding} header (e.g. {@code identity} for downloads that need exact byte
+ * offsets) are left alone. Everything else that isn't negotiated (compression turned off, non-GET requests, and {@code Range}
+ * requests) asks for {@code identity} outright, since OkHttp would otherwise ask for gzip on its own
+ */
+@Singleton
+public class CompressionInterceptor implements Interceptor {
+    private final boolean enabled;
+    /**
+     * every encoding we can decode, in order of preference. Adding brotli / zstd is a matter of adding a decoder here
+     */
+    private final Map<String, Function<Source, Source>> decoders;
+    private final String acceptEncoding;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public record ByteCounts(long wireBytes, long decodedBytes) {
+        /**
+         * @return the fraction of bytes that compression saved, between 0 and 1
+         */
+        public double savings() {
+            return decodedBytes == 0 ? 0 : 1 - (double) wireBytes / decodedBytes;
+        }
+    }
+
+    @Inject
+    public CompressionInterceptor(HttpConfig httpConfig) {
+        this(httpConfig.isCompressionEnabled(), defaultDecoders());
+    }
+
+    CompressionInterceptor(boolean enabled, Map<String, Function<Source, Source>> decoders) {
+        this.enabled = enabled;
+        this.decoders = decoders;
+        this.acceptEncoding = String.join(", ", decoders.keySet());
+    }
+
+    static Map<String, Function<Source, Source>> defaultDecoders() {
+        var decoders = new LinkedHashMap<String, Function<Source, Source>>();
+        decoders.put("gzip", GzipSource::new);
+        // http's "deflate" is zlib-wrapped, which is what Inflater expects by default
+        decoders.put("deflate", CompressionInterceptor::inflate);
+        return decoders;
+    }
+
+    /**
+     * the {@link Inflater} holds native memory, so it's ended as soon as the body is closed instead of waiting on the garbage collector
+     */
+    private static Source inflate(Source source) {
+        var inflater = new Inflater();
+        return new ForwardingSource(new InflaterSource(source, inflater)) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull Chain chain) throws IOException {
+        var request = chain.request();
+        var callerEncoding = request.header("Accept-Encoding") != null;
+        var negotiate = enabled
+                && "GET".equals(request.method())
+                && !callerEncoding
+                && request.header("Range") == null;
+        if (negotiate) {
+            request = request.newBuilder().header("Accept-Encoding", acceptEncoding).build();
+        } else if (!callerEncoding) {
+            request = request.newBuilder().header("Accept-Encoding", "identity").build();
+        }
+        var response = chain.proceed(request);
+        var body = response.body();
+        if (body == null || response.code() == 204 || response.code() == 304 || "HEAD".equals(request.method())) {
+            return response;
+        }
+        var counter = counters.computeIfAbsent(Endpoints.name(chain.call()), ignored -> new Counter());
+        var encoding = response.header("Content-Encoding");
+        var decoder = negotiate && encoding != null ? decoders.get(encoding.trim().toLowerCase()) : null;
+        if (decoder == null || body.contentLength() == 0) {
+            // not compressed (or compressed in a way we didn't ask for and can't read), so the bytes are the same on both ends
+            var counted = new CountingSource(body.source(), counter.wireBytes, counter.decodedBytes);
+            return response.newBuilder()
+                    .body(ResponseBody.create(Okio.buffer(counted), body.contentType(), body.contentLength()))
+                    .build();
+        }
+        var wire = new CountingSource(body.source(), counter.wireBytes);
+        var decoded = new CountingSource(decoder.apply(wire), counter.decodedBytes);
+        // the length and encoding describe the compressed body, which nothing past this point sees
+        return response.newBuilder()
+                .removeHeader("Content-Encoding")
+                .removeHeader("Content-Length")
+                .body(ResponseBody.create(Okio.buffer(decoded), body.contentType(), -1))
+                .build();
+    }
+
+    /**
+     * @return the bytes read so far for {@code endpoint} (see {@link Endpoints}), or 0s if nothing has been read from it
+     */
+    public ByteCounts byteCounts(String endpoint) {
+        var counter = counters.get(endpoint);
+        return counter == null ? new ByteCounts(0, 0) : counter.snapshot();
+    }
+
+    /**
+     * @return the bytes read so far for every endpoint, sorted by endpoint name
+     */
+    public Map<String, ByteCounts> byteCounts() {
+        var snapshot = new TreeMap<String, ByteCounts>();
+        counters.forEach((endpoint, counter) -> snapshot.put(endpoint, counter.snapshot()));
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        var builder = new StringBuilder();
+        byteCounts().forEach((endpoint, counts) -> builder.append(String.format(
+                "%s: %d bytes over the wire, %d decoded (%.0f%% saved)%n",
+                endpoint,
+                counts.wireBytes(),
+                counts.decodedBytes(),
+                counts.savings() * 100
+        )));
+        return builder.toString();
+    }
+
+    private static class Counter {
+        final AtomicLong wireBytes = new AtomicLong(0);
+        final AtomicLong decodedBytes = new AtomicLong(0);
+
+        ByteCounts snapshot() {
+            return new ByteCounts(wireBytes.get(), decodedBytes.get());
+        }
+    }
+
+    /**
+     * adds the number of bytes read to every counter it's given
+     */
+    private static class CountingSource extends ForwardingSource {
+        private final AtomicLong[] counters;
+
+        CountingSource(Source delegate, AtomicLong... counters) {
+            super(delegate);
+            this.counters = counters;
+        }
+
+        @Override
+        public long read(@NotNull Buffer sink, long byteCount) throws IOException {
+            var read = super.read(sink, byteCount);
+            if (read > 0) {
+                for (var counter : counters) {
+                    counter.addAndGet(read);
+                }
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ploiu.http;
+
+import okhttp3.Call;
+import retrofit2.Invocation;
+
+import java.lang.reflect.Method;
+
+/**
+ * names endpoints consistently for everything that reports stats per endpoint
+ */
+final class Endpoints {
+    private Endpoints() {
+    }
+
+    /**
+     * @return the client and method name, e.g. {@code FolderClient.getFolder}
+     */
+    static String name(Method method) {
+        return method.getDeclaringClass().getSimpleName() + "." + method.getName();
+    }
+
+    /**
+     * @return the name of the retrofit method that made {@code call}, or its http method and path if it didn't come from retrofit
+     */
+    static String name(Call call) {
+        var request = call.request();
+        var invocation = request.tag(Invocation.class);
+        return invocation != null ? name(invocation.method()) : request.method() + " " + request.url().encodedPath();
+    }
+}
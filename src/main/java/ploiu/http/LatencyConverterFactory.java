@@ -0,0 +1,82 @@
+package ploiu.http;
+
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import ploiu.http.LatencyStats.Phase;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * wraps another converter factory (jackson) and records how long each conversion takes in {@link LatencyStats}.
+ * <p>
+ * Retrofit only hands converter factories the annotations of the method being called, not the method itself, so the
+ * endpoint name is found by matching those annotations against the methods of the clients passed in
+ */
+public class LatencyConverterFactory extends Converter.Factory {
+    private final Converter.Factory delegate;
+    private final LatencyStats stats;
+    private final Map<List<Annotation>, String> endpointsByAnnotations = new HashMap<>();
+
+    public LatencyConverterFactory(Converter.Factory delegate, LatencyStats stats, Collection<Class<?>> clients) {
+        this.delegate = delegate;
+        this.stats = stats;
+        for (var client : clients) {
+            for (var method : client.getDeclaredMethods()) {
+                endpointsByAnnotations.putIfAbsent(List.of(method.getAnnotations()), Endpoints.name(method));
+            }
+        }
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        var converter = delegate.responseBodyConverter(type, annotations, retrofit);
+        if (converter == null) {
+            return null;
+        }
+        var endpoint = endpointName(annotations);
+        return body -> {
+            var start = System.nanoTime();
+            try {
+                return converter.convert(body);
+            } finally {
+                stats.record(endpoint, Phase.DECODE, System.nanoTime() - start);
+            }
+        };
+    }
+
+    @Override
+    public Converter<?, RequestBody> requestBodyConverter(Type type, Annotation[] parameterAnnotations, Annotation[] methodAnnotations, Retrofit retrofit) {
+        @SuppressWarnings("unchecked")
+        var converter = (Converter<Object, RequestBody>) delegate.requestBodyConverter(type, parameterAnnotations, methodAnnotations, retrofit);
+        if (converter == null) {
+            return null;
+        }
+        var endpoint = endpointName(methodAnnotations);
+        return value -> {
+            var start = System.nanoTime();
+            try {
+                return converter.convert(value);
+            } finally {
+                stats.record(endpoint, Phase.ENCODE, System.nanoTime() - start);
+            }
+        };
+    }
+
+    @Override
+    public Converter<?, String> stringConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        return delegate.stringConverter(type, annotations, retrofit);
+    }
+
+    private String endpointName(Annotation[] methodAnnotations) {
+        var name = endpointsByAnnotations.get(List.of(methodAnnotations));
+        return name != null ? name : "unknown " + Arrays.toString(methodAnnotations);
+    }
+}
@@ -0,0 +1,112 @@
+package ploiu.http;
+
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ploiu.http.LatencyStats.Phase;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+/**
+ * times the phases of a single call and records them in {@link LatencyStats}. Okhttp creates 1 of these per call, so no
+ * synchronization is needed
+ */
+class LatencyEventListener extends EventListener {
+    private final LatencyStats stats;
+    private final String endpoint;
+    private long callStart;
+    private long dnsStart;
+    private long connectStart;
+    private long tlsStart;
+    private long requestStart;
+    private long requestEnd;
+    private long responseBodyStart;
+
+    LatencyEventListener(LatencyStats stats, String endpoint) {
+        this.stats = stats;
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    public void callStart(@NotNull Call call) {
+        callStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(@NotNull Call call, @NotNull String domainName) {
+        dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(@NotNull Call call, @NotNull String domainName, @NotNull List<InetAddress> inetAddressList) {
+        stats.record(endpoint, Phase.DNS, System.nanoTime() - dnsStart);
+    }
+
+    @Override
+    public void connectStart(@NotNull Call call, @NotNull InetSocketAddress inetSocketAddress, @NotNull Proxy proxy) {
+        connectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectStart(@NotNull Call call) {
+        tlsStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(@NotNull Call call, @Nullable Handshake handshake) {
+        stats.record(endpoint, Phase.TLS, System.nanoTime() - tlsStart);
+    }
+
+    @Override
+    public void connectEnd(@NotNull Call call, @NotNull InetSocketAddress inetSocketAddress, @NotNull Proxy proxy, @Nullable Protocol protocol) {
+        stats.record(endpoint, Phase.CONNECT, System.nanoTime() - connectStart);
+    }
+
+    @Override
+    public void requestHeadersStart(@NotNull Call call) {
+        requestStart = System.nanoTime();
+    }
+
+    @Override
+    public void requestHeadersEnd(@NotNull Call call, @NotNull Request request) {
+        requestEnd = System.nanoTime();
+        if (request.body() == null) {
+            stats.record(endpoint, Phase.REQUEST, requestEnd - requestStart);
+        }
+    }
+
+    @Override
+    public void requestBodyEnd(@NotNull Call call, long byteCount) {
+        requestEnd = System.nanoTime();
+        stats.record(endpoint, Phase.REQUEST, requestEnd - requestStart);
+    }
+
+    @Override
+    public void responseHeadersStart(@NotNull Call call) {
+        stats.record(endpoint, Phase.TTFB, System.nanoTime() - requestEnd);
+    }
+
+    @Override
+    public void responseBodyStart(@NotNull Call call) {
+        responseBodyStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyEnd(@NotNull Call call, long byteCount) {
+        stats.record(endpoint, Phase.RESPONSE_BODY, System.nanoTime() - responseBodyStart);
+    }
+
+    @Override
+    public void callEnd(@NotNull Call call) {
+        stats.record(endpoint, Phase.TOTAL, System.nanoTime() - callStart);
+    }
+
+    @Override
+    public void callFailed(@NotNull Call call, @NotNull IOException ioe) {
+        stats.record(endpoint, Phase.TOTAL, System.nanoTime() - callStart);
+    }
+}
@@ -0,0 +1,84 @@
+package ploiu.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a lock-free histogram of durations in microseconds. Buckets are log-linear (8 per power of 2), so a percentile is never
+ * off by more than 12.5%, and memory stays fixed no matter how many values are recorded
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // ~12 days in microseconds, anything longer than that goes in the last bucket
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    public record Summary(long count, long p50Micros, long p90Micros, long p99Micros, long maxMicros) {
+    }
+
+    public void recordNanos(long nanos) {
+        var micros = Math.max(0, nanos / 1000);
+        buckets.incrementAndGet(bucketFor(micros));
+        count.incrementAndGet();
+        max.accumulateAndGet(micros, Math::max);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long maxMicros() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile between 0 and 1
+     * @return the upper bound of the bucket the percentile falls in, never more than the largest value recorded
+     */
+    public long percentileMicros(double percentile) {
+        var total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        var rank = Math.max(1, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public Summary summary() {
+        return new Summary(count(), percentileMicros(0.5), percentileMicros(0.9), percentileMicros(0.99), maxMicros());
+    }
+
+    static int bucketFor(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        var exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+        if (exponent == MAX_EXPONENT && micros >= (1L << (MAX_EXPONENT + 1))) {
+            return BUCKET_COUNT - 1;
+        }
+        var subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        var exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        var subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        var width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (SUB_BUCKETS + subBucket) * width + width - 1;
+    }
+}
@@ -0,0 +1,123 @@
+package ploiu.http;
+
+import com.google.inject.Singleton;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * per-endpoint latency histograms for every phase of an http call, so we can tell whether something is slow because of
+ * dns, connecting, the server, the transfer, or json decoding.
+ * <p>
+ * Endpoints are keyed by the retrofit method that made the call (e.g. {@code FolderClient.getFolder}). Requests that didn't
+ * come from retrofit are keyed by their method and path instead
+ */
+@Singleton
+public class LatencyStats implements EventListener.Factory {
+
+    public enum Phase {
+        DNS,
+        /**
+         * tcp connect, including tls
+         */
+        CONNECT,
+        TLS,
+        /**
+         * json encoding of the request body
+         */
+        ENCODE,
+        /**
+         * writing the request headers and body
+         */
+        REQUEST,
+        /**
+         * from the request being sent to the response headers coming back
+         */
+        TTFB,
+        RESPONSE_BODY,
+        /**
+         * json decoding of the response body. Jackson reads straight off the connection, so this overlaps with {@link #RESPONSE_BODY}
+         */
+        DECODE,
+        /**
+         * the whole call, from start to finish
+         */
+        TOTAL
+    }
+
+    private final Map<String, Map<Phase, LatencyHistogram>> endpoints = new ConcurrentHashMap<>();
+
+    public void record(String endpoint, Phase phase, long nanos) {
+        endpoints.computeIfAbsent(endpoint, ignored -> new ConcurrentHashMap<>())
+                .computeIfAbsent(phase, ignored -> new LatencyHistogram())
+                .recordNanos(nanos);
+    }
+
+    /**
+     * @return the summary for the endpoint and phase, or a summary with a count of 0 if nothing has been recorded for it
+     */
+    public LatencyHistogram.Summary summary(String endpoint, Phase phase) {
+        var histogram = endpoints.getOrDefault(endpoint, Map.of()).get(phase);
+        return histogram == null ? new LatencyHistogram().summary() : histogram.summary();
+    }
+
+    /**
+     * @return every endpoint that has been called so far, sorted by name, with a summary for each phase it went through
+     */
+    public Map<String, Map<Phase, LatencyHistogram.Summary>> snapshot() {
+        var snapshot = new TreeMap<String, Map<Phase, LatencyHistogram.Summary>>();
+        endpoints.forEach((endpoint, phases) -> {
+            var summaries = new EnumMap<Phase, LatencyHistogram.Summary>(Phase.class);
+            phases.forEach((phase, histogram) -> summaries.put(phase, histogram.summary()));
+            snapshot.put(endpoint, summaries);
+        });
+        return snapshot;
+    }
+
+    public void reset() {
+        endpoints.clear();
+    }
+
+    /**
+     * @return a human-readable table of every endpoint and phase, in milliseconds
+     */
+    public String report() {
+        var builder = new StringBuilder(String.format("%-40s %-14s %8s %10s %10s %10s %10s%n", "endpoint", "phase", "count", "p50", "p90", "p99", "max"));
+        snapshot().forEach((endpoint, phases) -> phases.forEach((phase, summary) -> builder.append(String.format(
+                "%-40s %-14s %8d %10.1f %10.1f %10.1f %10.1f%n",
+                endpoint,
+                phase,
+                summary.count(),
+                summary.p50Micros() / 1000.0,
+                summary.p90Micros() / 1000.0,
+                summary.p99Micros() / 1000.0,
+                summary.maxMicros() / 1000.0
+        ))));
+        return builder.toString();
+    }
+
+    /**
+     * writes {@link #report()} to {@code file}, replacing whatever was there
+     */
+    public void dumpTo(Path file) throws IOException {
+        var parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.writeString(file, report());
+    }
+
+    @NotNull
+    @Override
+    public EventListener create(@NotNull Call call) {
+        return new LatencyEventListener(this, Endpoints.name(call));
+    }
+}
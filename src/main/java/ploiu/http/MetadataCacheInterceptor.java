@@ -0,0 +1,197 @@
+package ploiu.http;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ploiu.config.HttpConfig;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * keeps the last response for folder and file metadata, and revalidates it with {@code If-None-Match} / {@code If-Modified-Since}
+ * instead of downloading the whole thing again.
+ * <p>
+ * Every request still goes to the server, so nothing stale is ever handed back. If the server doesn't send any validators,
+ * the body's sha-256 is compared against the cached one so we can at least tell that a re-download was identical.
+ */
+@Slf4j
+@Singleton
+public class MetadataCacheInterceptor implements Interceptor {
+    private static final int NOT_MODIFIED = 304;
+    private static final int NOT_FOUND = 404;
+
+    private final long maxBytes;
+    // access ordered so the first entry is always the least recently used
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong revalidations = new AtomicLong(0);
+    private final AtomicLong unchanged = new AtomicLong(0);
+
+    @Inject
+    public MetadataCacheInterceptor(HttpConfig httpConfig) {
+        this(httpConfig.getMetadataCacheMaxBytes());
+    }
+
+    MetadataCacheInterceptor(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull Chain chain) throws IOException {
+        var request = chain.request();
+        if (!isCacheable(request)) {
+            return chain.proceed(request);
+        }
+        var key = request.url().toString();
+        var cached = get(key);
+        var builder = request.newBuilder();
+        if (cached == null) {
+            misses.incrementAndGet();
+        } else {
+            revalidations.incrementAndGet();
+            if (cached.etag() != null) {
+                builder.header("If-None-Match", cached.etag());
+            }
+            if (cached.lastModified() != null) {
+                builder.header("If-Modified-Since", cached.lastModified());
+            }
+        }
+        var response = chain.proceed(builder.build());
+        if (response.code() == NOT_MODIFIED && cached != null) {
+            hits.incrementAndGet();
+            if (response.body() != null) {
+                response.body().close();
+            }
+            return response.newBuilder()
+                    .code(200)
+                    .message("OK")
+                    .body(ResponseBody.create(cached.body(), cached.contentType()))
+                    .build();
+        }
+        var body = response.body();
+        if (!response.isSuccessful() || body == null) {
+            if (response.code() == NOT_FOUND) {
+                remove(key);
+            }
+            return response;
+        }
+        var contentType = body.contentType();
+        var bytes = body.bytes();
+        var fingerprint = fingerprint(bytes);
+        if (cached != null && cached.fingerprint().equals(fingerprint)) {
+            unchanged.incrementAndGet();
+            // hand back the bytes we already had so there's only 1 copy in memory
+            bytes = cached.body();
+        }
+        put(key, new CachedResponse(bytes, contentType, response.header("ETag"), response.header("Last-Modified"), fingerprint));
+        return response.newBuilder()
+                .body(ResponseBody.create(bytes, contentType))
+                .build();
+    }
+
+    /**
+     * @return how many requests were answered with a 304 and served from the cache
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return how many requests had nothing cached to revalidate
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * @return how many conditional requests were sent
+     */
+    public long revalidations() {
+        return revalidations.get();
+    }
+
+    /**
+     * @return how many full responses were byte-for-byte identical to what was already cached
+     */
+    public long unchanged() {
+        return unchanged.get();
+    }
+
+    public synchronized long sizeInBytes() {
+        return currentBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d misses=%d revalidations=%d unchanged=%d size=%d bytes", hits(), misses(), revalidations(), unchanged(), sizeInBytes());
+    }
+
+    static boolean isCacheable(Request request) {
+        if (!"GET".equals(request.method())) {
+            return false;
+        }
+        var segments = request.url().pathSegments();
+        // only individual metadata lookups (e.g. /folders/metadata/1), not searches
+        return segments.size() == 3
+                && ("folders".equals(segments.get(0)) || "files".equals(segments.get(0)))
+                && "metadata".equals(segments.get(1));
+    }
+
+    @Nullable
+    private synchronized CachedResponse get(String key) {
+        return entries.get(key);
+    }
+
+    private synchronized void put(String key, CachedResponse value) {
+        if (value.body().length > maxBytes) {
+            remove(key);
+            return;
+        }
+        var old = entries.put(key, value);
+        if (old != null) {
+            currentBytes -= old.body().length;
+        }
+        currentBytes += value.body().length;
+        var iterator = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            var eldest = iterator.next();
+            currentBytes -= eldest.getValue().body().length;
+            iterator.remove();
+        }
+    }
+
+    private synchronized void remove(String key) {
+        var old = entries.remove(key);
+        if (old != null) {
+            currentBytes -= old.body().length;
+        }
+    }
+
+    private static String fingerprint(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            // every jvm is required to support sha-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    private record CachedResponse(byte[] body, @Nullable MediaType contentType, @Nullable String etag, @Nullable String lastModified, String fingerprint) {
+    }
+}
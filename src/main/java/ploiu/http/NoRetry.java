@@ -0,0 +1,15 @@
+package ploiu.http;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * marks a client method whose caller recovers from failures itself, so {@link RetryInterceptor} never re-sends it even though
+ * its HTTP method is safe to repeat. Retrofit ignores annotations it doesn't know about
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface NoRetry {
+}
@@ -0,0 +1,102 @@
+package ploiu.http;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import ploiu.config.HttpConfig;
+import ploiu.exception.ServerUnavailableException;
+import retrofit2.Invocation;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * retries requests that are safe to send more than once (reads, updates, and deletes) when they fail because of the network
+ * or a gateway error. Creates ({@code POST}) are never retried, because a retry could create the same thing twice, and neither
+ * are client methods marked with {@link NoRetry}.
+ * <p>
+ * Waits between attempts grow exponentially, and are randomized ("full jitter") so that a bunch of requests failing together
+ * don't all retry at the same moment
+ */
+@Slf4j
+@Singleton
+public class RetryInterceptor implements Interceptor {
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "PUT", "DELETE", "OPTIONS");
+    private static final Set<Integer> RETRYABLE_STATUSES = Set.of(502, 503, 504);
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    @Inject
+    public RetryInterceptor(HttpConfig httpConfig) {
+        this(httpConfig.getRetryMaxAttempts(), httpConfig.getRetryBaseDelayMillis(), httpConfig.getRetryMaxDelayMillis());
+    }
+
+    RetryInterceptor(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull Chain chain) throws IOException {
+        var request = chain.request();
+        if (!isRetryable(request)) {
+            return chain.proceed(request);
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                var response = chain.proceed(request);
+                if (attempt >= maxAttempts || !RETRYABLE_STATUSES.contains(response.code())) {
+                    return response;
+                }
+                log.warn("{} {} returned {}, retrying (attempt {} of {})", request.method(), request.url().encodedPath(), response.code(), attempt, maxAttempts);
+                response.close();
+            } catch (ServerUnavailableException e) {
+                // the circuit breaker is open, so retrying would just fail fast again
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= maxAttempts || chain.call().isCanceled()) {
+                    throw e;
+                }
+                log.warn("{} {} failed with [{}], retrying (attempt {} of {})", request.method(), request.url().encodedPath(), e.getMessage(), attempt, maxAttempts);
+            }
+            sleep(backoffMillis(attempt));
+        }
+    }
+
+    /**
+     * @param attempt the attempt that just failed, starting at 1
+     * @return a random wait between 0 and {@code base * 2^(attempt - 1)}, capped at the max delay
+     */
+    long backoffMillis(int attempt) {
+        var cap = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    static boolean isRetryable(Request request) {
+        var body = request.body();
+        var invocation = request.tag(Invocation.class);
+        if (invocation != null && invocation.method().isAnnotationPresent(NoRetry.class)) {
+            return false;
+        }
+        return IDEMPOTENT_METHODS.contains(request.method()) && (body == null || !body.isOneShot());
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting to retry");
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ploiu.http;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import lombok.RequiredArgsConstructor;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * reports on the state of the shared http transport, so we can tell if something is building its own clients or leaking connections
+ */
+@Singleton
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class TransportStats {
+    private final ConnectionPool connectionPool;
+    private final Dispatcher dispatcher;
+    private final BandwidthInterceptor bandwidth;
+    private final AtomicInteger clients = new AtomicInteger(0);
+
+    /**
+     * called whenever an {@link okhttp3.OkHttpClient} is built. There should only ever be 1
+     */
+    public void clientCreated() {
+        clients.incrementAndGet();
+    }
+
+    public int liveClients() {
+        return clients.get();
+    }
+
+    /**
+     * @return the number of open connections, both idle and in use
+     */
+    public int connectionCount() {
+        return connectionPool.connectionCount();
+    }
+
+    public int idleConnectionCount() {
+        return connectionPool.idleConnectionCount();
+    }
+
+    public int runningCalls() {
+        return dispatcher.runningCallsCount();
+    }
+
+    public int queuedCalls() {
+        return dispatcher.queuedCallsCount();
+    }
+
+    /**
+     * @return bytes per second all file uploads combined are actually getting
+     */
+    public long effectiveUploadRate() {
+        return bandwidth.effectiveUploadRate();
+    }
+
+    /**
+     * @return bytes per second all file downloads combined are actually getting
+     */
+    public long effectiveDownloadRate() {
+        return bandwidth.effectiveDownloadRate();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("clients=%d connections=%d (idle=%d) calls running=%d queued=%d bandwidth=[%s]", liveClients(), connectionCount(), idleConnectionCount(), runningCalls(), queuedCalls(), bandwidth);
+    }
+}
@@ -1,6 +1,27 @@
 package ploiu.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-public record ApiInfo(@NotNull String version) {
+import java.util.Set;
+
+/**
+ * @param version      the server's api version
+ * @param capabilities optional features the server supports (e.g. {@link #CHUNKED_UPLOAD}). Older servers don't send this at all
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ApiInfo(@NotNull String version, @Nullable Set<String> capabilities) {
+    /**
+     * the server accepts uploads in chunks through {@code /files/uploads}
+     */
+    public static final String CHUNKED_UPLOAD = "chunked-upload";
+
+    public ApiInfo(@NotNull String version) {
+        this(version, null);
+    }
+
+    public boolean supports(String capability) {
+        return capabilities != null && capabilities.contains(capability);
+    }
 }
@@ -2,9 +2,9 @@ package ploiu.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import ploiu.util.JsonUtils;
 
 import java.util.Collection;
 
@@ -23,7 +23,7 @@ public record FileApi(
 
     public String toJson() {
         try {
-            return new ObjectMapper().writeValueAsString(this);
+            return JsonUtils.MAPPER.writeValueAsString(this);
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
@@ -31,7 +31,7 @@ public record FileApi(
 
     public static FileApi fromJson(String json) {
         try {
-            return new ObjectMapper().readValue(json, FileApi.class);
+            return JsonUtils.MAPPER.readValue(json, FileApi.class);
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,15 @@
+package ploiu.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * starts a chunked upload
+ *
+ * @param folderId  the folder the file goes in
+ * @param name      the file name without its extension
+ * @param extension the file's extension, if it has one
+ * @param size      how big the file is in bytes
+ */
+public record StartUploadRequest(long folderId, @NotNull String name, @Nullable String extension, long size) {
+}
@@ -0,0 +1,15 @@
+package ploiu.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * a chunked upload the server is holding on to until it's completed
+ *
+ * @param id       identifies the upload for the rest of the requests
+ * @param size     how big the whole file is
+ * @param received how many bytes the server has stored so far. The next chunk must start here
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record UploadSession(@NotNull String id, long size, long received) {
+}
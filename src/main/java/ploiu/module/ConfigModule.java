@@ -2,18 +2,42 @@ package ploiu.module;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
+import com.google.inject.Singleton;
 import ploiu.config.AuthenticationConfig;
+import ploiu.config.CacheConfig;
+import ploiu.config.HttpConfig;
 import ploiu.config.ServerConfig;
+import ploiu.config.UiConfig;
 
 @SuppressWarnings("unused")
 public class ConfigModule extends AbstractModule {
     @Provides
+    @Singleton
     AuthenticationConfig authConfig() {
         return new AuthenticationConfig();
     }
 
     @Provides
+    @Singleton
     ServerConfig serverConfig() {
         return new ServerConfig();
     }
+
+    @Provides
+    @Singleton
+    HttpConfig httpConfig() {
+        return new HttpConfig();
+    }
+
+    @Provides
+    @Singleton
+    CacheConfig cacheConfig() {
+        return new CacheConfig();
+    }
+
+    @Provides
+    @Singleton
+    UiConfig uiConfig() {
+        return new UiConfig();
+    }
 }
@@ -1,54 +1,132 @@
 package ploiu.module;
 
-import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
 import com.google.inject.Provides;
-import io.reactivex.rxjava3.schedulers.Schedulers;
+import com.google.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import ploiu.client.ApiClient;
 import ploiu.client.FileClient;
 import ploiu.client.FolderClient;
 import ploiu.client.TagClient;
 import ploiu.config.AuthenticationConfig;
+import ploiu.config.HttpConfig;
 import ploiu.config.ServerConfig;
+import ploiu.http.BandwidthInterceptor;
+import ploiu.http.CircuitBreakerInterceptor;
+import ploiu.http.CompressionInterceptor;
+import ploiu.http.LatencyConverterFactory;
+import ploiu.http.LatencyStats;
+import ploiu.http.MetadataCacheInterceptor;
+import ploiu.http.RetryInterceptor;
+import ploiu.http.TransportStats;
+import ploiu.util.JsonUtils;
 import retrofit2.Retrofit;
 import retrofit2.adapter.rxjava3.RxJava3CallAdapterFactory;
 import retrofit2.converter.jackson.JacksonConverterFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * everything in here is a singleton so that the whole app shares 1 connection pool and 1 dispatcher
+ */
+@Slf4j
 @SuppressWarnings("unused")
 public class HttpModule extends AbstractModule {
 
     @Provides
+    @Singleton
     JacksonConverterFactory mapper() {
-        return JacksonConverterFactory.create(new ObjectMapper().registerModule(new Jdk8Module()).disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+        return JacksonConverterFactory.create(JsonUtils.MAPPER);
     }
 
     @Inject
     @Provides
-    Retrofit retrofitClient(JacksonConverterFactory jsonConverter, ServerConfig serverConfig, AuthenticationConfig authConfig) {
-        // use okhttp so I can add headers to every request
+    @Singleton
+    LatencyStats latencyStats(HttpConfig httpConfig) {
+        var stats = new LatencyStats();
+        var reportFile = httpConfig.getLatencyReportFile();
+        if (reportFile != null && !reportFile.isBlank()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    stats.dumpTo(Path.of(reportFile));
+                } catch (IOException e) {
+                    log.error("Failed to write latency report to {}", reportFile, e);
+                }
+            }, "latency-report"));
+        }
+        return stats;
+    }
+
+    @Inject
+    @Provides
+    @Singleton
+    ConnectionPool connectionPool(HttpConfig httpConfig) {
+        return new ConnectionPool(httpConfig.getMaxIdleConnections(), httpConfig.getKeepAliveSeconds(), TimeUnit.SECONDS);
+    }
+
+    @Inject
+    @Provides
+    @Singleton
+    Dispatcher dispatcher(HttpConfig httpConfig) {
+        var dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(httpConfig.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(httpConfig.getMaxRequestsPerHost());
+        return dispatcher;
+    }
+
+    @Inject
+    @Provides
+    @Singleton
+    OkHttpClient httpClient(ConnectionPool connectionPool, Dispatcher dispatcher, HttpConfig httpConfig, AuthenticationConfig authConfig, TransportStats transportStats, MetadataCacheInterceptor metadataCache, RetryInterceptor retry, CircuitBreakerInterceptor circuitBreaker, CompressionInterceptor compression, BandwidthInterceptor bandwidth, LatencyStats latencyStats) {
+        // okhttp only uses http/2 if the server agrees to it during the tls handshake, otherwise it falls back to 1.1
+        var protocols = httpConfig.isHttp2Enabled() ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) : List.of(Protocol.HTTP_1_1);
         var client = new OkHttpClient.Builder()
+                // use okhttp so I can add headers to every request
                 .addInterceptor(chain -> {
                     var req = chain.request().newBuilder().addHeader("Authorization", authConfig.basicAuth()).build();
                     return chain.proceed(req);
                 })
+                .addInterceptor(metadataCache)
+                // retry is outside the breaker so that every attempt counts towards tripping it
+                .addInterceptor(retry)
+                .addInterceptor(circuitBreaker)
+                // everything above this (including the metadata cache) only ever sees decompressed bodies
+                .addInterceptor(compression)
+                // innermost, so it limits the bytes that actually go over the wire
+                .addInterceptor(bandwidth)
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
+                .protocols(protocols)
+                .eventListenerFactory(latencyStats)
                 .connectTimeout(1, TimeUnit.DAYS)
                 .callTimeout(Duration.of(1, ChronoUnit.DAYS))
                 .readTimeout(Duration.of(1, ChronoUnit.DAYS))
                 .writeTimeout(Duration.of(1, ChronoUnit.DAYS))
                 .build();
+        transportStats.clientCreated();
+        return client;
+    }
+
+    @Inject
+    @Provides
+    @Singleton
+    Retrofit retrofitClient(JacksonConverterFactory jsonConverter, ServerConfig serverConfig, OkHttpClient client, LatencyStats latencyStats) {
+        var clients = List.<Class<?>>of(ApiClient.class, FileClient.class, FolderClient.class, TagClient.class);
         return new Retrofit.Builder()
                 .baseUrl(serverConfig.getBaseUrl())
-                .addConverterFactory(jsonConverter)
-                .addCallAdapterFactory(RxJava3CallAdapterFactory.createWithScheduler(Schedulers.io()))
+                .addConverterFactory(new LatencyConverterFactory(jsonConverter, latencyStats, clients))
+                // async calls go through the dispatcher, so its request limits actually apply
+                .addCallAdapterFactory(RxJava3CallAdapterFactory.createAsync())
                 .client(client)
                 .build();
 
@@ -56,24 +134,28 @@ public class HttpModule extends AbstractModule {
 
     @Inject
     @Provides
+    @Singleton
     TagClient tagClient(Retrofit retrofit) {
         return retrofit.create(TagClient.class);
     }
 
     @Inject
     @Provides
+    @Singleton
     FileClient retrofitFileClient(Retrofit retrofit) {
         return retrofit.create(FileClient.class);
     }
 
     @Inject
     @Provides
+    @Singleton
     FolderClient retrofitFolderClient(Retrofit retrofit) {
         return retrofit.create(FolderClient.class);
     }
 
     @Inject
     @Provides
+    @Singleton
     ApiClient retrofitApiClient(Retrofit retrofit) {
         return retrofit.create(ApiClient.class);
     }
@@ -1,6 +1,7 @@
 package ploiu.service;
 
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.schedulers.Schedulers;
@@ -8,17 +9,30 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import ploiu.client.ApiClient;
 import ploiu.config.AuthenticationConfig;
+import ploiu.config.HttpConfig;
 import ploiu.config.ServerConfig;
 import ploiu.model.ApiInfo;
 import ploiu.model.CreatePasswordRequest;
+import ploiu.model.StorageInfo;
+import ploiu.util.SingleFlight;
 import ploiu.util.UIUtils;
 
+import java.time.Duration;
+
 @Slf4j
+@Singleton
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class ApiService {
     private final ApiClient client;
     private final ServerConfig serverConfig;
     private final AuthenticationConfig authConfig;
+    private final HttpConfig httpConfig;
+    private final SingleFlight<String, ApiInfo> apiInfoRequests = new SingleFlight<>();
+    private final SingleFlight<String, StorageInfo> storageRequests = new SingleFlight<>();
+    // the server's features don't change without a restart, which would also cost us our connection
+    private static final Duration CAPABILITIES_TTL = Duration.ofMinutes(5);
+    // kept out of apiInfoRequests, since every write to the server would throw it away there even though writes can't change it
+    private volatile Capabilities capabilities;
 
     public Completable setPassword() {
         return Single.just(new CreatePasswordRequest(authConfig.getUsername(), authConfig.getPassword()))
@@ -28,11 +42,30 @@ public class ApiService {
     }
 
     public Single<ApiInfo> getApiInfo() {
-        return client.getApiInfo()
+        return apiInfoRequests.get("version", client::getApiInfo)
                 .observeOn(Schedulers.io())
                 .subscribeOn(Schedulers.io());
     }
 
+    /**
+     * checks if the server supports an optional feature (see the constants in {@link ApiInfo}). The answer is re-used for a
+     * little while, and if the server can't be asked it's treated as not supported
+     */
+    public Single<Boolean> supports(String capability) {
+        return Single.defer(() -> {
+                    var cached = capabilities;
+                    if (cached != null && System.nanoTime() - cached.fetchedAt() < CAPABILITIES_TTL.toNanos()) {
+                        return Single.just(cached.info());
+                    }
+                    return apiInfoRequests.get("capabilities", client::getApiInfo)
+                            .doOnSuccess(info -> capabilities = new Capabilities(info, System.nanoTime()));
+                })
+                .observeOn(Schedulers.io())
+                .subscribeOn(Schedulers.io())
+                .map(info -> info.supports(capability))
+                .onErrorReturnItem(false);
+    }
+
     public Single<Boolean> isCompatibleWithServer() {
         log.info("Checking if server is compatible with client (looking for pattern {})", serverConfig.getCompatibleVersion());
         return getApiInfo()
@@ -56,10 +89,14 @@ public class ApiService {
      * @return human readable format for how much storage has been used (e.g. "30gb / 1tb used")
      */
     public Single<String> getStorageUsed() {
-        return client
-                .getStorageInfo()
+        // disk usage doesn't need to be exact on every click, so it's re-used for a little while
+        var ttl = Duration.ofMillis(httpConfig.getStorageInfoTtlMillis());
+        return storageRequests.get("disk", ttl, client::getStorageInfo)
                 .observeOn(Schedulers.io())
                 .subscribeOn(Schedulers.io())
                 .map(info -> String.format("%s / %s used", UIUtils.convertSizeToBytes(info.totalSpace() - info.freeSpace()), UIUtils.convertSizeToBytes(info.totalSpace())));
     }
+
+    private record Capabilities(ApiInfo info, long fetchedAt) {
+    }
 }
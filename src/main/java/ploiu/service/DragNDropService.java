@@ -1,104 +1,171 @@
 package ploiu.service;
 
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 import javafx.stage.Window;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ploiu.config.UiConfig;
 import ploiu.model.*;
+import ploiu.transfer.ContentIndex;
+import ploiu.transfer.TransferProgress;
 import ploiu.ui.LoadingModal;
+import ploiu.util.AdaptiveConcurrencyLimiter;
 import ploiu.util.FolderApproximator;
 
 import java.io.File;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 
+@Slf4j
+@Singleton
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class DragNDropService {
     private final FolderService folderService;
     private final FileService fileService;
+    private final ContentIndex contentIndex;
+    private final UiConfig uiConfig;
+    // shared by every drop so that multiple drops at once still respect the same limit. Exposed so its limit and throughput can be checked
+    @Getter
+    private final AdaptiveConcurrencyLimiter uploadLimiter = new AdaptiveConcurrencyLimiter(4, 1, 32);
 
     public Completable dropFiles(Collection<File> files, FolderApi targetFolder, Window currentWindow) {
         var normalFiles = files.stream().filter(File::isFile).toList();
         var directories = files.stream().filter(File::isDirectory).toList();
-        var nestedSize = directories.stream().map(FolderApproximator::convertDir).map(FolderApproximation::size).reduce(Integer::sum).orElse(0);
-        var percentIncrease = 1f / (normalFiles.size() + nestedSize);
-        var progressAmount = new AtomicInteger(0);
+        var approximations = directories.stream().map(FolderApproximator::convertDir).toList();
+        // progress is by bytes, so 1 big file counts for as much as it actually takes to upload
+        var totalBytes = normalFiles.stream().mapToLong(File::length).sum() + approximations.stream().mapToLong(DragNDropService::totalBytes).sum();
+        var progress = new TransferProgress(totalBytes);
         var modal = new LoadingModal(new LoadingModalOptions(currentWindow, LoadingModalOptions.LoadingType.DETERMINATE));
-        var uploads = Observable.merge(uploadFiles(normalFiles, targetFolder), uploadFolders(directories, targetFolder));
+        // the folder passed in might not have its contents loaded, and those are needed to tell what's already uploaded
+        var uploads = folderService.getFolder(targetFolder.id())
+                .onErrorReturnItem(targetFolder)
+                // 1 file failing shouldn't stop the rest from uploading, so errors are held until everything else is done
+                .flatMapObservable(target -> Observable.mergeDelayError(uploadFiles(normalFiles, target, progress), uploadApproximations(approximations, target, progress)));
         modal.open();
+        modal.track(progress);
         return Completable.fromObservable(
                 uploads
-                        .doOnNext(ignored -> modal.updateProgress(progressAmount.addAndGet(1) * percentIncrease))
-                        .doFinally(modal::close)
+                        .doFinally(() -> {
+                            modal.close();
+                            log.info("Finished uploading dropped files, upload limiter is at {}", uploadLimiter);
+                        })
         );
     }
 
-    Observable<FileApi> uploadFiles(Collection<File> files, FolderApi targetFolder) {
+    Observable<FileApi> uploadFiles(Collection<File> files, FolderApi targetFolder, TransferProgress progress) {
         if (files.stream().anyMatch(File::isDirectory)) {
             return Observable.error(new UnsupportedOperationException("cannot upload a directory as a normal file"));
         }
         return Observable
                 .fromIterable(files)
                 .subscribeOn(Schedulers.io())
-                .map(f -> new CreateFileRequest(targetFolder.id(), f))
-                .flatMap(req -> fileService.createFile(req).toObservable());
+                .flatMapSingle(f -> uploadFile(f, targetFolder, progress), true);
     }
 
-    Observable<ServerObject> uploadFolders(Collection<File> directories, FolderApi targetFolder) {
+    Observable<ServerObject> uploadFolders(Collection<File> directories, FolderApi targetFolder, TransferProgress progress) {
         if (directories.stream().anyMatch(File::isFile)) {
             return Observable.error(new UnsupportedOperationException("cannot upload a normal file as a directory"));
         }
-        return Observable.fromStream(directories.stream().map(FolderApproximator::convertDir))
-                .flatMap(approximation -> uploadFolders(approximation, targetFolder));
+        return uploadApproximations(directories.stream().map(FolderApproximator::convertDir).toList(), targetFolder, progress);
     }
 
-    private Observable<ServerObject> uploadFolders(FolderApproximation approximation, FolderApi targetFolder) {
+    private Observable<ServerObject> uploadApproximations(Collection<FolderApproximation> approximations, FolderApi targetFolder, TransferProgress progress) {
+        return Observable.fromIterable(approximations)
+                .flatMap(approximation -> uploadFolders(approximation, targetFolder, progress), true);
+    }
+
+    private Observable<ServerObject> uploadFolders(FolderApproximation approximation, FolderApi targetFolder, TransferProgress progress) {
         return uploadFolder(approximation, targetFolder)
                 .toObservable()
                 .flatMap(folderApi -> {
-                    // to prevent from overwhelming the server, we're pseudo batching files into groups and then making a pause in between each upload group
+                    // uploadFile goes through the limiter, so this won't overwhelm the server even though every file is submitted at once
                     var uploadedFiles = Observable.fromIterable(approximation.childFiles())
-                            .buffer(30)
-                            .zipWith(Observable.interval(5, TimeUnit.SECONDS), (item, interval) -> item)
-                            .flatMapIterable(f -> f)
-                            .flatMap(f -> uploadFile(f, folderApi).toObservable());
+                            .flatMapSingle(f -> uploadFile(f, folderApi, progress), true);
 
                     if (approximation.childFolders().isEmpty()) {
-                        return Observable.merge(Observable.just(folderApi), uploadedFiles);
+                        return Observable.mergeDelayError(Observable.just(folderApi), uploadedFiles);
                     } else {
-                        return Observable.merge(approximation.childFolders()
+                        return Observable.mergeDelayError(Observable.concatDelayError(approximation.childFolders()
                                 .stream()
-                                .map(f -> uploadFolders(f, folderApi))
-                                .reduce(Observable::concatWith)
-                                .get(), uploadedFiles);
+                                .map(f -> uploadFolders(f, folderApi, progress))
+                                .toList()), uploadedFiles);
                     }
                 });
     }
 
-    //Observable<Observable<FileApi>> chunkUploads(Collection<File> files, FolderApi folder) {
-    //    var chunkedFiles = partition(files.iterator(), 20);
-    //    var windowed = new HashSet<Observable<FileApi>>();
-    //    chunkedFiles.forEachRemaining(chunk -> {
-    //        for (var file : chunk) {
-    //            uploadFile(file, folder)
-    //        }
-    //    });
-    //}
+    /**
+     * uploads the passed file once the upload limiter has room for it, unless it's already in {@code targetFolder}
+     */
+    Single<FileApi> uploadFile(File file, FolderApi targetFolder, TransferProgress progress) {
+        return alreadyUploaded(file, targetFolder)
+                .doOnSuccess(existing -> {
+                    log.debug("Skipping {}, it's already uploaded as file {}", file, existing.id());
+                    progress.add(file.length());
+                })
+                .switchIfEmpty(Single.defer(() -> {
+                    var req = new CreateFileRequest(targetFolder.id(), file);
+                    return uploadLimiter.submit(file.length(), () -> fileService.createFile(req, progress))
+                            .doOnSuccess(uploaded -> contentIndex.remember(file.toPath(), uploaded.id()));
+                }));
+    }
 
-    Single<FileApi> uploadFile(File file, FolderApi targetFolder) {
-        var req = new CreateFileRequest(targetFolder.id(), file);
-        return fileService.createFile(req);
+    /**
+     * checks if {@code targetFolder} already has a file with the same name, size, and contents as {@code file}. Contents are
+     * compared by hash through the {@link ContentIndex}, so this only finds files that were uploaded or downloaded by this app.
+     * Files without a name and size match are never hashed
+     */
+    Maybe<FileApi> alreadyUploaded(File file, FolderApi targetFolder) {
+        if (targetFolder.files() == null) {
+            return Maybe.empty();
+        }
+        var candidate = targetFolder.files()
+                .stream()
+                // names with parentheses are stored escaped, see FileService
+                .filter(f -> f.name().replaceAll("leftParenthese", "(").replaceAll("rightParenthese", ")").equals(file.getName()))
+                .filter(f -> f.size() != null && f.size() == file.length())
+                .findFirst();
+        if (candidate.isEmpty()) {
+            return Maybe.empty();
+        }
+        var existing = candidate.get();
+        return Maybe.fromCallable(() -> contentIndex.find(ContentIndex.hash(file.toPath())).orElse(-1) == existing.id() ? existing : null)
+                .subscribeOn(ContentIndex.HASHING)
+                .onErrorResumeNext(e -> {
+                    log.warn("Failed to check if {} is already uploaded", file, e);
+                    return Maybe.empty();
+                });
     }
 
+    /**
+     * creates a folder for {@code approximation} in {@code targetFolder}. If merging dropped folders is turned on and
+     * {@code targetFolder} already has a folder with the same name, that one is used instead, with its contents loaded so the
+     * files in it can be skipped
+     */
     Single<FolderApi> uploadFolder(FolderApproximation approximation, FolderApi targetFolder) {
-        var req = new FolderRequest(Optional.empty(), targetFolder.id(), approximation.self().getName(), targetFolder.tags());
+        var name = approximation.self().getName();
+        if (uiConfig.isMergeDroppedFolders() && targetFolder.folders() != null) {
+            var existing = targetFolder.folders().stream().filter(f -> f.name().equals(name)).findFirst();
+            if (existing.isPresent()) {
+                return folderService.getFolder(existing.get().id());
+            }
+        }
+        var req = new FolderRequest(Optional.empty(), targetFolder.id(), name, targetFolder.tags());
         return folderService.createFolder(req);
     }
+
+    private static long totalBytes(FolderApproximation approximation) {
+        var total = approximation.childFiles().stream().mapToLong(File::length).sum();
+        for (var child : approximation.childFolders()) {
+            total += totalBytes(child);
+        }
+        return total;
+    }
 }
@@ -0,0 +1,461 @@
+package ploiu.service;
+
+import com.google.inject.Singleton;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.subjects.BehaviorSubject;
+import org.jetbrains.annotations.Nullable;
+import ploiu.model.FileApi;
+import ploiu.model.FolderApi;
+import ploiu.model.TagApi;
+import ploiu.util.LongMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * the one copy of every file, folder, and tag the ui has seen, by id. {@link FileService} and {@link FolderService} put whatever
+ * the server sends back in here (and take out whatever gets deleted), so views can read and watch this instead of holding on
+ * to (and re-fetching) their own copies.
+ * <p>
+ * Folders are kept without their contents, which are kept as ids instead, so a file that's renamed or moved only has 1 copy
+ * to change no matter how many folders / views it shows up in. Everything is indexed by primitive {@code long} ids through
+ * {@link LongMap}.
+ * <p>
+ * Watchers get the current value when they subscribe and every change after that, on whatever thread made the change, so
+ * views should {@code observeOn} the ui thread
+ */
+@Singleton
+public class EntityStore {
+    private final LongMap<FileApi> files = new LongMap<>();
+    // without their contents (folders and files are always empty), those are in childFolders / childFiles
+    private final LongMap<FolderApi> folders = new LongMap<>();
+    // only for folders whose contents have been pulled, since being inside a pulled folder doesn't say what's inside of you
+    private final LongMap<long[]> childFolders = new LongMap<>();
+    private final LongMap<long[]> childFiles = new LongMap<>();
+    private final LongMap<TagApi> tags = new LongMap<>();
+    private final LongMap<Watcher<FileApi>> fileWatchers = new LongMap<>();
+    private final LongMap<Watcher<FolderApi>> folderWatchers = new LongMap<>();
+
+    @Nullable
+    public synchronized FileApi getFile(long id) {
+        return files.get(id);
+    }
+
+    /**
+     * @return the folder with everything in it, or null if its contents haven't been pulled
+     */
+    @Nullable
+    public synchronized FolderApi getFolder(long id) {
+        return build(id);
+    }
+
+    /**
+     * @return the folder without anything in it, which is known for every folder that's been seen (not just pulled ones)
+     */
+    @Nullable
+    public synchronized FolderApi getFolderDetails(long id) {
+        return folders.get(id);
+    }
+
+    @Nullable
+    public synchronized TagApi getTag(long id) {
+        return tags.get(id);
+    }
+
+    /**
+     * @return the file with the id {@code id} now and every time it changes, until it's deleted
+     */
+    public Observable<FileApi> watchFile(long id) {
+        return watch(fileWatchers, id, () -> files.get(id));
+    }
+
+    /**
+     * @return the folder with the id {@code id} and its contents now (if they've been pulled) and every time it or anything
+     * directly inside of it changes, until it's deleted
+     */
+    public Observable<FolderApi> watchFolder(long id) {
+        return watch(folderWatchers, id, () -> build(id));
+    }
+
+    /**
+     * adds or updates a file. Fields that are only sent by the server (like the size) are kept from the stored version if
+     * {@code file} doesn't have them, and the file is moved to a different folder if its folder id changed
+     *
+     * @return the file as it's stored
+     */
+    public synchronized FileApi putFile(FileApi file) {
+        var previous = files.get(file.id());
+        var stored = storeFile(file, previous, true);
+        if (!stored.equals(previous)) {
+            emit(fileWatchers, stored.id(), stored);
+            if (stored.folderId() != null) {
+                emitFolder(stored.folderId());
+            }
+            if (previous != null && previous.folderId() != null && !previous.folderId().equals(stored.folderId())) {
+                emitFolder(previous.folderId());
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * adds or updates a folder that was pulled along with everything in it. Anything that was stored as being in the folder
+     * but isn't in {@code folder} is forgotten
+     *
+     * @return the folder with its contents, as they're stored
+     */
+    public synchronized FolderApi putFolder(FolderApi folder) {
+        var previous = folders.get(folder.id());
+        storeFolder(folder, previous, true);
+        var folderIds = storeContents(childFolders, folder.id(), folder.folders(), FolderApi::id, child -> {
+            var previousChild = folders.get(child.id());
+            if (!storeFolder(child, previousChild, false).equals(previousChild)) {
+                emitFolder(child.id());
+                if (previousChild != null && previousChild.parentId() != folder.id()) {
+                    emitFolder(previousChild.parentId());
+                }
+            }
+        });
+        for (var id : folderIds) {
+            var gone = folders.get(id);
+            if (gone != null && gone.parentId() == folder.id()) {
+                forgetFolder(id);
+            }
+        }
+        var fileIds = storeContents(childFiles, folder.id(), folder.files(), FileApi::id, child -> {
+            var previousChild = files.get(child.id());
+            var stored = storeFile(child, previousChild, false);
+            if (!stored.equals(previousChild)) {
+                emit(fileWatchers, stored.id(), stored);
+                if (previousChild != null && previousChild.folderId() != null && previousChild.folderId() != folder.id()) {
+                    emitFolder(previousChild.folderId());
+                }
+            }
+        });
+        for (var id : fileIds) {
+            var gone = files.get(id);
+            if (gone != null && Objects.equals(gone.folderId(), folder.id())) {
+                files.remove(id);
+                complete(fileWatchers, id);
+            }
+        }
+        emitFolder(folder.id());
+        emitMove(previous, folder);
+        return build(folder.id());
+    }
+
+    /**
+     * adds or updates a folder without touching what's stored as being in it, for server responses that don't say what's in
+     * the folder (e.g. after it's renamed)
+     *
+     * @return the folder as it's stored, without its contents
+     */
+    public synchronized FolderApi putFolderDetails(FolderApi folder) {
+        var previous = folders.get(folder.id());
+        var stored = storeFolder(folder, previous, true);
+        if (!stored.equals(previous)) {
+            emitFolder(folder.id());
+            emitMove(previous, folder);
+        }
+        return stored;
+    }
+
+    /**
+     * undoes a {@link #putFile(FileApi)}, e.g. because the server rejected the change it was showing. Nothing happens if the
+     * file has changed again since then, so a newer version is never replaced with an older one
+     *
+     * @param put      what {@link #putFile(FileApi)} returned
+     * @param previous the file from before it was put, or null if it wasn't stored
+     */
+    public synchronized void revertFile(FileApi put, @Nullable FileApi previous) {
+        if (!put.equals(files.get(put.id()))) {
+            return;
+        }
+        if (previous == null) {
+            removeFile(put.id());
+        } else {
+            putFile(previous);
+        }
+    }
+
+    /**
+     * same as {@link #revertFile(FileApi, FileApi)}, but for {@link #putFolderDetails(FolderApi)}
+     */
+    public synchronized void revertFolderDetails(FolderApi put, @Nullable FolderApi previous) {
+        if (!put.equals(folders.get(put.id()))) {
+            return;
+        }
+        if (previous == null) {
+            removeFolder(put.id());
+        } else {
+            putFolderDetails(previous);
+        }
+    }
+
+    public synchronized void removeFile(long id) {
+        var removed = files.remove(id);
+        if (removed == null) {
+            return;
+        }
+        if (removed.folderId() != null) {
+            unlink(childFiles, removed.folderId(), id);
+            emitFolder(removed.folderId());
+        }
+        complete(fileWatchers, id);
+    }
+
+    /**
+     * removes a folder and everything that was stored as being in it
+     */
+    public synchronized void removeFolder(long id) {
+        var removed = folders.get(id);
+        if (removed == null) {
+            return;
+        }
+        forgetFolder(id);
+        unlink(childFolders, removed.parentId(), id);
+        emitFolder(removed.parentId());
+    }
+
+    /**
+     * @param linkToParent whether to add the file to its folder's contents. Not needed when the folder's contents are about to
+     *                     be replaced anyway, and skipping it keeps pulling a huge folder from checking every file against all
+     *                     the others
+     */
+    private FileApi storeFile(FileApi file, @Nullable FileApi previous, boolean linkToParent) {
+        var stored = previous == null ? file : new FileApi(
+                file.id(),
+                file.name(),
+                file.tags(),
+                file.folderId() == null ? previous.folderId() : file.folderId(),
+                file.size() == null ? previous.size() : file.size(),
+                file.dateCreated() == null ? previous.dateCreated() : file.dateCreated(),
+                file.fileType() == null ? previous.fileType() : file.fileType()
+        );
+        files.put(stored.id(), stored);
+        storeTags(stored.tags());
+        var from = previous == null ? null : previous.folderId();
+        if (!Objects.equals(from, stored.folderId())) {
+            if (from != null) {
+                unlink(childFiles, from, stored.id());
+            }
+            if (linkToParent && stored.folderId() != null) {
+                link(childFiles, stored.folderId(), stored.id());
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * same as {@link #storeFile(FileApi, FileApi, boolean)}, but for a folder. Its contents are left out
+     */
+    private FolderApi storeFolder(FolderApi folder, @Nullable FolderApi previous, boolean linkToParent) {
+        var path = folder.path() == null && previous != null ? previous.path() : folder.path();
+        var stored = new FolderApi(folder.id(), folder.parentId(), folder.name(), path, List.of(), List.of(), folder.tags());
+        folders.put(stored.id(), stored);
+        storeTags(stored.tags());
+        if (previous == null || previous.parentId() != stored.parentId()) {
+            if (previous != null) {
+                unlink(childFolders, previous.parentId(), stored.id());
+            }
+            // the root folder can say it's its own parent
+            if (linkToParent && stored.parentId() != stored.id()) {
+                link(childFolders, stored.parentId(), stored.id());
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * replaces the ids of what's in the folder {@code folderId} with the ids of {@code contents}, storing each one with
+     * {@code store}
+     *
+     * @return the ids that were in the folder before, but aren't anymore
+     */
+    private <T> long[] storeContents(LongMap<long[]> children, long folderId, Collection<T> contents, ToLongFunction<T> getId, Consumer<T> store) {
+        var ids = new long[contents.size()];
+        var current = new LongMap<Boolean>(contents.size());
+        var index = 0;
+        for (var item : contents) {
+            store.accept(item);
+            ids[index] = getId.applyAsLong(item);
+            current.put(ids[index++], true);
+        }
+        var before = children.put(folderId, ids);
+        if (before == null) {
+            return new long[0];
+        }
+        var gone = new long[before.length];
+        var goneCount = 0;
+        for (var id : before) {
+            if (!current.containsKey(id)) {
+                gone[goneCount++] = id;
+            }
+        }
+        return Arrays.copyOf(gone, goneCount);
+    }
+
+    private void storeTags(Collection<TagApi> entityTags) {
+        for (var tag : entityTags) {
+            if (tag.id() != null) {
+                tags.put(tag.id(), tag);
+            }
+        }
+    }
+
+    /**
+     * drops a folder and (recursively) everything stored as being in it, letting anything watching them know they're gone
+     */
+    private void forgetFolder(long id) {
+        folders.remove(id);
+        var folderIds = childFolders.remove(id);
+        var fileIds = childFiles.remove(id);
+        if (folderIds != null) {
+            for (var child : folderIds) {
+                forgetFolder(child);
+            }
+        }
+        if (fileIds != null) {
+            for (var child : fileIds) {
+                files.remove(child);
+                complete(fileWatchers, child);
+            }
+        }
+        complete(folderWatchers, id);
+    }
+
+    /**
+     * adds {@code id} to the folder's contents, if they're known
+     */
+    private static void link(LongMap<long[]> children, long folderId, long id) {
+        var ids = children.get(folderId);
+        if (ids == null) {
+            return;
+        }
+        for (var existing : ids) {
+            if (existing == id) {
+                return;
+            }
+        }
+        var added = new long[ids.length + 1];
+        System.arraycopy(ids, 0, added, 0, ids.length);
+        added[ids.length] = id;
+        children.put(folderId, added);
+    }
+
+    private static void unlink(LongMap<long[]> children, long folderId, long id) {
+        var ids = children.get(folderId);
+        if (ids == null) {
+            return;
+        }
+        for (var i = 0; i < ids.length; i++) {
+            if (ids[i] == id) {
+                var removed = new long[ids.length - 1];
+                System.arraycopy(ids, 0, removed, 0, i);
+                System.arraycopy(ids, i + 1, removed, i, ids.length - i - 1);
+                children.put(folderId, removed);
+                return;
+            }
+        }
+    }
+
+    @Nullable
+    private FolderApi build(long id) {
+        var folder = folders.get(id);
+        var folderIds = childFolders.get(id);
+        var fileIds = childFiles.get(id);
+        if (folder == null || folderIds == null || fileIds == null) {
+            return null;
+        }
+        var subfolders = new ArrayList<FolderApi>(folderIds.length);
+        for (var child : folderIds) {
+            var subfolder = folders.get(child);
+            if (subfolder != null) {
+                subfolders.add(subfolder);
+            }
+        }
+        var subfiles = new ArrayList<FileApi>(fileIds.length);
+        for (var child : fileIds) {
+            var file = files.get(child);
+            if (file != null) {
+                subfiles.add(file);
+            }
+        }
+        return new FolderApi(folder.id(), folder.parentId(), folder.name(), folder.path(), subfolders, subfiles, folder.tags());
+    }
+
+    /**
+     * lets the old parent of a folder that moved know it's not in there anymore, and lets the new parent know about the change
+     */
+    private void emitMove(@Nullable FolderApi previous, FolderApi folder) {
+        emitFolder(folder.parentId());
+        if (previous != null && previous.parentId() != folder.parentId()) {
+            emitFolder(previous.parentId());
+        }
+    }
+
+    private void emitFolder(long id) {
+        // building a folder means going through everything in it, so it's only done when something is watching
+        if (folderWatchers.containsKey(id)) {
+            var folder = build(id);
+            if (folder != null) {
+                emit(folderWatchers, id, folder);
+            }
+        }
+    }
+
+    private static <T> void emit(LongMap<Watcher<T>> watchers, long id, T value) {
+        var watcher = watchers.get(id);
+        if (watcher != null && !value.equals(watcher.subject.getValue())) {
+            watcher.subject.onNext(value);
+        }
+    }
+
+    private static <T> void complete(LongMap<Watcher<T>> watchers, long id) {
+        var watcher = watchers.remove(id);
+        if (watcher != null) {
+            watcher.subject.onComplete();
+        }
+    }
+
+    private <T> Observable<T> watch(LongMap<Watcher<T>> watchers, long id, Supplier<T> current) {
+        return Observable.defer(() -> {
+            Watcher<T> watcher;
+            synchronized (this) {
+                watcher = watchers.get(id);
+                if (watcher == null) {
+                    watcher = new Watcher<>();
+                    var value = current.get();
+                    if (value != null) {
+                        watcher.subject.onNext(value);
+                    }
+                    watchers.put(id, watcher);
+                }
+                // counted before subscribing, so the watcher can't be dropped between here and the subscription
+                watcher.subscribers++;
+            }
+            var subscribed = watcher;
+            return subscribed.subject.doFinally(() -> unwatch(watchers, id, subscribed));
+        });
+    }
+
+    private synchronized <T> void unwatch(LongMap<Watcher<T>> watchers, long id, Watcher<T> watcher) {
+        if (--watcher.subscribers == 0 && watchers.get(id) == watcher) {
+            watchers.remove(id);
+        }
+    }
+
+    /**
+     * the latest value of something that's being watched, and how many are watching it
+     */
+    private static final class Watcher<T> {
+        private final BehaviorSubject<T> subject = BehaviorSubject.create();
+        private int subscribers = 0;
+    }
+}
@@ -1,7 +1,9 @@
 package ploiu.service;
 
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
@@ -15,74 +17,124 @@ import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
 import org.jetbrains.annotations.Nullable;
 import ploiu.client.FileClient;
+import ploiu.config.UiConfig;
 import ploiu.exception.BadFileRequestException;
 import ploiu.exception.BadFileResponseException;
+import ploiu.model.ApiInfo;
 import ploiu.model.CreateFileRequest;
 import ploiu.model.FileApi;
 import ploiu.model.UpdateFileRequest;
 import ploiu.search.SearchParser;
+import ploiu.transfer.ChunkedUploader;
+import ploiu.transfer.ContentIndex;
+import ploiu.transfer.CountingRequestBody;
+import ploiu.transfer.FileCache;
+import ploiu.transfer.ResumableDownloader;
+import ploiu.transfer.SegmentedDownloader;
+import ploiu.transfer.TransferProgress;
+import ploiu.util.JsonUtils;
+import ploiu.util.PreviewCache;
+import ploiu.util.SingleFlight;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.net.URLConnection;
-import java.nio.file.Files;
 import java.util.Collection;
 import java.util.Objects;
 import java.util.regex.Pattern;
 
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
-import static ploiu.Constants.CACHE_DIR;
 import static ploiu.Constants.LIST_IMAGE_SIZE;
 
 @Slf4j
+@Singleton
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class FileService {
     private final FileClient client;
+    private final ApiService apiService;
+    private final ContentIndex contentIndex;
+    private final FileCache fileCache;
+    private final PreviewCache previewCache;
+    private final EntityStore store;
+    private final UiConfig uiConfig;
+    private final ChunkedUploader chunkedUploader;
+    private final SingleFlight<Long, FileApi> metadataRequests = new SingleFlight<>();
+    private final SegmentedDownloader downloader = new SegmentedDownloader(new ResumableDownloader());
     private static final Pattern EXTENSION_PATTERN = Pattern.compile("\\..+$");
 
     /**
      * saves the contents of the associated {@code fileApi to the disk and then returns its contents.
-     * If the file is already on the disk, no call to the file server is made.
+     * If {@code directory} is null, the file is opened from the {@link FileCache}, and no call to the file server is made if
+     * it's already there.
      *
      * @param fileApi
      * @param directory
      * @return
      */
     public Single<File> getFileContents(FileApi fileApi, @Nullable File directory) {
+        return getFileContents(fileApi, directory, new TransferProgress(fileApi.size() == null ? -1 : fileApi.size()));
+    }
+
+    /**
+     * same as {@link #getFileContents(FileApi, File)}, but reports how much of the file has been downloaded to {@code progress}
+     */
+    public Single<File> getFileContents(FileApi fileApi, @Nullable File directory, TransferProgress progress) {
         var fileName = fileApi.name().replaceAll("leftParenthese", "(").replaceAll("rightParenthese", ")");
         if (fileApi.id() < 0) {
             return Single.error(new BadFileRequestException("Id cannot be negative."));
         }
+        if (directory == null) {
+            return fileCache.get(fileApi, fileName, fsFile -> download(fileApi, fsFile, progress))
+                    // a cached file is all there at once
+                    .doOnSuccess(fsFile -> progress.set(fsFile.length()));
+        }
         return Single.fromCallable(() -> {
-                    if (directory != null) {
-                        //noinspection ResultOfMethodCallIgnored
-                        directory.mkdirs();
-                        return new File(directory.getAbsolutePath() + "/" + fileName);
-                    }
                     //noinspection ResultOfMethodCallIgnored
-                    new File(CACHE_DIR).mkdirs();
-                    // file name differs here because the cache dir could have a ton of files with the same name if we don't include the file id
-                    return new File(CACHE_DIR + "/" + fileApi.id() + "_" + fileName);
+                    directory.mkdirs();
+                    return new File(directory.getAbsolutePath() + "/" + fileName);
                 })
                 .observeOn(Schedulers.io())
                 .subscribeOn(Schedulers.io())
-                .flatMap(fsFile -> {
-                    return client.getFileContents(fileApi.id())
-                            .observeOn(Schedulers.io())
-                            .map(res -> {
-                                //noinspection ResultOfMethodCallIgnored
-                                fsFile.createNewFile();
-                                Files.copy(res.byteStream(), fsFile.toPath(), REPLACE_EXISTING);
-                                return fsFile;
-                            });
-                });
+                .flatMap(fsFile -> download(fileApi, fsFile, progress));
+
+    }
 
+    private Single<File> download(FileApi fileApi, File fsFile, TransferProgress progress) {
+        // if a previous download of this file to the same place was interrupted, this picks up where it left off
+        return downloader.download("file:" + fileApi.id(), fsFile, fileApi.size() == null ? -1 : fileApi.size(), (range, ifRange) -> client.getFileContents(fileApi.id(), range, ifRange)
+                        .observeOn(Schedulers.io()), progress)
+                .doOnSuccess(downloaded -> {
+                    // without merging, a download only matches if it's dropped back into the folder it came from as a loose file, which is
+                    // too rare to hash every download for
+                    if (uiConfig.isMergeDroppedFolders()) {
+                        contentIndex.remember(downloaded.toPath(), fileApi.id());
+                    }
+                });
     }
 
     public Single<Collection<FileApi>> search(String input) {
         var parsed = SearchParser.parse(input);
         return client.search(parsed.text(), parsed.tags(), parsed.attributes())
-                .subscribeOn(Schedulers.io());
+                .subscribeOn(Schedulers.io())
+                .doOnSuccess(files -> files.forEach(store::putFile));
+    }
+
+    /**
+     * like {@link #search(String)}, but each file is emitted as soon as it's parsed instead of waiting for the whole response.
+     * Files are only parsed as fast as they're requested, so a huge result set never has to be in memory all at once
+     *
+     * @param input the raw search text
+     * @return every file matching the search, in the order the server sent them
+     */
+    public Flowable<FileApi> searchStreaming(String input) {
+        return Flowable.defer(() -> {
+            var parsed = SearchParser.parse(input);
+            return client.searchStreaming(parsed.text(), parsed.tags(), parsed.attributes())
+                    .subscribeOn(Schedulers.io())
+                    .toFlowable()
+                    // parsing happens on whatever thread requests the next element, so keep it off the caller's thread (e.g. the ui)
+                    .concatMap(body -> JsonUtils.streamArray(body.byteStream(), FileApi.class).subscribeOn(Schedulers.io()))
+                    .doOnNext(store::putFile);
+        });
     }
 
     public Single<FileApi> getMetadata(long id) {
@@ -92,15 +144,16 @@ public class FileService {
         return Single.just(id)
                 .observeOn(Schedulers.io())
                 .subscribeOn(Schedulers.io())
-                .flatMapMaybe(client::getMetadata)
-                .switchIfEmpty(Single.error(new BadFileResponseException("The file with the passed id could not be found.")));
+                .flatMap(i -> metadataRequests.get(i, () -> client.getMetadata(i)
+                        .switchIfEmpty(Single.error(new BadFileResponseException("The file with the passed id could not be found.")))))
+                .map(store::putFile);
     }
 
     public Completable deleteFile(long id) {
         if (id < 0) {
             return Completable.error(new BadFileRequestException("Id cannot be negative."));
         }
-        return Single.just(id).observeOn(Schedulers.io()).subscribeOn(Schedulers.io()).flatMapCompletable(client::deleteFile);
+        return Single.just(id).observeOn(Schedulers.io()).subscribeOn(Schedulers.io()).flatMapCompletable(client::deleteFile).doOnComplete(() -> store.removeFile(id)).doFinally(SingleFlight::writeCompleted);
     }
 
     public Single<FileApi> updateFile(UpdateFileRequest request) {
@@ -110,10 +163,19 @@ public class FileService {
         if (request.name().isBlank()) {
             return Single.error(new BadFileRequestException("Name cannot be blank."));
         }
-        return Single.just(request).observeOn(Schedulers.io()).subscribeOn(Schedulers.io()).flatMap(client::updateFile);
+        return Single.just(request).observeOn(Schedulers.io()).subscribeOn(Schedulers.io()).flatMap(client::updateFile).map(store::putFile).doFinally(SingleFlight::writeCompleted);
     }
 
     public Single<FileApi> createFile(CreateFileRequest request) {
+        var file = request.file();
+        return createFile(request, new TransferProgress(file == null ? -1 : file.length()));
+    }
+
+    /**
+     * same as {@link #createFile(CreateFileRequest)}, but reports how much of the file has been uploaded to {@code progress}.
+     * Very large files are sent in resumable chunks if the server supports it
+     */
+    public Single<FileApi> createFile(CreateFileRequest request, TransferProgress progress) {
         var file = request.file();
         Objects.requireNonNull(file, "File cannot be null.");
         if (!file.exists()) {
@@ -125,19 +187,42 @@ public class FileService {
         var extension = splitName.length > 1 ? splitName[splitName.length - 1] : null;
         var force = request.force();
         var fileName = splitName[0].replace("(", "leftParenthese").replace(")", "rightParenthese");
-        var filePart = MultipartBody.Part.createFormData("file", fileName, RequestBody.create(file, MediaType.parse(mimeType)));
+        var filePart = MultipartBody.Part.createFormData("file", fileName, new CountingRequestBody(RequestBody.create(file, MediaType.parse(mimeType)), progress));
         var folderPart = MultipartBody.Part.createFormData("folderId", String.valueOf(request.folderId()));
-        return client.createFile(filePart, extension != null ? MultipartBody.Part.createFormData("extension", extension) : null, folderPart)
+        var singlePart = client.createFile(filePart, extension != null ? MultipartBody.Part.createFormData("extension", extension) : null, folderPart)
                 .subscribeOn(Schedulers.io());
+        if (file.length() < ChunkedUploader.MIN_CHUNKED_SIZE) {
+            return singlePart.map(store::putFile).doFinally(SingleFlight::writeCompleted);
+        }
+        return apiService.supports(ApiInfo.CHUNKED_UPLOAD)
+                .flatMap(chunked -> chunked ? chunkedUploader.upload(file, request.folderId(), fileName, extension, progress) : singlePart)
+                .map(store::putFile)
+                .doFinally(SingleFlight::writeCompleted);
     }
 
-    public Maybe<Image> getFilePreview(Long id) {
-        return Observable.just(id)
+    /**
+     * gets the preview image for {@code file}, from the {@link PreviewCache} if it's there
+     */
+    public Maybe<Image> getFilePreview(FileApi file) {
+        var cached = previewCache.get(file);
+        if (cached != null) {
+            return Maybe.just(cached);
+        }
+        return fetchFilePreview(file);
+    }
+
+    /**
+     * downloads the preview image for {@code file} without checking the {@link PreviewCache} first (it's still added to it).
+     * For callers that already checked the cache themselves
+     */
+    public Maybe<Image> fetchFilePreview(FileApi file) {
+        return Observable.just(file.id())
                 .observeOn(Schedulers.io())
                 .flatMap(client::getFilePreview)
                 .onErrorComplete()
                 .map(ResponseBody::bytes)
                 .map(data -> new Image(new ByteArrayInputStream(data), LIST_IMAGE_SIZE, LIST_IMAGE_SIZE, true, true))
+                .doOnNext(image -> previewCache.put(file, image))
                 .singleElement();
     }
 
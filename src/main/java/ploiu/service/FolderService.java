@@ -1,6 +1,7 @@
 package ploiu.service;
 
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
@@ -12,23 +13,32 @@ import org.jetbrains.annotations.NotNull;
 import ploiu.client.FolderClient;
 import ploiu.exception.BadFolderRequestException;
 import ploiu.exception.BadFolderResponseException;
+import ploiu.model.FileApi;
 import ploiu.model.FolderApi;
 import ploiu.model.FolderRequest;
+import ploiu.transfer.ResumableDownloader;
+import ploiu.transfer.TransferProgress;
+import ploiu.util.PreviewCache;
+import ploiu.util.SingleFlight;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static ploiu.Constants.LIST_IMAGE_SIZE;
 
 @Slf4j
+@Singleton
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class FolderService {
     private final FolderClient client;
-
+    private final PreviewCache previewCache;
+    private final EntityStore store;
+    private final SingleFlight<Long, FolderApi> folderRequests = new SingleFlight<>();
+    private final ResumableDownloader downloader = new ResumableDownloader();
 
     public Single<FolderApi> getFolder(long id) {
         return Single.just(id)
@@ -37,8 +47,9 @@ public class FolderService {
                 .flatMap(i ->
                         i < 0
                                 ? Single.error(new BadFolderRequestException("Folder id must be 0 or greater."))
-                                : client.getFolder(i)
-                );
+                                : folderRequests.get(i, () -> client.getFolder(i))
+                )
+                .map(store::putFolder);
 
     }
 
@@ -46,7 +57,10 @@ public class FolderService {
         return Single.just(request)
                 .observeOn(Schedulers.io())
                 .subscribeOn(Schedulers.io())
-                .flatMap(client::createFolder);
+                .flatMap(client::createFolder)
+                // a new folder has nothing in it, so this is everything there is to know about it
+                .doOnSuccess(store::putFolder)
+                .doFinally(SingleFlight::writeCompleted);
     }
 
     public Single<FolderApi> updateFolder(FolderRequest folder) throws BadFolderRequestException, BadFolderResponseException {
@@ -61,7 +75,9 @@ public class FolderService {
                         return Single.error(new BadFolderRequestException("0 is the root folder id, and cannot be updated"));
                     }
                     return client.updateFolder(f);
-                });
+                })
+                .doOnSuccess(store::putFolderDetails)
+                .doFinally(SingleFlight::writeCompleted);
     }
 
     public Completable deleteFolder(long id) throws BadFolderRequestException, BadFolderResponseException {
@@ -72,7 +88,9 @@ public class FolderService {
                         i < 1
                                 ? Completable.error(new BadFolderRequestException("id must be greater than 0"))
                                 : client.deleteFolder(i)
-                );
+                )
+                .doOnComplete(() -> store.removeFolder(id))
+                .doFinally(SingleFlight::writeCompleted);
     }
 
     /**
@@ -85,17 +103,72 @@ public class FolderService {
      * @return
      */
     public Single<Map<Long, Image>> getFilePreviewsForFolder(FolderApi folder) {
-        return Observable.just(folder).observeOn(Schedulers.io()).map(FolderApi::id).flatMapSingle(client::getPreviewsForFolder).map(map -> {
+        Map<Long, Image> cached = new HashMap<>();
+        Collection<FileApi> missing = new ArrayList<>();
+        for (var file : folder.files()) {
+            var image = previewCache.get(file);
+            if (image != null) {
+                cached.put(file.id(), image);
+            } else if (!previewCache.isMissing(file)) {
+                // only files we don't know about yet are worth asking for, the rest are already known not to have a preview
+                missing.add(file);
+            }
+        }
+        if (missing.isEmpty()) {
+            // everything is already decoded, so the previews can be shown right away
+            return Single.just(cached);
+        }
+        return fetchFilePreviews(folder.id(), missing).map(fetched -> {
+            Map<Long, Image> images = new HashMap<>(cached);
+            images.putAll(fetched);
+            log.debug("preview cache: {}", previewCache.getStats());
+            return images;
+        });
+    }
+
+    /**
+     * downloads the previews in the folder with the id {@code folderId}, and decodes the ones for {@code files}. The server
+     * sends every preview in the folder, so the rest are skipped instead of being decoded for nothing. The {@link PreviewCache}
+     * isn't checked, but decoded previews are added to it, and so are the files the server didn't send a preview for
+     *
+     * @param files the files in the folder that previews are wanted for
+     * @return the decoded previews, by file id. Files without a preview are left out
+     */
+    public Single<Map<Long, Image>> fetchFilePreviews(long folderId, Collection<FileApi> files) {
+        Map<Long, FileApi> wanted = new HashMap<>();
+        for (var file : files) {
+            wanted.put(file.id(), file);
+        }
+        return Observable.just(folderId).observeOn(Schedulers.io()).flatMapSingle(client::getPreviewsForFolder).map(map -> {
             Map<Long, Image> images = new HashMap<>();
             for (var entry : map.entrySet()) {
+                var file = wanted.get(entry.getKey());
+                if (file == null) {
+                    continue;
+                }
                 var image = new Image(new ByteArrayInputStream(entry.getValue()), LIST_IMAGE_SIZE, LIST_IMAGE_SIZE, true, true);
                 images.put(entry.getKey(), image);
+                previewCache.put(file, image);
+            }
+            // the server sends every preview the folder has, so anything it left out doesn't have one
+            for (var file : files) {
+                if (!images.containsKey(file.id())) {
+                    previewCache.putMissing(file);
+                }
             }
             return images;
         }).single(Map.of());
     }
 
     public Completable downloadFolder(FolderApi folder, @NotNull File directory) {
+        return downloadFolder(folder, directory, new TransferProgress(-1));
+    }
+
+    /**
+     * same as {@link #downloadFolder(FolderApi, File)}, but reports how much of the archive has been downloaded to {@code progress}.
+     * The archive's size isn't known up front, so the total is filled in once the server reports it
+     */
+    public Completable downloadFolder(FolderApi folder, @NotNull File directory, TransferProgress progress) {
         if (folder.id() < 1) {
             return Completable.error(new BadFolderRequestException("Id cannot be negative, and cannot download root folder."));
         }
@@ -106,18 +179,10 @@ public class FolderService {
                 })
                 .observeOn(Schedulers.io())
                 .subscribeOn(Schedulers.io())
-                .flatMapCompletable(f -> {
-                    return client
-                            .downloadFolder(folder.id())
-                            .subscribeOn(Schedulers.io())
-                            .map(resBody -> {
-                                // doesn't matter if the file already exists or not (because the user would confirm if they want to overwrite it earlier), we're saving to it
-                                //noinspection ResultOfMethodCallIgnored
-                                f.createNewFile();
-                                Files.copy(resBody.byteStream(), f.toPath(), REPLACE_EXISTING);
-                                return f;
-                            })
-                            .flatMapCompletable(ignored -> Completable.complete());
-                });
+                // doesn't matter if the file already exists or not (because the user would confirm if they want to overwrite it earlier), we're saving to it.
+                // If a previous download of this folder to the same place was interrupted, this picks up where it left off
+                .flatMapCompletable(f -> downloader.download("folder:" + folder.id(), f, (range, ifRange) -> client.downloadFolder(folder.id(), range, ifRange)
+                                .subscribeOn(Schedulers.io()), progress)
+                        .ignoreElement());
     }
 }
@@ -0,0 +1,239 @@
+package ploiu.transfer;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ploiu.client.FileClient;
+import ploiu.exception.ServerUnavailableException;
+import ploiu.model.FileApi;
+import ploiu.model.StartUploadRequest;
+import ploiu.model.UploadSession;
+import ploiu.util.JsonUtils;
+import retrofit2.HttpException;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static ploiu.Constants.CACHE_DIR;
+
+/**
+ * uploads a file in fixed size chunks, each sent with the offset it starts at. If a chunk fails (a network error, a conflict over
+ * the offset, or a server error), the server is asked how much it actually has and the upload carries on from there, so a dropped
+ * connection near the end of a huge file only costs the chunk that was in flight. This is the only place chunks are retried,
+ * see {@link ploiu.http.NoRetry}.
+ * <p>
+ * The upload's id is saved to a small state file, so an upload interrupted by the app closing is picked back up the next time
+ * the same file is uploaded to the same folder (as long as the file hasn't changed).
+ * <p>
+ * Chunks are streamed straight from the file into the request with positional reads as they're sent, so a chunk is never held
+ * in memory all at once
+ */
+@Slf4j
+@Singleton
+public class ChunkedUploader {
+    static final long CHUNK_SIZE = 8L * 1024 * 1024;
+    // files smaller than this go up in 1 request; a restart costs less than the extra round trips
+    public static final long MIN_CHUNKED_SIZE = 64L * 1024 * 1024;
+    // how many times in a row a chunk can fail without the server's offset moving before giving up
+    private static final int MAX_CHUNK_ATTEMPTS = 5;
+    private static final MediaType OCTET_STREAM = MediaType.get("application/octet-stream");
+
+    private final FileClient client;
+    private final Path stateDir;
+    private final long chunkSize;
+
+    @Inject
+    public ChunkedUploader(FileClient client) {
+        this(client, Path.of(CACHE_DIR, "uploads"));
+    }
+
+    /**
+     * @param stateDir where interrupted uploads are remembered
+     */
+    public ChunkedUploader(FileClient client, Path stateDir) {
+        this(client, stateDir, CHUNK_SIZE);
+    }
+
+    ChunkedUploader(FileClient client, Path stateDir, long chunkSize) {
+        this.client = client;
+        this.stateDir = stateDir;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param name      the file name to upload as, without the extension
+     * @param extension the file's extension, if it has one
+     */
+    public Single<FileApi> upload(File file, long folderId, String name, @Nullable String extension, TransferProgress progress) {
+        return Single.fromCallable(() -> upload(file.toPath(), folderId, name, extension, progress))
+                .subscribeOn(Schedulers.io());
+    }
+
+    private FileApi upload(Path file, long folderId, String name, @Nullable String extension, TransferProgress progress) throws IOException {
+        var size = Files.size(file);
+        var lastModified = Files.getLastModifiedTime(file).toMillis();
+        var stateFile = stateFile(file, folderId);
+        var session = resume(stateFile, size, lastModified);
+        if (session == null) {
+            session = client.startUpload(new StartUploadRequest(folderId, name, extension, size)).blockingGet();
+            writeState(stateFile, new UploadState(session.id(), size, lastModified));
+        } else {
+            log.info("Resuming upload of {} at byte {}", file, session.received());
+        }
+        progress.add(session.received());
+        try (var channel = FileChannel.open(file, READ)) {
+            var offset = session.received();
+            var failures = 0;
+            while (offset < size) {
+                var length = Math.min(chunkSize, size - offset);
+                var chunk = new CountingRequestBody(new FileChunk(channel, offset, length), progress);
+                long received;
+                try {
+                    received = client.uploadChunk(session.id(), offset, chunk).blockingGet().received();
+                } catch (RuntimeException e) {
+                    var cause = unwrap(e);
+                    if (!shouldResync(cause)) {
+                        // the state file stays, so the next try picks up from here
+                        throw e;
+                    }
+                    // the chunk may or may not have made it, so ask instead of guessing
+                    received = client.getUpload(session.id()).blockingGet().received();
+                    log.warn("Chunk at {} of {} failed ({}), server has {} bytes", offset, file, cause.getMessage(), received);
+                }
+                // only what the server kept counts
+                progress.add(received - offset - chunk.getWritten());
+                if (received > offset) {
+                    failures = 0;
+                } else if (++failures >= MAX_CHUNK_ATTEMPTS) {
+                    throw new IOException("Upload of " + file + " stopped making progress at byte " + offset);
+                }
+                offset = received;
+            }
+        }
+        var uploaded = client.completeUpload(session.id()).blockingGet();
+        Files.deleteIfExists(stateFile);
+        return uploaded;
+    }
+
+    /**
+     * @return the server's copy of an upload that was interrupted, or null if there isn't one to continue
+     */
+    @Nullable
+    private UploadSession resume(Path stateFile, long size, long lastModified) {
+        if (!Files.exists(stateFile)) {
+            return null;
+        }
+        UploadState state;
+        try {
+            state = JsonUtils.MAPPER.readValue(stateFile.toFile(), UploadState.class);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable upload state {}", stateFile, e);
+            return null;
+        }
+        if (state.size() != size || state.lastModified() != lastModified) {
+            // the file changed since, so what the server has is no good
+            return null;
+        }
+        try {
+            var session = client.getUpload(state.uploadId()).blockingGet();
+            return session.size() == size ? session : null;
+        } catch (HttpException e) {
+            if (e.code() == 404) {
+                log.info("Server no longer has upload {}, starting over", state.uploadId());
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private Path stateFile(Path file, long folderId) {
+        var key = file.toAbsolutePath() + "|" + folderId;
+        return stateDir.resolve(UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + ".upload");
+    }
+
+    private static void writeState(Path stateFile, UploadState state) throws IOException {
+        Files.createDirectories(stateFile.toAbsolutePath().getParent());
+        JsonUtils.MAPPER.writeValue(stateFile.toFile(), state);
+    }
+
+    /**
+     * whether a failed chunk is worth asking the server about. A network error or a 5xx might have happened after the server kept
+     * some of it, and a 409 means the server has a different offset than we sent
+     */
+    private static boolean shouldResync(Throwable e) {
+        if (e instanceof HttpException http) {
+            return http.code() == 409 || http.code() >= 500;
+        }
+        return e instanceof IOException && !(e instanceof ServerUnavailableException);
+    }
+
+    /**
+     * blockingGet wraps checked exceptions in a plain RuntimeException, this gets the real one back out
+     */
+    private static Throwable unwrap(Throwable e) {
+        return e.getClass() == RuntimeException.class && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * what's saved to pick an upload back up
+     *
+     * @param uploadId     the server's id for the upload
+     * @param size         the file's size when the upload started
+     * @param lastModified the file's last modified time when the upload started
+     */
+    record UploadState(String uploadId, long size, long lastModified) {
+    }
+
+    /**
+     * a region of a file, read from the channel when it's written. Can be written any number of times, so retries work.
+     * Nothing is mapped, since a mapped region stays mapped until it's garbage collected
+     */
+    private static final class FileChunk extends RequestBody {
+        private final FileChannel channel;
+        private final long offset;
+        private final long length;
+
+        private FileChunk(FileChannel channel, long offset, long length) {
+            this.channel = channel;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return OCTET_STREAM;
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+
+        @Override
+        public void writeTo(@NotNull BufferedSink sink) throws IOException {
+            var position = offset;
+            var end = offset + length;
+            while (position < end) {
+                var sent = channel.transferTo(position, end - position, sink);
+                if (sent <= 0) {
+                    throw new EOFException("File ended at byte " + position + " while sending a chunk that ends at " + end);
+                }
+                position += sent;
+            }
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package ploiu.transfer;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import lombok.extern.slf4j.Slf4j;
+import ploiu.util.BloomFilter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.OptionalLong;
+import java.util.concurrent.Executors;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+import static ploiu.Constants.CACHE_DIR;
+
+/**
+ * remembers which file on the server has which contents, keyed by the SHA-256 of those contents. Files are added as they're
+ * uploaded and downloaded, so before uploading something we can tell if the server already has it.
+ * <p>
+ * The index lives on disk as a hash table with fixed size slots (linear probing, 40 bytes per entry), so it never has to be
+ * loaded into memory no matter how many files it knows about. A {@link BloomFilter} in front of it is the only thing kept in
+ * memory, and answers most lookups for contents the server doesn't have without touching the disk at all
+ */
+@Slf4j
+@Singleton
+public class ContentIndex implements Closeable {
+    static final int HASH_SIZE = 32;
+    private static final int SLOT_SIZE = HASH_SIZE + Long.BYTES;
+    private static final int HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES;
+    private static final int MAGIC = 0x43494458;
+    private static final int VERSION = 1;
+    private static final long INITIAL_CAPACITY = 1 << 14;
+    // slots in use past this fraction of the table make probes long enough to be worth growing
+    private static final double MAX_LOAD = 0.5;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    // slot values are the file id + 1, so an all zero slot is empty
+    private static final long EMPTY = 0;
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+    private static final ThreadLocal<ByteBuffer> READ_BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+    private static final int HASH_THREADS = Runtime.getRuntime().availableProcessors();
+    /**
+     * where files are hashed, 1 thread per core so the files in a big drop are hashed in parallel. Hashing also waits on the disk,
+     * so it gets threads of its own instead of tying up the computation pool, and a fixed number of them so a big drop can't have
+     * every file read at once
+     */
+    public static final Scheduler HASHING = Schedulers.from(Executors.newFixedThreadPool(HASH_THREADS, runnable -> {
+        var thread = new Thread(runnable, "content-hash");
+        thread.setDaemon(true);
+        return thread;
+    }));
+
+    private final Path file;
+    private FileChannel channel;
+    private long capacity;
+    // slots that aren't empty
+    private long used;
+    private BloomFilter filter;
+
+    @Inject
+    public ContentIndex() {
+        this(Path.of(CACHE_DIR, "content-index"));
+    }
+
+    ContentIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the SHA-256 of everything in {@code file}
+     */
+    public static byte[] hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every jvm has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        var buffer = READ_BUFFERS.get();
+        try (var channel = FileChannel.open(file, READ)) {
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @return the id of the server file with the contents that hash to {@code hash}, if there is one
+     */
+    public synchronized OptionalLong find(byte[] hash) throws IOException {
+        open();
+        if (!filter.mightContain(hash1(hash), hash2(hash))) {
+            return OptionalLong.empty();
+        }
+        var slot = findSlot(hash);
+        if (slot < 0) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(readValue(slot) - 1);
+    }
+
+    /**
+     * records that the server file {@code fileId} has the contents that hash to {@code hash}, replacing whatever file it was before
+     */
+    public synchronized void put(byte[] hash, long fileId) throws IOException {
+        checkHash(hash);
+        open();
+        if (used + 1 > capacity * MAX_LOAD) {
+            rebuild();
+        }
+        var slot = insert(channel, capacity, hash, fileId + 1);
+        if (slot.wasEmpty()) {
+            used++;
+        }
+        filter.add(hash1(hash), hash2(hash));
+    }
+
+    /**
+     * hashes {@code file} and records it as the server file {@code fileId} in the background. Failures are only logged, since
+     * the index is just an optimization
+     */
+    public void remember(Path file, long fileId) {
+        Completable.fromAction(() -> put(hash(file), fileId))
+                .subscribeOn(HASHING)
+                .subscribe(() -> {
+                }, e -> log.warn("Failed to remember the contents of {}", file, e));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * opens the index if it isn't already, creating it if it doesn't exist (or isn't readable) and filling the filter from it
+     */
+    private void open() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        var existing = FileChannel.open(file, CREATE, READ, WRITE);
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        existing.read(header, 0);
+        header.flip();
+        if (header.remaining() == HEADER_SIZE && header.getInt() == MAGIC && header.getInt() == VERSION) {
+            channel = existing;
+            capacity = header.getLong();
+            load();
+            return;
+        }
+        if (existing.size() > 0) {
+            log.warn("Content index {} is unreadable, starting a new one", file);
+        }
+        existing.close();
+        channel = create(file, INITIAL_CAPACITY);
+        capacity = INITIAL_CAPACITY;
+        used = 0;
+        filter = new BloomFilter((long) (capacity * MAX_LOAD), FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * counts the used slots and puts every entry in a new filter
+     */
+    private void load() throws IOException {
+        used = 0;
+        filter = new BloomFilter((long) (capacity * MAX_LOAD), FALSE_POSITIVE_RATE);
+        forEachSlot(channel, capacity, (hash, value) -> {
+            if (value != EMPTY) {
+                used++;
+                filter.add(hash1(hash), hash2(hash));
+            }
+        });
+    }
+
+    /**
+     * copies every entry into a new table twice the size
+     */
+    private void rebuild() throws IOException {
+        var newCapacity = capacity * 2;
+        var temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var rebuilt = create(temp, newCapacity)) {
+            var size = newCapacity;
+            forEachSlot(channel, capacity, (hash, value) -> {
+                if (value != EMPTY) {
+                    insert(rebuilt, size, hash, value);
+                }
+            });
+            rebuilt.force(true);
+        }
+        channel.close();
+        channel = null;
+        try {
+            Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.move(temp, file, REPLACE_EXISTING);
+        }
+        log.info("Rebuilt content index with {} entries and room for {}", used, newCapacity);
+        open();
+    }
+
+    /**
+     * @return the slot holding {@code hash}, or -1 if it isn't in the table
+     */
+    private long findSlot(byte[] hash) throws IOException {
+        var slotBuffer = ByteBuffer.allocate(SLOT_SIZE);
+        var slot = Math.floorMod(hash1(hash), capacity);
+        for (long probes = 0; probes < capacity; probes++) {
+            slotBuffer.clear();
+            channel.read(slotBuffer, slotPosition(slot));
+            var value = slotBuffer.getLong(HASH_SIZE);
+            if (value == EMPTY) {
+                return -1;
+            }
+            if (Arrays.equals(slotBuffer.array(), 0, HASH_SIZE, hash, 0, HASH_SIZE)) {
+                return slot;
+            }
+            slot = (slot + 1) % capacity;
+        }
+        return -1;
+    }
+
+    private long readValue(long slot) throws IOException {
+        var buffer = ByteBuffer.allocate(Long.BYTES);
+        channel.read(buffer, slotPosition(slot) + HASH_SIZE);
+        return buffer.getLong(0);
+    }
+
+    /**
+     * writes {@code hash} into the slot that already has it, or else the first empty slot along its probe
+     */
+    private static Insert insert(FileChannel table, long capacity, byte[] hash, long value) throws IOException {
+        var slotBuffer = ByteBuffer.allocate(SLOT_SIZE);
+        var slot = Math.floorMod(hash1(hash), capacity);
+        for (long probes = 0; probes < capacity; probes++) {
+            slotBuffer.clear();
+            table.read(slotBuffer, slotPosition(slot));
+            var existing = slotBuffer.getLong(HASH_SIZE);
+            var wasEmpty = existing == EMPTY;
+            if (wasEmpty || Arrays.equals(slotBuffer.array(), 0, HASH_SIZE, hash, 0, HASH_SIZE)) {
+                var entry = ByteBuffer.allocate(SLOT_SIZE).put(hash).putLong(value).flip();
+                while (entry.hasRemaining()) {
+                    table.write(entry, slotPosition(slot) + entry.position());
+                }
+                return new Insert(wasEmpty);
+            }
+            slot = (slot + 1) % capacity;
+        }
+        throw new IOException("Content index is full");
+    }
+
+    private static FileChannel create(Path path, long capacity) throws IOException {
+        var table = FileChannel.open(path, CREATE, TRUNCATE_EXISTING, READ, WRITE);
+        try {
+            table.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putLong(capacity).flip(), 0);
+            // the rest of the file reads back as zeros, which is every slot being empty
+            table.write(ByteBuffer.allocate(1), slotPosition(capacity) - 1);
+        } catch (IOException e) {
+            table.close();
+            throw e;
+        }
+        return table;
+    }
+
+    private static void forEachSlot(FileChannel table, long capacity, SlotConsumer consumer) throws IOException {
+        var buffer = READ_BUFFERS.get();
+        var hash = new byte[HASH_SIZE];
+        var position = (long) HEADER_SIZE;
+        var end = slotPosition(capacity);
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity() / SLOT_SIZE * SLOT_SIZE, end - position));
+            while (buffer.hasRemaining()) {
+                if (table.read(buffer, position + buffer.position()) == -1) {
+                    throw new IOException("Content index is truncated");
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                buffer.get(hash);
+                consumer.accept(hash, buffer.getLong());
+            }
+            position += buffer.limit();
+        }
+    }
+
+    private static long slotPosition(long slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static void checkHash(byte[] hash) {
+        if (hash.length != HASH_SIZE) {
+            throw new IllegalArgumentException("Expected a " + HASH_SIZE + " byte hash, got " + hash.length);
+        }
+    }
+
+    // a digest's bytes are already evenly spread, so the first 16 of them make 2 good independent hashes
+    private static long hash1(byte[] hash) {
+        return ByteBuffer.wrap(hash, 0, Long.BYTES).getLong();
+    }
+
+    private static long hash2(byte[] hash) {
+        return ByteBuffer.wrap(hash, Long.BYTES, Long.BYTES).getLong();
+    }
+
+    private record Insert(boolean wasEmpty) {
+    }
+
+    @FunctionalInterface
+    private interface SlotConsumer {
+        void accept(byte[] hash, long value) throws IOException;
+    }
+}
@@ -0,0 +1,67 @@
+package ploiu.transfer;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * reports every byte of {@code delegate} to a {@link TransferProgress} as it's written to the connection.
+ * If the body is written again (e.g. the request was retried), the bytes from the previous attempt are taken back out first
+ */
+public final class CountingRequestBody extends RequestBody {
+    private final RequestBody delegate;
+    private final TransferProgress progress;
+    private long written = 0;
+
+    public CountingRequestBody(RequestBody delegate, TransferProgress progress) {
+        this.delegate = delegate;
+        this.progress = progress;
+    }
+
+    @Nullable
+    @Override
+    public MediaType contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return delegate.contentLength();
+    }
+
+    @Override
+    public boolean isOneShot() {
+        return delegate.isOneShot();
+    }
+
+    /**
+     * @return how many bytes were counted by the most recent write
+     */
+    public synchronized long getWritten() {
+        return written;
+    }
+
+    @Override
+    public synchronized void writeTo(@NotNull BufferedSink sink) throws IOException {
+        progress.add(-written);
+        written = 0;
+        var counting = new ForwardingSink(sink) {
+            @Override
+            public void write(@NotNull Buffer source, long byteCount) throws IOException {
+                super.write(source, byteCount);
+                written += byteCount;
+                progress.add(byteCount);
+            }
+        };
+        var buffered = Okio.buffer(counting);
+        delegate.writeTo(buffered);
+        buffered.emit();
+    }
+}
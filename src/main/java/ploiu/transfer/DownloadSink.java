@@ -0,0 +1,195 @@
+package ploiu.transfer;
+
+import lombok.extern.slf4j.Slf4j;
+import okio.BufferedSource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * where downloads are written before they're finished. Everything goes to a {@code .part} file, which is only moved over the
+ * real file once it's complete, so a half written download never looks like a valid file.
+ * <ul>
+ *     <li>the file is set to its final length up front when the size is known, after checking there's that much free space, so a
+ *     disk that's obviously too full fails right away. This doesn't reserve anything: the file stays sparse until it's written, so
+ *     the disk can still fill up partway through</li>
+ *     <li>writes are positional, so several segments can write to the same sink at once</li>
+ *     <li>bytes go from the response straight into a large direct buffer and then to the file channel, skipping the extra
+ *     heap copy that streams make</li>
+ *     <li>how often data is forced to disk is up to the {@link FsyncPolicy}</li>
+ * </ul>
+ */
+@Slf4j
+public final class DownloadSink implements Closeable {
+    static final int BUFFER_SIZE = 1024 * 1024;
+    // how many bytes are written between forces with FsyncPolicy.PERIODIC
+    static final long FSYNC_INTERVAL_BYTES = 64L * 1024 * 1024;
+    // direct buffers are expensive to allocate, so each io thread keeps its own
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    public enum FsyncPolicy {
+        /**
+         * leave it to the OS. Fastest, but a power loss right after a download finishes can leave a truncated file
+         */
+        NEVER,
+        /**
+         * force everything to disk once before the file is moved into place
+         */
+        ON_COMPLETE,
+        /**
+         * same as {@link #ON_COMPLETE}, but also force every {@link #FSYNC_INTERVAL_BYTES} while downloading, so a resumed download
+         * never has to re-fetch much after a crash
+         */
+        PERIODIC
+    }
+
+    private final Path part;
+    private final FileChannel channel;
+    private final FsyncPolicy fsync;
+    private final AtomicLong sinceSync = new AtomicLong(0);
+
+    private DownloadSink(Path part, FileChannel channel, FsyncPolicy fsync) {
+        this.part = part;
+        this.channel = channel;
+        this.fsync = fsync;
+    }
+
+    /**
+     * opens (or creates) {@code part} for writing. Nothing that's already in it is removed
+     *
+     * @param expectedLength how big the finished file will be, or a negative number if that isn't known
+     */
+    public static DownloadSink open(Path part, long expectedLength, FsyncPolicy fsync) throws IOException {
+        var parent = part.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        var channel = FileChannel.open(part, CREATE, WRITE, READ);
+        try {
+            setFinalLength(part, channel, expectedLength);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new DownloadSink(part, channel, fsync);
+    }
+
+    /**
+     * copies from {@code source} into the file starting at {@code position} until {@code source} runs out or {@code maxBytes} have
+     * been copied. Safe to call from multiple threads as long as they write to different parts of the file
+     *
+     * @param onWritten called with the number of bytes every time some are written to the file. If reading fails partway through,
+     *                  whatever was already read is written (and reported) before the failure is thrown
+     */
+    public void write(BufferedSource source, long position, long maxBytes, LongConsumer onWritten) throws IOException {
+        var buffer = BUFFERS.get();
+        long written = 0;
+        while (written < maxBytes) {
+            buffer.clear();
+            if (maxBytes - written < buffer.capacity()) {
+                buffer.limit((int) (maxBytes - written));
+            }
+            // fill as much of the buffer as we can before writing, so the file sees a few large writes instead of lots of small ones
+            var eof = false;
+            IOException failure = null;
+            try {
+                while (buffer.hasRemaining()) {
+                    if (source.read(buffer) == -1) {
+                        eof = true;
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+            buffer.flip();
+            var count = buffer.remaining();
+            var at = position + written;
+            while (buffer.hasRemaining()) {
+                at += channel.write(buffer, at);
+            }
+            written += count;
+            if (count > 0) {
+                onWritten.accept(count);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (fsync == FsyncPolicy.PERIODIC && sinceSync.addAndGet(count) >= FSYNC_INTERVAL_BYTES) {
+                sinceSync.set(0);
+                channel.force(false);
+            }
+            if (eof) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * cuts the file off at {@code length}, e.g. to throw away the length set up front past what's actually been downloaded
+     */
+    public void truncate(long length) throws IOException {
+        channel.truncate(length);
+    }
+
+    /**
+     * finishes the file at {@code length} bytes, forces it to disk if the policy says to, and moves it over {@code target}
+     */
+    public void commit(Path target, long length) throws IOException {
+        if (channel.size() > length) {
+            channel.truncate(length);
+        }
+        if (fsync != FsyncPolicy.NEVER) {
+            channel.force(true);
+        }
+        channel.close();
+        ResumableDownloader.moveIntoPlace(part, target);
+        if (fsync != FsyncPolicy.NEVER) {
+            syncDirectory(target.toAbsolutePath().getParent());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * best effort: something else can use up the free space between the check and the download writing to it
+     */
+    private static void setFinalLength(Path part, FileChannel channel, long expectedLength) throws IOException {
+        var current = channel.size();
+        if (expectedLength <= current) {
+            return;
+        }
+        var usable = Files.getFileStore(part).getUsableSpace();
+        if (usable < expectedLength - current) {
+            throw new IOException("Not enough space to download " + expectedLength + " bytes to " + part + ", only " + usable + " bytes free");
+        }
+        // writing the last byte sets the length without writing (or allocating) everything before it
+        channel.write(ByteBuffer.wrap(new byte[1]), expectedLength - 1);
+    }
+
+    /**
+     * makes the rename itself durable. Not every platform lets a directory be opened like this (windows doesn't), and the rename
+     * already happened either way, so failures are ignored
+     */
+    private static void syncDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (var dir = FileChannel.open(directory, READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            log.debug("Couldn't sync directory {}", directory, e);
+        }
+    }
+}
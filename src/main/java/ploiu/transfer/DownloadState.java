@@ -0,0 +1,43 @@
+package ploiu.transfer;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * saved next to a {@code .part} file so an interrupted download can pick back up where it left off, even after a restart.
+ *
+ * @param resource     what's being downloaded (e.g. {@code file:12}), so a partial download is never resumed with different content
+ * @param etag         the server's ETag for the content, if it sent one
+ * @param lastModified the server's Last-Modified for the content, if it sent one
+ * @param length       the full size of the content in bytes, or -1 if the server didn't say
+ * @param written      how many bytes at the start of the {@code .part} file are known to be good. The file is grown to its full
+ *                     length before anything is written, so after a crash its size says nothing about how much was downloaded.
+ *                     Required, so state saved before this was tracked fails to read and its {@code .part} file is thrown
+ *                     away. Always 0 for downloads made by {@link SegmentedDownloader}, which use {@code segments} instead
+ * @param segmentSize  how big each segment is, for downloads made by {@link SegmentedDownloader}. {@code null} otherwise
+ * @param segments     how many bytes at the start of each segment are known to be good, for downloads made by
+ *                     {@link SegmentedDownloader}. {@code null} otherwise
+ */
+public record DownloadState(String resource, @Nullable String etag, @Nullable String lastModified, long length, @JsonProperty(required = true) long written,
+                            @Nullable Long segmentSize, @Nullable long[] segments) {
+    public DownloadState(String resource, @Nullable String etag, @Nullable String lastModified, long length) {
+        this(resource, etag, lastModified, length, 0, null, null);
+    }
+
+    public DownloadState withWritten(long written) {
+        return new DownloadState(resource, etag, lastModified, length, written, segmentSize, segments);
+    }
+
+    public DownloadState withSegments(long segmentSize, long[] segments) {
+        return new DownloadState(resource, etag, lastModified, length, written, segmentSize, segments);
+    }
+
+    /**
+     * @return the value to send as {@code If-Range}, so the server sends the whole thing again if the content changed.
+     * {@code null} if the server never gave us anything to compare against
+     */
+    @Nullable
+    public String validator() {
+        return etag != null ? etag : lastModified;
+    }
+}
@@ -0,0 +1,283 @@
+package ploiu.transfer;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import ploiu.config.CacheConfig;
+import ploiu.model.FileApi;
+import ploiu.util.JsonUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static ploiu.Constants.CACHE_DIR;
+
+/**
+ * keeps files that were opened on disk, so opening them again doesn't download them. A cached file is only used if the server's
+ * size and creation date for it still match what was downloaded; anything else is downloaded again.
+ * <p>
+ * The cache is kept under a byte budget by deleting the least recently opened files first. Which files are cached (and in what
+ * order they were used) is saved next to them, so the cache survives restarts. Files being added or removed are saved right
+ * away, but a file just being opened again only changes the order, so that's saved a little later (or when the app exits)
+ * instead of rewriting the whole index every time. Files in the cache directory that the index doesn't know about (e.g. from
+ * before the cache had a budget) are deleted the first time it's used
+ */
+@Slf4j
+@Singleton
+public class FileCache {
+    private static final String INDEX_FILE = "file-cache.json";
+    // how cached files are named: the file's id, then its name
+    private static final Pattern CACHED_FILE_PATTERN = Pattern.compile("^\\d+_.+");
+    private static final long FLUSH_DELAY_SECONDS = 30;
+
+    private final Path directory;
+    private final long maxBytes;
+    // least recently used first
+    private final LinkedHashMap<Long, CachedFile> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, Single<File>> downloads = new ConcurrentHashMap<>();
+    private long totalBytes = 0;
+    private boolean loaded = false;
+    // the order of the entries changed since the index was last saved
+    private boolean dirty = false;
+    private boolean flushScheduled = false;
+
+    @Inject
+    public FileCache(CacheConfig config) {
+        this(Path.of(CACHE_DIR), config.getFileCacheMaxBytes());
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "file-cache-flush"));
+    }
+
+    /**
+     * @param directory where cached files (and the index) are kept
+     * @param maxBytes  the most space cached files can take up
+     */
+    public FileCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * returns the cached copy of {@code fileApi} if it's still valid, otherwise downloads it with {@code download} and caches
+     * the result. If the file is already being downloaded, the caller waits for that download instead of starting another
+     *
+     * @param fileName the name to save the file as, without the id (which is added so files with the same name don't clash)
+     * @param download downloads the file to the passed location
+     */
+    public Single<File> get(FileApi fileApi, String fileName, Function<File, Single<File>> download) {
+        return Single.defer(() -> {
+                    var target = directory.resolve(fileApi.id() + "_" + fileName).toFile();
+                    var cached = lookup(fileApi, target);
+                    if (cached != null) {
+                        return Single.just(cached);
+                    }
+                    return downloads.computeIfAbsent(fileApi.id(), id -> {
+                        var holder = new ArrayList<Single<File>>(1);
+                        var flight = download.apply(target)
+                                .doOnSuccess(file -> add(fileApi, file))
+                                .doFinally(() -> downloads.remove(id, holder.get(0)))
+                                .cache();
+                        holder.add(flight);
+                        return flight;
+                    });
+                })
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * @return how many bytes of files are cached right now
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return {@code target} if it's a valid copy of {@code fileApi}, otherwise null. A copy that's out of date is deleted
+     */
+    @Nullable
+    private synchronized File lookup(FileApi fileApi, File target) {
+        load();
+        // access ordered, so this also marks it as the most recently used
+        var entry = entries.get(fileApi.id());
+        if (entry == null) {
+            return null;
+        }
+        if (entry.matches(fileApi, target.getName()) && target.length() == entry.size()) {
+            markDirty();
+            return target;
+        }
+        log.debug("Cached copy of file {} is out of date", fileApi.id());
+        if (delete(entry)) {
+            entries.remove(entry.id());
+            totalBytes -= entry.size();
+        }
+        save();
+        return null;
+    }
+
+    private synchronized void add(FileApi fileApi, File file) {
+        // without a size and date there's no way to tell later if the file changed, so it can't be re-used
+        if (fileApi.size() == null || fileApi.dateCreated() == null) {
+            return;
+        }
+        load();
+        var previous = entries.put(fileApi.id(), new CachedFile(fileApi.id(), file.getName(), file.length(), fileApi.dateCreated()));
+        if (previous != null) {
+            totalBytes -= previous.size();
+            if (!previous.fileName().equals(file.getName())) {
+                // renamed on the server since it was last opened
+                delete(previous);
+            }
+        }
+        totalBytes += file.length();
+        evict(fileApi.id());
+        save();
+    }
+
+    /**
+     * saves the index if the order of the files changed since it was last saved
+     */
+    synchronized void flush() {
+        flushScheduled = false;
+        if (dirty) {
+            save();
+        }
+    }
+
+    private void markDirty() {
+        dirty = true;
+        if (!flushScheduled) {
+            flushScheduled = true;
+            Schedulers.io().scheduleDirect(this::flush, FLUSH_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * deletes the least recently used files until the cache fits its budget. {@code keep} (the file that was just added) and
+     * files being downloaded are left alone, even if that means going over budget
+     */
+    private void evict(long keep) {
+        var iterator = entries.values().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            var entry = iterator.next();
+            if (entry.id() == keep || downloads.containsKey(entry.id())) {
+                continue;
+            }
+            // a file that can't be deleted (e.g. it's open in another program on windows) stays in the index so it's tried again later
+            if (delete(entry)) {
+                iterator.remove();
+                totalBytes -= entry.size();
+                log.debug("Evicted file {} from the cache", entry.id());
+            }
+        }
+    }
+
+    /**
+     * reads the index the first time the cache is used, dropping entries whose file is gone and deleting files it doesn't know about
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            log.warn("Failed to create cache directory {}", directory, e);
+        }
+        var index = directory.resolve(INDEX_FILE);
+        if (Files.exists(index)) {
+            try {
+                List<CachedFile> saved = JsonUtils.MAPPER.readValue(index.toFile(), new TypeReference<>() {
+                });
+                for (var entry : saved) {
+                    var file = directory.resolve(entry.fileName()).toFile();
+                    if (file.length() == entry.size()) {
+                        entries.put(entry.id(), entry);
+                        totalBytes += entry.size();
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Ignoring unreadable file cache index {}", index, e);
+            }
+        }
+        removeUnknownFiles();
+        evict(-1);
+    }
+
+    private void removeUnknownFiles() {
+        var known = entries.values().stream().map(CachedFile::fileName).toList();
+        var files = directory.toFile().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (var file : files) {
+            var name = file.getName();
+            // .part files belong to downloads that might still be resumed
+            var isCachedFile = file.isFile() && CACHED_FILE_PATTERN.matcher(name).matches() && !name.endsWith(ResumableDownloader.PART_EXTENSION) && !name.endsWith(ResumableDownloader.STATE_EXTENSION);
+            if (isCachedFile && !known.contains(name)) {
+                try {
+                    Files.deleteIfExists(file.toPath());
+                } catch (IOException e) {
+                    log.debug("Couldn't delete unknown cached file {}", file, e);
+                }
+            }
+        }
+    }
+
+    private void save() {
+        dirty = false;
+        var index = directory.resolve(INDEX_FILE);
+        var temp = directory.resolve(INDEX_FILE + ".tmp");
+        try {
+            JsonUtils.MAPPER.writeValue(temp.toFile(), new ArrayList<>(entries.values()));
+            try {
+                Files.move(temp, index, ATOMIC_MOVE, REPLACE_EXISTING);
+            } catch (IOException e) {
+                Files.move(temp, index, REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // the cache still works for this run, it just won't remember everything next time
+            log.warn("Failed to save file cache index", e);
+        }
+    }
+
+    private boolean delete(CachedFile entry) {
+        try {
+            Files.deleteIfExists(directory.resolve(entry.fileName()));
+            return true;
+        } catch (IOException e) {
+            log.debug("Couldn't delete cached file {}", entry.fileName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * a file in the cache, along with what it was when it was downloaded
+     *
+     * @param fileName    the name of the file in the cache directory
+     * @param size        how big the file is
+     * @param dateCreated the server's creation date for the file, which changes if the file is replaced
+     */
+    record CachedFile(long id, String fileName, long size, String dateCreated) {
+        boolean matches(FileApi fileApi, String name) {
+            return fileName.equals(name) && Objects.equals(fileApi.size(), size) && dateCreated.equals(fileApi.dateCreated());
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package ploiu.transfer;
+
+import io.reactivex.rxjava3.core.Single;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ResponseBody;
+import org.jetbrains.annotations.Nullable;
+import ploiu.exception.ServerUnavailableException;
+import ploiu.util.JsonUtils;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * downloads to a {@code .part} file next to the target, and only moves it into place once it's complete. If the download is
+ * interrupted (including the app closing), the next download of the same thing to the same place asks the server for just the
+ * bytes that are missing with a {@code Range} request.
+ * <p>
+ * Resuming is only trusted when the server confirms the content hasn't changed, either with {@code If-Range} (ETag or
+ * Last-Modified) or by reporting the same total length. Otherwise the download starts over
+ */
+@Slf4j
+public class ResumableDownloader {
+    static final String PART_EXTENSION = ".part";
+    static final String STATE_EXTENSION = ".part.state";
+    // how many times a dropped connection is resumed automatically before giving up
+    private static final int MAX_RESUME_ATTEMPTS = 3;
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+    // how often the state file records how far the download got
+    static final long CHECKPOINT_BYTES = 16L * 1024 * 1024;
+
+    private final DownloadSink.FsyncPolicy fsync;
+
+    public ResumableDownloader() {
+        this(DownloadSink.FsyncPolicy.ON_COMPLETE);
+    }
+
+    public ResumableDownloader(DownloadSink.FsyncPolicy fsync) {
+        this.fsync = fsync;
+    }
+
+    /**
+     * makes the request for the content
+     */
+    @FunctionalInterface
+    public interface RangeFetcher {
+        /**
+         * @param range   the {@code Range} header to send, or null for the whole thing
+         * @param ifRange the {@code If-Range} header to send, or null
+         */
+        Single<Response<ResponseBody>> fetch(@Nullable String range, @Nullable String ifRange);
+    }
+
+    /**
+     * @param resource identifies what's being downloaded (e.g. {@code file:12}). Partial downloads are only resumed for the same resource
+     * @param target   where the finished download goes. Replaced if it already exists
+     * @param fetcher  makes the actual request
+     * @return {@code target}, once the download has finished and been moved into place
+     */
+    public Single<File> download(String resource, File target, RangeFetcher fetcher) {
+        return download(resource, target, fetcher, new TransferProgress(-1));
+    }
+
+    /**
+     * same as {@link #download(String, File, RangeFetcher)}, but reports how many bytes of the file are on disk to {@code progress},
+     * including bytes from a partial download that was resumed
+     */
+    public Single<File> download(String resource, File target, RangeFetcher fetcher, TransferProgress progress) {
+        return Single.defer(() -> attempt(resource, target.toPath(), fetcher, progress))
+                // dropped connections pick up from wherever the .part file got to
+                .retry(MAX_RESUME_ATTEMPTS, e -> e instanceof IOException && !(e instanceof ServerUnavailableException))
+                .map(Path::toFile);
+    }
+
+    private Single<Path> attempt(String resource, Path target, RangeFetcher fetcher, TransferProgress progress) throws IOException {
+        var part = sibling(target, PART_EXTENSION);
+        var stateFile = sibling(target, STATE_EXTENSION);
+        var state = readState(stateFile);
+        long offset = 0;
+        // a partial segmented download has holes in it, so its size says nothing about where a single stream could pick up
+        if (state != null && state.segments() == null && state.resource().equals(resource) && Files.exists(part) && (state.validator() != null || state.length() >= 0)) {
+            offset = Math.min(state.written(), Files.size(part));
+        } else {
+            Files.deleteIfExists(part);
+            Files.deleteIfExists(stateFile);
+            state = null;
+        }
+        if (offset > 0) {
+            log.info("Resuming download of {} at byte {}", resource, offset);
+        }
+        var start = offset;
+        var previous = state;
+        progress.set(start);
+        return fetcher.fetch(start > 0 ? "bytes=" + start + "-" : null, start > 0 ? previous.validator() : null)
+                .map(response -> {
+                    try (var body = response.body()) {
+                        receive(resource, target, part, stateFile, previous, start, response, body, progress);
+                    }
+                    return target;
+                });
+    }
+
+    private void receive(String resource, Path target, Path part, Path stateFile, @Nullable DownloadState previous, long offset, Response<ResponseBody> response, @Nullable ResponseBody body, TransferProgress progress) throws IOException {
+        var code = response.code();
+        if (code == 416 && previous != null && previous.length() == offset) {
+            // we already have every byte, we just didn't get to move it into place last time
+            finish(target, part, stateFile, previous.length());
+            progress.set(previous.length());
+            return;
+        }
+        if (!response.isSuccessful() || body == null) {
+            if (response.errorBody() != null) {
+                response.errorBody().close();
+            }
+            if (code == 416) {
+                // our partial data doesn't line up with what the server has anymore
+                Files.deleteIfExists(part);
+                Files.deleteIfExists(stateFile);
+            }
+            throw new HttpException(response);
+        }
+        var headers = response.headers();
+        long length;
+        long position;
+        DownloadState state;
+        if (code == 206) {
+            var range = parseContentRange(headers.get("Content-Range"));
+            var total = range == null ? -1 : range[2];
+            if (range == null || range[0] != offset || (previous != null && previous.length() >= 0 && total >= 0 && total != previous.length())) {
+                // the server sent a different part of the file than we asked for, or the file changed size. Either way, start over
+                Files.deleteIfExists(part);
+                Files.deleteIfExists(stateFile);
+                throw new IOException("Server sent an unexpected range [" + headers.get("Content-Range") + "] when resuming at " + offset + ", restarting");
+            }
+            length = total >= 0 ? total : previous == null ? -1 : previous.length();
+            position = offset;
+            state = previous != null ? previous : new DownloadState(resource, headers.get("ETag"), headers.get("Last-Modified"), length);
+        } else {
+            // either this is a fresh download, or the server decided the content changed (or doesn't support ranges), so it's sending everything
+            length = body.contentLength();
+            position = 0;
+            // whatever was on disk is being replaced
+            progress.set(0);
+            state = new DownloadState(resource, headers.get("ETag"), headers.get("Last-Modified"), length);
+        }
+        // saved before anything is written, so a crash while the full length file is still mostly empty never trusts its size
+        state = state.withWritten(position);
+        writeState(stateFile, state);
+        progress.expectTotal(length);
+        // counted from what reaches the file rather than what's read off the wire, so a retried attempt can't count the same bytes twice
+        try (var sink = DownloadSink.open(part, length, fsync)) {
+            var end = new long[]{position};
+            try {
+                while (true) {
+                    var before = end[0];
+                    sink.write(body.source(), before, CHECKPOINT_BYTES, count -> progress.set(end[0] += count));
+                    if (end[0] - before < CHECKPOINT_BYTES) {
+                        break;
+                    }
+                    writeState(stateFile, state.withWritten(end[0]));
+                }
+            } catch (IOException e) {
+                // keep what made it to disk so the next attempt resumes from here
+                checkpoint(sink, stateFile, state, end[0]);
+                throw e;
+            }
+            if (length >= 0 && end[0] != length) {
+                checkpoint(sink, stateFile, state, end[0]);
+                throw new IOException("Download ended early, got " + end[0] + " of " + length + " bytes");
+            }
+            sink.commit(target, end[0]);
+        }
+        Files.deleteIfExists(stateFile);
+    }
+
+    /**
+     * drops the length set up front past {@code written} and records how far the download got
+     */
+    private static void checkpoint(DownloadSink sink, Path stateFile, DownloadState state, long written) throws IOException {
+        sink.truncate(written);
+        writeState(stateFile, state.withWritten(written));
+    }
+
+    private void finish(Path target, Path part, Path stateFile, long expectedLength) throws IOException {
+        try (var sink = DownloadSink.open(part, expectedLength, fsync)) {
+            sink.commit(target, expectedLength);
+        }
+        Files.deleteIfExists(stateFile);
+    }
+
+    /**
+     * replaces {@code target} with the finished {@code part} file, atomically if the file system supports it
+     */
+    static void moveIntoPlace(Path part, Path target) throws IOException {
+        try {
+            Files.move(part, target, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part, target, REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return {@code [start, end, total]}, with total -1 if the server didn't know it, or null if the header is missing or malformed
+     */
+    @Nullable
+    static long[] parseContentRange(@Nullable String header) {
+        if (header == null) {
+            return null;
+        }
+        var matcher = CONTENT_RANGE.matcher(header.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+        var total = matcher.group(3).equals("*") ? -1 : Long.parseLong(matcher.group(3));
+        return new long[]{Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)), total};
+    }
+
+    static Path sibling(Path target, String extension) {
+        return target.resolveSibling(target.getFileName() + extension);
+    }
+
+    @Nullable
+    static DownloadState readState(Path stateFile) {
+        if (!Files.exists(stateFile)) {
+            return null;
+        }
+        try {
+            return JsonUtils.MAPPER.readValue(stateFile.toFile(), DownloadState.class);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable download state {}", stateFile, e);
+            return null;
+        }
+    }
+
+    static void writeState(Path stateFile, DownloadState state) throws IOException {
+        var parent = stateFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        JsonUtils.MAPPER.writeValue(stateFile.toFile(), state);
+    }
+}
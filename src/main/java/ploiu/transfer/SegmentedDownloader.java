@@ -0,0 +1,369 @@
+package ploiu.transfer;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Single;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ResponseBody;
+import org.jetbrains.annotations.Nullable;
+import ploiu.exception.ServerUnavailableException;
+import ploiu.transfer.ResumableDownloader.RangeFetcher;
+import ploiu.util.AdaptiveConcurrencyLimiter;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static ploiu.transfer.ResumableDownloader.PART_EXTENSION;
+import static ploiu.transfer.ResumableDownloader.STATE_EXTENSION;
+
+/**
+ * downloads large files as several byte ranges at once, which fills a high latency link a lot better than 1 stream does.
+ * Each range is written straight to its offset in the {@code .part} file with positional {@link FileChannel} writes, so
+ * segments can finish in any order. How far each segment got is saved in the {@code .part.state} file (every
+ * {@link ResumableDownloader#CHECKPOINT_BYTES} and whenever a segment finishes or fails), so an interrupted download only
+ * fetches the parts of each segment that are missing, even after a restart.
+ * <p>
+ * How many segments run at once is decided by an {@link AdaptiveConcurrencyLimiter}: since every segment is the same size,
+ * a segment taking much longer than the fastest one means the link is saturated, and the limit backs off; otherwise it keeps
+ * adding segments until {@link #MAX_SEGMENTS}.
+ * <p>
+ * Small files, partial downloads started by {@link ResumableDownloader}, and servers that ignore {@code Range} all go through
+ * a single stream instead. Every segment has to report the same total size as {@code size}, so a stale size can't produce a
+ * truncated or mixed up file
+ */
+@Slf4j
+public class SegmentedDownloader {
+    // anything smaller than this doesn't benefit enough from extra connections to be worth it
+    static final long MIN_SEGMENTED_SIZE = 32L * 1024 * 1024;
+    static final long SEGMENT_SIZE = 4L * 1024 * 1024;
+    static final int MAX_SEGMENTS = 8;
+    private static final int INITIAL_SEGMENTS = 2;
+    // how many times a dropped segment is resumed before the whole download fails
+    private static final int MAX_SEGMENT_ATTEMPTS = 3;
+
+    private final ResumableDownloader singleStream;
+    private final long minSegmentedSize;
+    private final long segmentSize;
+    private final int maxSegments;
+    private final DownloadSink.FsyncPolicy fsync;
+
+    public SegmentedDownloader(ResumableDownloader singleStream) {
+        this(singleStream, DownloadSink.FsyncPolicy.ON_COMPLETE);
+    }
+
+    public SegmentedDownloader(ResumableDownloader singleStream, DownloadSink.FsyncPolicy fsync) {
+        this(singleStream, MIN_SEGMENTED_SIZE, SEGMENT_SIZE, MAX_SEGMENTS, fsync);
+    }
+
+    SegmentedDownloader(ResumableDownloader singleStream, long minSegmentedSize, long segmentSize, int maxSegments, DownloadSink.FsyncPolicy fsync) {
+        if (segmentSize < 1 || maxSegments < 1) {
+            throw new IllegalArgumentException("segment size and max segments must be positive");
+        }
+        this.singleStream = singleStream;
+        this.minSegmentedSize = minSegmentedSize;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.fsync = fsync;
+    }
+
+    /**
+     * @param resource identifies what's being downloaded (e.g. {@code file:12})
+     * @param target   where the finished download goes. Replaced if it already exists
+     * @param size     how big the download is, or a negative number if it isn't known
+     * @param fetcher  makes the actual requests
+     * @return {@code target}, once the download has finished and been moved into place
+     */
+    public Single<File> download(String resource, File target, long size, RangeFetcher fetcher) {
+        return download(resource, target, size, fetcher, new TransferProgress(size));
+    }
+
+    /**
+     * same as {@link #download(String, File, long, RangeFetcher)}, but reports every byte written to {@code progress}
+     */
+    public Single<File> download(String resource, File target, long size, RangeFetcher fetcher, TransferProgress progress) {
+        var path = target.toPath();
+        if (size < Math.max(minSegmentedSize, 1)) {
+            return singleStream.download(resource, target, fetcher, progress);
+        }
+        var part = ResumableDownloader.sibling(path, PART_EXTENSION);
+        var stateFile = ResumableDownloader.sibling(path, STATE_EXTENSION);
+        var saved = ResumableDownloader.readState(stateFile);
+        if (saved != null && saved.segments() == null && Files.exists(part)) {
+            // started as a single stream, so only a single stream knows how to pick it back up
+            return singleStream.download(resource, target, fetcher, progress);
+        }
+        return Single.using(
+                        () -> {
+                            var segments = split(size);
+                            var resumed = resume(saved, resource, size, segments, part);
+                            if (resumed == null) {
+                                Files.deleteIfExists(part);
+                                Files.deleteIfExists(stateFile);
+                            } else {
+                                log.info("Resuming segmented download of {}", resource);
+                            }
+                            progress.set(segments.stream().mapToLong(segment -> segment.written.get()).sum());
+                            return new Download(resource, DownloadSink.open(part, size, fsync), stateFile, segments, resumed, progress);
+                        },
+                        download -> segmented(download, size, fetcher)
+                                // keep track of what made it to disk, so the next attempt only fetches what's missing
+                                .doOnError(ignored -> download.checkpoint())
+                                .map(ignored -> {
+                                    download.sink.commit(path, size);
+                                    Files.deleteIfExists(stateFile);
+                                    return target;
+                                }),
+                        Download::close)
+                .doOnError(e -> {
+                    // the file changed on the server, so what's on disk is from a different version of it and can't be resumed
+                    if (e instanceof IllegalStateException) {
+                        Files.deleteIfExists(part);
+                        Files.deleteIfExists(stateFile);
+                    }
+                });
+    }
+
+    /**
+     * restores how far each segment got from {@code saved}, if it's from an earlier attempt at this same download
+     *
+     * @return the saved state, or null if there's nothing to resume
+     */
+    @Nullable
+    private DownloadState resume(@Nullable DownloadState saved, String resource, long size, List<Segment> segments, Path part) {
+        if (saved == null || saved.segments() == null || saved.validator() == null || !Files.exists(part)) {
+            return null;
+        }
+        // segments are only comparable if they were split up the same way
+        if (!saved.resource().equals(resource) || saved.length() != size || !Objects.equals(saved.segmentSize(), segmentSize) || saved.segments().length != segments.size()) {
+            return null;
+        }
+        for (var i = 0; i < segments.size(); i++) {
+            var segment = segments.get(i);
+            segment.written.set(Math.max(0, Math.min(saved.segments()[i], segment.length())));
+        }
+        return saved;
+    }
+
+    private Single<Boolean> segmented(Download download, long size, RangeFetcher fetcher) {
+        var segments = download.segments.stream().filter(segment -> segment.remaining() > 0).toList();
+        if (segments.isEmpty()) {
+            return Single.just(true);
+        }
+        var first = segments.get(0);
+        // when resuming, the first request also checks that the file hasn't changed since the segments on disk were fetched
+        var savedValidator = download.saved == null ? null : download.saved.validator();
+        return fetcher.fetch(first.remainingRange(), savedValidator)
+                .flatMap(response -> {
+                    if (response.code() != 206) {
+                        log.info("Server ignored the range request for {}, downloading it as a single stream", download.resource);
+                        return Single.fromCallable(() -> writeWhole(response, download, size));
+                    }
+                    var headers = response.headers();
+                    var etag = headers.get("ETag");
+                    // makes sure every segment comes from the same version of the file as the first one
+                    var validator = savedValidator != null ? savedValidator : etag != null ? etag : headers.get("Last-Modified");
+                    download.start(etag, headers.get("Last-Modified"), size);
+                    var limiter = new AdaptiveConcurrencyLimiter(Math.min(INITIAL_SEGMENTS, maxSegments), 1, maxSegments);
+                    var firstResponse = new AtomicReference<>(response);
+                    return Flowable.fromIterable(segments)
+                            .flatMapCompletable(segment -> limiter.submit(segment.length(), () -> fetchSegment(segment, segment == first ? firstResponse : null, validator, download, size, fetcher))
+                                    .ignoreElement())
+                            .doOnComplete(() -> log.info("Downloaded {} in {} segments, finished at {} concurrent segments", download.resource, segments.size(), limiter.getLimit()))
+                            .toSingleDefault(true);
+                });
+    }
+
+    /**
+     * @param prefetched the response that was already fetched for this segment, if any. Only used for the first attempt
+     */
+    private Single<Segment> fetchSegment(Segment segment, @Nullable AtomicReference<Response<ResponseBody>> prefetched, @Nullable String validator, Download download, long size, RangeFetcher fetcher) {
+        return Single.defer(() -> {
+                    var response = prefetched == null ? null : prefetched.getAndSet(null);
+                    return response != null ? Single.just(response) : fetcher.fetch(segment.remainingRange(), validator);
+                })
+                .map(response -> {
+                    writeSegment(response, segment, download, size);
+                    download.checkpoint();
+                    return segment;
+                })
+                // a dropped segment picks up from wherever it got to
+                .retry(MAX_SEGMENT_ATTEMPTS, e -> e instanceof IOException && !(e instanceof ServerUnavailableException));
+    }
+
+    private static void writeSegment(Response<ResponseBody> response, Segment segment, Download download, long size) throws IOException {
+        try (var body = response.body()) {
+            if (!response.isSuccessful() || body == null) {
+                if (response.errorBody() != null) {
+                    response.errorBody().close();
+                }
+                throw new HttpException(response);
+            }
+            if (response.code() != 206) {
+                // If-Range didn't match, so the whole file is coming back. Mixing it with the segments we already have would corrupt it
+                throw new IllegalStateException("The file changed on the server while it was being downloaded");
+            }
+            var range = ResumableDownloader.parseContentRange(response.headers().get("Content-Range"));
+            if (range == null || range[0] != segment.position()) {
+                throw new IOException("Server sent an unexpected range [" + response.headers().get("Content-Range") + "] for bytes starting at " + segment.position());
+            }
+            if (range[2] >= 0 && range[2] != size) {
+                // the size we were given is stale, so the segments wouldn't add up to the file on the server
+                throw new IllegalStateException("Server says the file is " + range[2] + " bytes, but it was expected to be " + size);
+            }
+            download.sink.write(body.source(), segment.position(), segment.remaining(), count -> {
+                segment.written.addAndGet(count);
+                download.wrote(count);
+            });
+        }
+        if (segment.remaining() > 0) {
+            throw new IOException("Segment ended early, " + segment.remaining() + " bytes missing at " + segment.position());
+        }
+    }
+
+    private static boolean writeWhole(Response<ResponseBody> response, Download download, long size) throws IOException {
+        try (var body = response.body()) {
+            if (!response.isSuccessful() || body == null) {
+                if (response.errorBody() != null) {
+                    response.errorBody().close();
+                }
+                throw new HttpException(response);
+            }
+            // everything is being written over from the start, so the saved segments don't describe the file anymore
+            download.abandon();
+            download.progress.set(0);
+            var written = new AtomicLong(0);
+            download.sink.write(body.source(), 0, Long.MAX_VALUE, count -> download.progress.set(written.addAndGet(count)));
+            if (written.get() != size) {
+                throw new IOException("Download ended early, got " + written + " of " + size + " bytes");
+            }
+        }
+        return true;
+    }
+
+    private List<Segment> split(long size) {
+        var segments = new ArrayList<Segment>();
+        for (long start = 0; start < size; start += segmentSize) {
+            segments.add(new Segment(start, Math.min(start + segmentSize, size) - 1));
+        }
+        return segments;
+    }
+
+    /**
+     * everything 1 attempt at a segmented download is writing to: the {@code .part} file, and the state file that says how far
+     * each segment got
+     */
+    private final class Download implements Closeable {
+        private final String resource;
+        private final DownloadSink sink;
+        private final Path stateFile;
+        private final List<Segment> segments;
+        @Nullable
+        private final DownloadState saved;
+        // only ever told about bytes that made it into the sink, so a segment that's retried doesn't count what it already wrote again
+        private final TransferProgress progress;
+        private final AtomicLong sinceCheckpoint = new AtomicLong(0);
+        @Nullable
+        private DownloadState state;
+
+        private Download(String resource, DownloadSink sink, Path stateFile, List<Segment> segments, @Nullable DownloadState saved, TransferProgress progress) {
+            this.resource = resource;
+            this.sink = sink;
+            this.stateFile = stateFile;
+            this.segments = segments;
+            this.saved = saved;
+            this.progress = progress;
+            this.state = saved;
+        }
+
+        /**
+         * saves the state before any segment is written, so a crash while the full length file is still mostly empty never
+         * trusts what's in it
+         */
+        synchronized void start(@Nullable String etag, @Nullable String lastModified, long size) throws IOException {
+            if (state == null) {
+                state = new DownloadState(resource, etag, lastModified, size);
+            }
+            writeCheckpoint();
+        }
+
+        void wrote(long count) {
+            progress.add(count);
+            if (sinceCheckpoint.addAndGet(count) >= ResumableDownloader.CHECKPOINT_BYTES) {
+                try {
+                    checkpoint();
+                } catch (IOException e) {
+                    // only costs re-fetching a bit more if the download is interrupted, so it's not worth failing over
+                    log.warn("Couldn't save how far {} got", resource, e);
+                }
+            }
+        }
+
+        synchronized void checkpoint() throws IOException {
+            if (state != null) {
+                writeCheckpoint();
+            }
+        }
+
+        /**
+         * stops saving segments, for when the file is being downloaded in 1 piece instead
+         */
+        synchronized void abandon() throws IOException {
+            state = null;
+            Files.deleteIfExists(stateFile);
+        }
+
+        private void writeCheckpoint() throws IOException {
+            sinceCheckpoint.set(0);
+            var written = new long[segments.size()];
+            for (var i = 0; i < written.length; i++) {
+                written[i] = segments.get(i).written.get();
+            }
+            ResumableDownloader.writeState(stateFile, state.withSegments(segmentSize, written));
+        }
+
+        @Override
+        public void close() throws IOException {
+            sink.close();
+        }
+    }
+
+    /**
+     * an inclusive byte range of the download, and how much of it has been written so far
+     */
+    private static final class Segment {
+        private final long start;
+        private final long end;
+        private final AtomicLong written = new AtomicLong(0);
+
+        private Segment(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        long length() {
+            return end - start + 1;
+        }
+
+        long position() {
+            return start + written.get();
+        }
+
+        long remaining() {
+            return length() - written.get();
+        }
+
+        String remainingRange() {
+            return "bytes=" + position() + "-" + end;
+        }
+    }
+}
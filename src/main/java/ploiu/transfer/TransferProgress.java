@@ -0,0 +1,117 @@
+package ploiu.transfer;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * tracks how many bytes of a transfer (or a group of transfers, like everything in a drag and drop) have been sent or received,
+ * and how fast that's happening.
+ * <p>
+ * Bytes are counted from whatever thread is doing the reading or writing, which is cheap. Rates are only worked out when
+ * {@link #snapshot()} is called, so whatever displays the progress decides how often that happens
+ */
+public final class TransferProgress {
+    // how quickly the smoothed rate reacts to changes; about 63% of a change shows up after this long
+    private static final double SMOOTHING_SECONDS = 3.0;
+    // snapshots closer together than this reuse the previous rates, because they'd be mostly noise
+    private static final long MIN_SAMPLE_NANOS = 100_000_000;
+
+    private final AtomicLong transferred = new AtomicLong(0);
+    private final AtomicLong total;
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+    private long lastSampleNanos;
+    private long lastSampleBytes = 0;
+    private double rate = 0;
+    private double smoothedRate = -1;
+
+    /**
+     * @param totalBytes how many bytes are expected, or a negative number if it isn't known yet
+     */
+    public TransferProgress(long totalBytes) {
+        this(totalBytes, System::nanoTime);
+    }
+
+    TransferProgress(long totalBytes, LongSupplier nanoClock) {
+        this.total = new AtomicLong(totalBytes);
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+        this.lastSampleNanos = startNanos;
+    }
+
+    /**
+     * records bytes that were just sent or received. Negative if bytes that were counted have to be sent again
+     */
+    public void add(long bytes) {
+        transferred.addAndGet(bytes);
+    }
+
+    /**
+     * sets how many bytes are done outright, e.g. when a download resumes from data that's already on disk
+     */
+    public void set(long bytes) {
+        transferred.set(bytes);
+    }
+
+    /**
+     * sets the total if it wasn't known when the transfer started
+     */
+    public void expectTotal(long totalBytes) {
+        if (totalBytes >= 0) {
+            total.compareAndSet(-1, totalBytes);
+        }
+    }
+
+    public long getTransferred() {
+        return transferred.get();
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public synchronized Snapshot snapshot() {
+        var now = nanoClock.getAsLong();
+        var bytes = transferred.get();
+        var elapsed = now - lastSampleNanos;
+        if (elapsed >= MIN_SAMPLE_NANOS) {
+            var seconds = elapsed / 1e9;
+            rate = Math.max(bytes - lastSampleBytes, 0) / seconds;
+            // time based weighting, so the smoothing is the same no matter how often this is called
+            var weight = 1 - Math.exp(-seconds / SMOOTHING_SECONDS);
+            smoothedRate = smoothedRate < 0 ? rate : smoothedRate + weight * (rate - smoothedRate);
+            lastSampleNanos = now;
+            lastSampleBytes = bytes;
+        }
+        var totalBytes = total.get();
+        Duration eta = null;
+        if (totalBytes >= 0 && smoothedRate > 0) {
+            eta = Duration.ofSeconds((long) Math.ceil(Math.max(totalBytes - bytes, 0) / smoothedRate));
+        }
+        return new Snapshot(bytes, totalBytes, rate, Math.max(smoothedRate, 0), eta, Duration.ofNanos(now - startNanos));
+    }
+
+    /**
+     * @param transferred            how many bytes are done
+     * @param total                  how many bytes there are in all, or -1 if that isn't known
+     * @param bytesPerSecond         the rate since the previous snapshot
+     * @param smoothedBytesPerSecond an exponentially weighted average of the rate, which is steadier and better for estimates
+     * @param eta                    how long until it's done, or null if that can't be worked out yet
+     * @param elapsed                how long since the transfer started
+     */
+    public record Snapshot(long transferred, long total, double bytesPerSecond, double smoothedBytesPerSecond,
+                           @Nullable Duration eta, Duration elapsed) {
+        /**
+         * @return how much is done from 0 to 1, or -1 if the total isn't known
+         */
+        public double fraction() {
+            if (total < 0) {
+                return -1;
+            }
+            return total == 0 ? 1 : Math.min((double) transferred / total, 1);
+        }
+    }
+}
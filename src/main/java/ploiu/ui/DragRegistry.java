@@ -0,0 +1,78 @@
+package ploiu.ui;
+
+import javafx.scene.input.ClipboardContent;
+import ploiu.model.FileApi;
+import ploiu.model.FolderApi;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * keeps track of the files and folders being dragged around inside the app.
+ * <p>
+ * The dragboard only carries the type ({@link DataTypes}) and id of what's being dragged, and drop targets use that to get
+ * the already-loaded object back from here. That way nothing has to be serialized, no matter how big a folder is
+ */
+public final class DragRegistry {
+    private static final Map<Long, FolderApi> FOLDERS = new ConcurrentHashMap<>();
+    private static final Map<Long, FileApi> FILES = new ConcurrentHashMap<>();
+
+    private DragRegistry() {
+    }
+
+    /**
+     * @return dragboard content for dragging {@code folder}
+     */
+    public static ClipboardContent dragFolder(FolderApi folder) {
+        FOLDERS.put(folder.id(), folder);
+        var content = new ClipboardContent();
+        content.put(DataTypes.FOLDER, String.valueOf(folder.id()));
+        return content;
+    }
+
+    /**
+     * @return dragboard content for dragging {@code file}
+     */
+    public static ClipboardContent dragFile(FileApi file) {
+        FILES.put(file.id(), file);
+        var content = new ClipboardContent();
+        content.put(DataTypes.FILE, String.valueOf(file.id()));
+        return content;
+    }
+
+    /**
+     * @param content the dragboard's content for {@link DataTypes#FOLDER}
+     * @return the folder being dragged, or empty if the content isn't a folder dragged from this app
+     */
+    public static Optional<FolderApi> droppedFolder(Object content) {
+        return parseId(content).map(FOLDERS::get);
+    }
+
+    /**
+     * @param content the dragboard's content for {@link DataTypes#FILE}
+     * @return the file being dragged, or empty if the content isn't a file dragged from this app
+     */
+    public static Optional<FileApi> droppedFile(Object content) {
+        return parseId(content).map(FILES::get);
+    }
+
+    /**
+     * forgets everything being dragged. Called when a drag ends, whether it was dropped somewhere or not
+     */
+    public static void dragDone() {
+        FOLDERS.clear();
+        FILES.clear();
+    }
+
+    private static Optional<Long> parseId(Object content) {
+        if (content instanceof String id) {
+            try {
+                return Optional.of(Long.parseLong(id));
+            } catch (NumberFormatException e) {
+                return Optional.empty();
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -2,17 +2,21 @@ package ploiu.ui;
 
 import io.reactivex.rxjava3.core.Single;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.value.ChangeListener;
 import javafx.event.ActionEvent;
-import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
+import javafx.event.EventHandler;
+import javafx.geometry.Pos;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
+import javafx.scene.control.MenuItem;
 import javafx.scene.control.Tooltip;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.input.TransferMode;
 import javafx.scene.layout.AnchorPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
 import javafx.stage.DirectoryChooser;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
@@ -28,59 +32,121 @@ import ploiu.model.TextInputDialogOptions;
 import ploiu.util.UIUtils;
 
 import java.io.File;
-import java.io.IOException;
-import java.util.Map;
 
 import static ploiu.util.DialogUtils.showErrorDialog;
 
+/**
+ * a file's tile in the file view. The nodes are built in code instead of from fxml, since a folder can have thousands of
+ * these and parsing the same fxml for each one was most of the time it took to open a folder. The context menu and tooltip
+ * are only made once they're needed, since most tiles never show either
+ */
 public class FileEntry extends AnchorPane {
+    private static final String STYLESHEET = FileEntry.class.getClassLoader().getResource("ui/components/FileEntry/FileEntry.css").toExternalForm();
 
     @Getter
-    private final FileApi file;
+    private FileApi file;
     private final AsyncEventReceiver<FileObject> fileReceiver;
     private final ObjectProperty<FileApi> editingFile;
-    private final ObjectProperty<Image> previewImage;
+    private ObjectProperty<Image> previewImage;
+    private final ChangeListener<Image> previewListener = (observable, oldValue, newValue) -> showIcon();
 
-    @FXML
-    private ImageView icon;
-    @FXML
-    private Label fileName;
-    @FXML
+    private final ImageView icon = new ImageView();
+    private final Label fileName = new Label();
     private ContextMenu fileMenu;
+    private Tooltip tooltip;
 
     public FileEntry(FileApi file, AsyncEventReceiver<FileObject> eventHandler, ObjectProperty<FileApi> editingFile, @NotNull ObjectProperty<Image> previewImage) {
         super();
         this.editingFile = editingFile;
         this.file = file;
         this.previewImage = previewImage;
-        var loader = new FXMLLoader(getClass().getClassLoader().getResource("ui/components/FileEntry/FileEntry.fxml"));
-        loader.setRoot(this);
-        loader.setController(this);
-        try {
-            loader.load();
-            this.fileName.setText(file.name());
-            var image = UIUtils.MIME_IMAGE_MAPPING.get(file.fileType().toLowerCase());
-            icon.setImage(image);
-            this.fileReceiver = eventHandler;
-            Tooltip.install(this, new Tooltip(file.name()));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        this.fileReceiver = eventHandler;
+        getStylesheets().add(STYLESHEET);
+        icon.setId("icon");
+        icon.getStyleClass().add("image");
+        fileName.setId("fileName");
+        fileName.getStyleClass().add("text");
+        var iconRow = new HBox(icon);
+        iconRow.setAlignment(Pos.CENTER);
+        var nameRow = new HBox(fileName);
+        nameRow.setAlignment(Pos.CENTER);
+        var container = new VBox(iconRow, nameRow);
+        container.setId("fileEntryContainer");
+        container.setAlignment(Pos.CENTER);
+        container.getStyleClass().add("file-entry-container");
+        AnchorPane.setTopAnchor(container, 0.0);
+        AnchorPane.setBottomAnchor(container, 0.0);
+        AnchorPane.setLeftAnchor(container, 0.0);
+        AnchorPane.setRightAnchor(container, 0.0);
+        getChildren().add(container);
+        this.fileName.setText(file.name());
+        showIcon();
+        previewImage.addListener(previewListener);
+        setOnDragDetected(this::onDragDetected);
+        this.setOnContextMenuRequested(event -> getFileMenu().show(this, event.getScreenX(), event.getScreenY()));
+        // the tooltip only shows once the mouse is over the tile anyway
+        addEventHandler(MouseEvent.MOUSE_ENTERED, ignored -> installTooltip());
+    }
+
+    /**
+     * points this entry at a different file, so the same node can be re-used instead of making a new one
+     */
+    public void setFile(FileApi file, @NotNull ObjectProperty<Image> previewImage) {
+        this.file = file;
+        this.previewImage.removeListener(previewListener);
+        this.previewImage = previewImage;
+        previewImage.addListener(previewListener);
+        fileName.setText(file.name());
+        if (tooltip != null) {
+            tooltip.setText(file.name());
         }
+        showIcon();
     }
 
-    @FXML
-    private void initialize() {
-        previewImage.addListener((observable, oldValue, newValue) -> {
-            if (newValue == null) {
-                icon.setImage(UIUtils.MIME_IMAGE_MAPPING.get(file.fileType().toLowerCase()));
-            } else {
-                icon.setImage(newValue);
-            }
-        });
-        this.setOnContextMenuRequested(event -> fileMenu.show(this, event.getScreenX(), event.getScreenY()));
+    /**
+     * stops following the preview of the file this entry was showing, for when the entry is put aside. Otherwise the preview
+     * would keep a spare (or thrown away) entry from being garbage collected, and keep changing its icon
+     */
+    public void release() {
+        previewImage.removeListener(previewListener);
+    }
+
+    private ContextMenu getFileMenu() {
+        if (fileMenu == null) {
+            fileMenu = new ContextMenu(
+                    menuItem("saveAs", "Save As...", this::saveAsClicked),
+                    menuItem("renameFile", "Rename File", this::renameItemClicked),
+                    menuItem("deleteFile", "Delete File", this::deleteItemClicked),
+                    menuItem("info", "Info", this::infoItemClicked)
+            );
+            fileMenu.setId("fileMenu");
+        }
+        return fileMenu;
+    }
+
+    private void installTooltip() {
+        if (tooltip == null) {
+            tooltip = new Tooltip(file.name());
+            Tooltip.install(this, tooltip);
+        }
+    }
+
+    static MenuItem menuItem(String id, String text, EventHandler<ActionEvent> onAction) {
+        var item = new MenuItem(text);
+        item.setId(id);
+        item.setOnAction(onAction);
+        return item;
+    }
+
+    private void showIcon() {
+        var preview = previewImage.get();
+        if (preview == null) {
+            icon.setImage(UIUtils.MIME_IMAGE_MAPPING.get(file.fileType().toLowerCase()));
+        } else {
+            icon.setImage(preview);
+        }
     }
 
-    @FXML
     private void renameItemClicked(ActionEvent event) {
         EventReceiver<String> renameCallback = evt -> {
             var newName = evt.get();
@@ -98,7 +164,6 @@ public class FileEntry extends AnchorPane {
         new TextInputDialog(new TextInputDialogOptions(getScene().getWindow(), renameCallback, "Rename File").initialText(file.name()));
     }
 
-    @FXML
     private void deleteItemClicked(ActionEvent ignored) {
         EventReceiver<Boolean> dialogCallback = res -> {
             if (res.get()) {
@@ -115,7 +180,6 @@ public class FileEntry extends AnchorPane {
         new ConfirmDialog(new ConfirmDialogOptions(getScene().getWindow(), dialogCallback, "Are you sure you want to delete this file?"));
     }
 
-    @FXML
     private void saveAsClicked(ActionEvent ignored) {
         var chooser = new DirectoryChooser();
         // better user experience to default to the user dir, but also makes tests possible
@@ -129,15 +193,13 @@ public class FileEntry extends AnchorPane {
         }
     }
 
-    @FXML
     private void onDragDetected(MouseEvent e) {
         var board = startDragAndDrop(TransferMode.MOVE);
-
-        board.setContent(Map.of(DataTypes.FILE, file.toJson()));
+        board.setContent(DragRegistry.dragFile(file));
+        setOnDragDone(ignored -> DragRegistry.dragDone());
         e.consume();
     }
 
-    @FXML
     private void infoItemClicked(ActionEvent ignored) {
         editingFile.set(file);
     }
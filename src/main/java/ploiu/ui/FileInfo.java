@@ -24,6 +24,7 @@ import ploiu.event.file.FileSaveEvent;
 import ploiu.event.file.FileUpdateEvent;
 import ploiu.model.*;
 import ploiu.service.FileService;
+import ploiu.transfer.TransferProgress;
 import ploiu.util.MimeUtils;
 import ploiu.util.UIUtils;
 
@@ -76,6 +77,13 @@ public class FileInfo extends AnchorPane {
         }
     }
 
+    /**
+     * shows a newer version of the file, e.g. after it was changed somewhere other than this panel
+     */
+    public void setFile(FileApi file) {
+        this.file.setValue(file);
+    }
+
     private void onFileChanged(ObservableValue<? extends FileApi> ignored, FileApi ignored1, FileApi newFile) {
         if (newFile == null) {
             return;
@@ -127,7 +135,7 @@ public class FileInfo extends AnchorPane {
         });
         // try and fetch actual file preview
         fileService
-                .getFilePreview(file.get().id())
+                .getFilePreview(file.get())
                 .subscribeOn(Schedulers.io())
                 .subscribe(img -> Platform.runLater(() -> fileIcon.setImage(img)), err -> {/* no op - no icon */});
     }
@@ -140,17 +148,32 @@ public class FileInfo extends AnchorPane {
 
     private void updateFile(FileApi updatedFile) {
         var event = new FileUpdateEvent(updatedFile);
+        // shown right away so the change doesn't wait on the server, and put back if the server doesn't take it
+        var previous = this.file.get();
+        this.file.setValue(updatedFile);
         fileReceiver.process(event)
                 .observeOn(JavaFxScheduler.platform())
-                .doOnError(e -> showErrorDialog("Failed to update file, error is " + e.getMessage(), "Failed to update file", null))
+                .doOnError(e -> {
+                    rollback(previous, updatedFile);
+                    showErrorDialog("Failed to update file, error is " + e.getMessage(), "Failed to update file", null);
+                })
                 .doOnSuccess(success -> {
-                    if (success) {
-                        this.file.setValue(updatedFile);
+                    if (!success) {
+                        rollback(previous, updatedFile);
                     }
                 })
                 .subscribe();
     }
 
+    /**
+     * puts {@code previous} back, unless something else has replaced {@code updated} since
+     */
+    private void rollback(FileApi previous, FileApi updated) {
+        if (this.file.get() == updated) {
+            this.file.setValue(previous);
+        }
+    }
+
     @FXML
     void addTagClicked() {
         EventReceiver<String> confirmCallback = res -> {
@@ -196,9 +219,12 @@ public class FileInfo extends AnchorPane {
 
     @FXML
     void openClicked() {
-        var modal = new LoadingModal(new LoadingModalOptions(getScene().getWindow(), LoadingModalOptions.LoadingType.INDETERMINATE));
+        var modal = new LoadingModal(new LoadingModalOptions(getScene().getWindow(), LoadingModalOptions.LoadingType.DETERMINATE));
+        var size = file.get().size();
+        var progress = new TransferProgress(size == null ? -1 : size);
         modal.open();
-        fileService.getFileContents(file.get(), null)
+        modal.track(progress);
+        fileService.getFileContents(file.get(), null, progress)
                 .doFinally(modal::close)
                 .subscribe(desktop::open, e -> showErrorDialog("Failed to open file: " + e.getMessage(), "Failed to open file", null));
     }
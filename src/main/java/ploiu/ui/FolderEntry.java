@@ -2,16 +2,18 @@ package ploiu.ui;
 
 import javafx.beans.property.ObjectProperty;
 import javafx.event.ActionEvent;
-import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
+import javafx.geometry.Pos;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
 import javafx.scene.control.Tooltip;
+import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.DragEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.input.TransferMode;
 import javafx.scene.layout.AnchorPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
 import javafx.stage.DirectoryChooser;
 import lombok.Getter;
 import ploiu.event.AsyncEventReceiver;
@@ -27,58 +29,103 @@ import ploiu.model.TextInputDialogOptions;
 import ploiu.service.DragNDropService;
 
 import java.io.File;
-import java.io.IOException;
-import java.util.Map;
 
+import static ploiu.ui.FileEntry.menuItem;
 import static ploiu.util.DialogUtils.showErrorDialog;
 
+/**
+ * a folder's tile in the folder view. Like {@link FileEntry}, the nodes are built in code instead of from fxml, and the
+ * context menu and tooltip are only made once they're needed
+ */
 @Getter
 @SuppressWarnings("unused")
 public class FolderEntry extends AnchorPane {
+    private static final String STYLESHEET = FolderEntry.class.getClassLoader().getResource("ui/components/FolderEntry/FolderEntry.css").toExternalForm();
+    private static final String ICON_URL = FolderEntry.class.getClassLoader().getResource("assets/img/folder.png").toExternalForm();
+    private static final double ICON_SIZE = 100;
+    // every folder has the same icon, so it's only loaded once. Only touched on the ui thread
+    private static Image folderIcon;
+
     /**
      * the folder backing this UI element
      */
-    private final FolderApi folder;
-    @FXML
-    private ImageView icon;
-    @FXML
-    private Label folderName;
-    @FXML
+    private FolderApi folder;
+    private final ImageView icon = new ImageView();
+    private final Label folderName = new Label();
     private ContextMenu folderMenu;
+    private Tooltip tooltip;
     private final AsyncEventReceiver<FolderApi> folderReceiver;
     private final AsyncEventReceiver<FileObject> fileReceiver;
     private final ObjectProperty<FolderApi> folderToEdit;
 
-    private final DragNDropService dragNDropService = App.INJECTOR.getInstance(DragNDropService.class);
-
     public FolderEntry(FolderApi folder, AsyncEventReceiver<FolderApi> folderReceiver, AsyncEventReceiver<FileObject> fileReceiver, ObjectProperty<FolderApi> folderToEdit) {
         this.folder = folder;
         this.folderToEdit = folderToEdit;
-        var loader = new FXMLLoader(getClass().getClassLoader().getResource("ui/components/FolderEntry/FolderEntry.fxml"));
-        loader.setRoot(this);
-        loader.setController(this);
-        try {
-            loader.load();
-            // currently api doesn't have a field for name, just full path
-            this.folderName.setText(folder.name());
-            Tooltip.install(this, new Tooltip(folder.name()));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
         this.folderReceiver = folderReceiver;
         this.fileReceiver = fileReceiver;
+        getStylesheets().add(STYLESHEET);
+        setPrefSize(ICON_SIZE, ICON_SIZE);
+        icon.setId("icon");
+        icon.setPreserveRatio(true);
+        icon.setImage(getFolderIcon());
+        folderName.setId("folderName");
+        folderName.getStyleClass().add("text");
+        var iconRow = new HBox(icon);
+        iconRow.setAlignment(Pos.CENTER);
+        var nameRow = new HBox(folderName);
+        nameRow.setAlignment(Pos.CENTER);
+        var imagePane = new VBox(iconRow, nameRow);
+        imagePane.setId("imagePane");
+        imagePane.setAlignment(Pos.CENTER);
+        getChildren().add(imagePane);
+        // currently api doesn't have a field for name, just full path
+        this.folderName.setText(folder.name());
+        setOnDragDetected(this::onDragDetected);
+        setOnDragOver(this::onDragOver);
+        setOnDragDropped(this::onDragDropped);
+        this.setOnContextMenuRequested(event -> getFolderMenu().show(this, event.getScreenX(), event.getScreenY()));
+        // the tooltip only shows once the mouse is over the tile anyway
+        addEventHandler(MouseEvent.MOUSE_ENTERED, ignored -> installTooltip());
+    }
+
+    private static Image getFolderIcon() {
+        if (folderIcon == null) {
+            folderIcon = new Image(ICON_URL, ICON_SIZE, ICON_SIZE, false, true);
+        }
+        return folderIcon;
+    }
+
+    /**
+     * points this entry at a different folder, so the same node can be re-used instead of making a new one
+     */
+    public void setFolder(FolderApi folder) {
+        this.folder = folder;
+        folderName.setText(folder.name());
+        if (tooltip != null) {
+            tooltip.setText(folder.name());
+        }
     }
 
-    @FXML
-    @SuppressWarnings("unused")
-    private void initialize() {
-        this.setOnContextMenuRequested(event -> {
-            folderMenu.show(this, event.getScreenX(), event.getScreenY());
-        });
+    public ContextMenu getFolderMenu() {
+        if (folderMenu == null) {
+            folderMenu = new ContextMenu(
+                    menuItem("renameFolder", "Rename Folder", this::renameItemClicked),
+                    menuItem("deleteFolder", "Delete Folder", this::deleteItemClicked),
+                    menuItem("downloadFolder", "Download Folder", this::downloadItemClicked),
+                    menuItem("info", "Info", this::infoItemClicked)
+            );
+            folderMenu.setId("folderMenu");
+        }
+        return folderMenu;
+    }
+
+    private void installTooltip() {
+        if (tooltip == null) {
+            tooltip = new Tooltip(folder.name());
+            Tooltip.install(this, tooltip);
+        }
     }
 
-    @FXML
-    @SuppressWarnings("unused")
     private void renameItemClicked(ActionEvent event) {
         EventReceiver<String> dialogCallback = evt -> {
             var newName = evt.get();
@@ -89,8 +136,6 @@ public class FolderEntry extends AnchorPane {
         var dialog = new TextInputDialog(new TextInputDialogOptions(getScene().getWindow(), dialogCallback, "Rename Folder"));
     }
 
-    @FXML
-    @SuppressWarnings("unused")
     private void deleteItemClicked(ActionEvent event) {
         EventReceiver<String> dialogCallback = res -> {
             // make the user type the folder name they're deleting to confirm
@@ -107,12 +152,10 @@ public class FolderEntry extends AnchorPane {
                 .windowTitle("Confirm Delete?"));
     }
 
-    @FXML
     private void infoItemClicked(ActionEvent event) {
         folderToEdit.setValue(folder);
     }
 
-    @FXML
     private void downloadItemClicked(ActionEvent event) {
         var chooser = new DirectoryChooser();
         var homeDir = new File(System.getProperty("user.home"));
@@ -126,37 +169,33 @@ public class FolderEntry extends AnchorPane {
         }
     }
 
-    @FXML
     private void onDragDetected(MouseEvent e) {
         var board = startDragAndDrop(TransferMode.MOVE);
-        board.setContent(Map.of(DataTypes.FOLDER, this.folder.toJson()));
+        board.setContent(DragRegistry.dragFolder(folder));
+        setOnDragDone(ignored -> DragRegistry.dragDone());
         e.consume();
     }
 
-    @FXML
     private void onDragOver(DragEvent e) {
         e.acceptTransferModes(TransferMode.COPY_OR_MOVE);
         e.consume();
     }
 
-    @FXML
     private void onDragDropped(DragEvent event) {
         var board = event.getDragboard();
         if (!event.isConsumed()) {
             if (board.hasFiles()) {
                 event.consume();
-                dragNDropService.dropFiles(board.getFiles(), folder, getScene().getWindow())
+                App.INJECTOR.getInstance(DragNDropService.class).dropFiles(board.getFiles(), folder, getScene().getWindow())
                         .subscribe();
-            } else if (board.getContent(DataTypes.FOLDER) instanceof String droppedFolder) {
+            } else if (DragRegistry.droppedFolder(board.getContent(DataTypes.FOLDER)).orElse(null) instanceof FolderApi dropped) {
                 event.consume();
-                var parsed = FolderApi.fromJson(droppedFolder);
-                var newApi = new FolderApi(parsed.id(), folder.id(), parsed.name(), parsed.path(), parsed.folders(), parsed.files(), parsed.tags());
+                var newApi = new FolderApi(dropped.id(), folder.id(), dropped.name(), dropped.path(), dropped.folders(), dropped.files(), dropped.tags());
                 folderReceiver.process(new FolderUpdateEvent(newApi))
                         .subscribe();
-            } else if (board.getContent(DataTypes.FILE) instanceof String droppedFile) {
+            } else if (DragRegistry.droppedFile(board.getContent(DataTypes.FILE)).orElse(null) instanceof FileApi dropped) {
                 event.consume();
-                var parsed = FileApi.fromJson(droppedFile);
-                var newApi = new FileApi(parsed.id(), parsed.name(), parsed.tags(), folder.id(), null, null, null);
+                var newApi = new FileApi(dropped.id(), dropped.name(), dropped.tags(), folder.id(), null, null, null);
                 fileReceiver.process(new FileUpdateEvent(newApi))
                         .subscribe();
             }
@@ -64,10 +64,19 @@ public class FolderInfo extends AnchorPane {
         }
     }
 
+    /**
+     * shows a newer version of the folder, e.g. after it was changed somewhere other than this panel
+     */
+    public void setFolder(FolderApi folder) {
+        this.folder.setValue(folder);
+    }
+
     private void onFolderChanged(ObservableValue<? extends FolderApi> ignored, FolderApi ignored1, FolderApi newFolder) {
         Platform.runLater(() -> {
             tagList.getChildren().clear();
             folderTitle.setText(newFolder.name());
+            fileCountLabel.setText("Files: " + newFolder.files().size());
+            folderCountLabel.setText("Folders: " + newFolder.folders().size());
             var tags = newFolder.tags();
             for (var tag : tags) {
                 var btn = new Button(tag.title());
@@ -109,17 +118,32 @@ public class FolderInfo extends AnchorPane {
 
     private void updateFolder(FolderApi updatedFolder) {
         var event = new FolderUpdateEvent(updatedFolder);
+        // shown right away so the change doesn't wait on the server, and put back if the server doesn't take it
+        var previous = this.folder.get();
+        this.folder.setValue(updatedFolder);
         folderReceiver.process(event)
                 .observeOn(JavaFxScheduler.platform())
-                .doOnError(e -> showErrorDialog("Failed to update folder, error is " + e.getMessage(), "Failed to update folder", null))
+                .doOnError(e -> {
+                    rollback(previous, updatedFolder);
+                    showErrorDialog("Failed to update folder, error is " + e.getMessage(), "Failed to update folder", null);
+                })
                 .doOnSuccess(success -> {
-                    if (success) {
-                        this.folder.setValue(updatedFolder);
+                    if (!success) {
+                        rollback(previous, updatedFolder);
                     }
                 })
                 .subscribe();
     }
 
+    /**
+     * puts {@code previous} back, unless something else has replaced {@code updated} since
+     */
+    private void rollback(FolderApi previous, FolderApi updated) {
+        if (this.folder.get() == updated) {
+            this.folder.setValue(previous);
+        }
+    }
+
     @FXML
     void addTagClicked() {
         EventReceiver<String> confirmCallback = res -> {
@@ -1,23 +1,36 @@
 package ploiu.ui;
 
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.disposables.SerialDisposable;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
+import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.layout.AnchorPane;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import org.pdfsam.rxjavafx.schedulers.JavaFxScheduler;
 import ploiu.model.LoadingModalOptions;
 import ploiu.model.LoadingModalOptions.LoadingType;
+import ploiu.transfer.TransferProgress;
+import ploiu.util.UIUtils;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 public class LoadingModal extends AnchorPane {
+    // bytes are counted as fast as they come in, but the display only needs refreshing a few times a second
+    private static final long PROGRESS_REFRESH_MILLIS = 250;
 
     @FXML
     private ProgressBar progressBar;
+    @FXML
+    private Label statusLabel;
     private final LoadingModalOptions options;
+    private final SerialDisposable tracking = new SerialDisposable();
 
     public LoadingModal(LoadingModalOptions options) {
         this.options = options;
@@ -43,6 +56,7 @@ public class LoadingModal extends AnchorPane {
     }
 
     public void close() {
+        tracking.dispose();
         Platform.runLater(() -> ((Stage) this.getScene().getWindow()).close());
     }
 
@@ -57,4 +71,39 @@ public class LoadingModal extends AnchorPane {
     public void updateProgress(double targetValue) {
         Platform.runLater(() -> progressBar.setProgress(targetValue));
     }
+
+    /**
+     * shows how far along {@code progress} is, how fast it's going, and how long it has left until this modal is closed
+     */
+    public void track(TransferProgress progress) {
+        tracking.set(Observable.interval(0, PROGRESS_REFRESH_MILLIS, TimeUnit.MILLISECONDS, JavaFxScheduler.platform())
+                .map(ignored -> progress.snapshot())
+                .subscribe(this::showProgress));
+    }
+
+    private void showProgress(TransferProgress.Snapshot snapshot) {
+        var fraction = snapshot.fraction();
+        progressBar.setProgress(fraction < 0 ? ProgressBar.INDETERMINATE_PROGRESS : fraction);
+        var text = new StringBuilder(UIUtils.convertSizeToBytes(snapshot.transferred()));
+        if (snapshot.total() >= 0) {
+            text.append(" of ").append(UIUtils.convertSizeToBytes(snapshot.total()));
+        }
+        if (snapshot.smoothedBytesPerSecond() > 0) {
+            text.append("\n").append(UIUtils.convertSizeToBytes((long) snapshot.smoothedBytesPerSecond())).append("/s");
+        }
+        if (snapshot.eta() != null) {
+            text.append(", ").append(formatEta(snapshot.eta())).append(" left");
+        }
+        statusLabel.setText(text.toString());
+    }
+
+    private static String formatEta(Duration eta) {
+        var seconds = eta.toSeconds();
+        if (seconds < 60) {
+            return seconds + "s";
+        } else if (seconds < 3600) {
+            return String.format("%dm %02ds", seconds / 60, seconds % 60);
+        }
+        return String.format("%dh %02dm", seconds / 3600, (seconds % 3600) / 60);
+    }
 }
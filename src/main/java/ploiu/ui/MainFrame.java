@@ -1,7 +1,7 @@
 package ploiu.ui;
 
-import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.SerialDisposable;
 import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
@@ -11,11 +11,10 @@ import javafx.scene.control.ScrollPane;
 import javafx.scene.image.Image;
 import javafx.scene.input.*;
 import javafx.scene.layout.AnchorPane;
-import javafx.scene.layout.FlowPane;
-import javafx.scene.layout.TilePane;
 import javafx.stage.Stage;
 import lombok.extern.slf4j.Slf4j;
 import org.pdfsam.rxjavafx.schedulers.JavaFxScheduler;
+import ploiu.config.UiConfig;
 import ploiu.event.AsyncEventReceiver;
 import ploiu.event.file.FileDeleteEvent;
 import ploiu.event.file.FileSaveEvent;
@@ -24,18 +23,28 @@ import ploiu.event.file.FileUploadEvent;
 import ploiu.event.folder.*;
 import ploiu.exception.BadFileRequestException;
 import ploiu.exception.BadFileResponseException;
+import ploiu.http.TransportStats;
 import ploiu.model.*;
 import ploiu.service.ApiService;
 import ploiu.service.DragNDropService;
+import ploiu.service.EntityStore;
 import ploiu.service.FileService;
 import ploiu.service.FolderService;
+import ploiu.transfer.TransferProgress;
+import ploiu.util.ListReconciler;
+import ploiu.util.LongMap;
+import ploiu.util.PreviewCache;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
 
+import static ploiu.Constants.SEARCH_CHUNK_MILLIS;
+import static ploiu.Constants.SEARCH_CHUNK_SIZE;
 import static ploiu.util.DialogUtils.showErrorDialog;
 import static ploiu.util.UIUtils.desktop;
 
@@ -45,12 +54,16 @@ public class MainFrame extends AnchorPane {
     private final FileService fileService = App.INJECTOR.getInstance(FileService.class);
     private final ApiService apiService = App.INJECTOR.getInstance(ApiService.class);
     private final DragNDropService dragNDropService = App.INJECTOR.getInstance(DragNDropService.class);
+    private final EntityStore store = App.INJECTOR.getInstance(EntityStore.class);
+    private final TransportStats transportStats = App.INJECTOR.getInstance(TransportStats.class);
+    private final UiConfig uiConfig = App.INJECTOR.getInstance(UiConfig.class);
+    private final PreviewScheduler previewScheduler = new PreviewScheduler(fileService, folderService, App.INJECTOR.getInstance(PreviewCache.class), JavaFxScheduler.platform());
     @FXML
     private ScrollPane scrollPane;
     @FXML
-    private FlowPane folderPane;
+    private VirtualTilePane<FolderApi, FolderEntry> folderPane;
     @FXML
-    private TilePane filePane;
+    private VirtualTilePane<FileApi, FileEntry> filePane;
     @FXML
     private NavBar navigationBar;
     @FXML
@@ -59,31 +72,58 @@ public class MainFrame extends AnchorPane {
     private FolderApi currentFolder;
     private final ObjectProperty<FolderApi> editingFolder = new SimpleObjectProperty<>(null);
     private final ObjectProperty<FileApi> editingFile = new SimpleObjectProperty<>(null);
-    // contains all the current image previews
-    private final Map<Long, ObjectProperty<Image>> filePreviews = new HashMap<>();
+    // contains all the current image previews, by file id
+    private final LongMap<ObjectProperty<Image>> filePreviews = new LongMap<>();
+    // previews that have been asked for, so tiles that scroll away can cancel theirs. Guarded by filePreviews
+    private final LongMap<PreviewScheduler.Ticket> previewTickets = new LongMap<>();
     private FolderInfo folderInfo;
     private FileInfo fileInfo;
+    // the search that's still streaming results into the file pane, so it can be stopped when something else is shown
+    private final SerialDisposable searchSubscription = new SerialDisposable();
+    // keeps the folder view in sync with the store, so changes made anywhere (e.g. in the info panels) show up in it
+    private final SerialDisposable folderSubscription = new SerialDisposable();
+    // same as folderSubscription, but for whichever info panel is open
+    private final SerialDisposable infoSubscription = new SerialDisposable();
 
     /// EVENT HANDLERS
     // search bar
     @SuppressWarnings("FieldCanBeLocal")
     private final AsyncEventReceiver<String> asyncSearchEvents = event -> {
-        synchronized (filePreviews) {
-            filePreviews.clear();
-        }
-        fileService.search(event.get()).observeOn(JavaFxScheduler.platform()).doOnError(e -> {
-            if (e instanceof BadFileRequestException) {
-                showErrorDialog(e.getMessage(), "Bad Search Text", null);
-            } else if (e instanceof BadFileResponseException) {
-                showErrorDialog(e.getMessage(), "Server Error", null);
+        // the results aren't a folder, so changes to the folder that was shown shouldn't be put in with them
+        folderSubscription.set(null);
+        // previews for the old results aren't needed anymore
+        clearFilePreviews();
+        // keep showing the old results until the search actually returns something, in case the search text is bad
+        var cleared = new AtomicBoolean(false);
+        Runnable clearPanes = () -> {
+            if (cleared.compareAndSet(false, true)) {
+                this.folderPane.getItems().clear();
+                this.folderPane.setTrailing(null);
+                this.filePane.getItems().clear();
+                this.filePane.setTrailing(null);
             }
-        }).doOnSuccess(files -> {
-            loadFilePreviews(files.stream().map(FileApi::id).toList());
-            this.folderPane.getChildren().clear();
-            this.filePane.getChildren().clear();
-            var fileEntries = files.stream().map(this::createFileEntry).toList();
-            this.filePane.getChildren().addAll(fileEntries);
-        }).subscribe();
+        };
+        var search = fileService.searchStreaming(event.get())
+                // add results a chunk at a time so the first ones show up right away without re-laying out the pane for every file
+                .buffer(SEARCH_CHUNK_MILLIS, TimeUnit.MILLISECONDS, SEARCH_CHUNK_SIZE)
+                // the timer makes empty chunks while waiting on the server, which shouldn't clear the old results
+                .filter(files -> !files.isEmpty())
+                .observeOn(JavaFxScheduler.platform())
+                .subscribe(files -> {
+                    clearPanes.run();
+                    createFilePreviews(files);
+                    this.filePane.getItems().addAll(files);
+                }, e -> {
+                    if (e instanceof BadFileRequestException) {
+                        showErrorDialog(e.getMessage(), "Bad Search Text", null);
+                    } else if (e instanceof BadFileResponseException) {
+                        showErrorDialog(e.getMessage(), "Server Error", null);
+                    } else {
+                        log.error("Failed to search files", e);
+                    }
+                }, clearPanes::run);
+        // replacing the old search cancels it, so its results don't end up mixed in with these
+        searchSubscription.set(search);
         return Single.just(true);
     };
 
@@ -97,8 +137,12 @@ public class MainFrame extends AnchorPane {
     private final AsyncEventReceiver<FolderApi> asyncFolderUpdateEvent = event -> {
         if (event instanceof FolderUpdateEvent fe) {
             var folder = fe.get();
+            // show the change right away instead of waiting on the server, and put it back if the server rejects it
+            var rollback = showFolderUpdate(folder);
             return folderService.updateFolder(new FolderRequest(Optional.of(folder.id()), folder.parentId(), folder.name(), folder.tags()))
-                    .doOnSuccess(ignored -> asyncLoadFolder(currentFolder))
+                    .observeOn(JavaFxScheduler.platform())
+                    .doOnSuccess(this::showFolderUpdate)
+                    .doOnError(ignored -> rollback.run())
                     .map(ignored -> true);
         } else {
             return Single.error(new UnsupportedOperationException("Only type UPDATE is supported for updateFolderEvent"));
@@ -131,7 +175,9 @@ public class MainFrame extends AnchorPane {
             var fileName = saveEvent.get().name() + ".tar";
             var fileExists = Arrays.stream(dir.listFiles()).filter(File::isFile).map(File::getName).anyMatch(fileName::equalsIgnoreCase);
             var loadingModal = new LoadingModal(new LoadingModalOptions(getScene().getWindow(), LoadingModalOptions.LoadingType.INDETERMINATE));
-            var saveAction = folderService.downloadFolder(saveEvent.get(), saveEvent.getSaveDir()).doOnError(e -> showErrorDialog("Failed to save folder: " + e.getMessage(), "Failed to save folder", null)).doFinally(loadingModal::close);
+            // the archive's size isn't known until the server starts sending it
+            var progress = new TransferProgress(-1);
+            var saveAction = folderService.downloadFolder(saveEvent.get(), saveEvent.getSaveDir(), progress).doOnSubscribe(ignored -> loadingModal.track(progress)).doOnError(e -> showErrorDialog("Failed to save folder: " + e.getMessage(), "Failed to save folder", null)).doFinally(loadingModal::close);
             if (fileExists) {
                 var modal = new ConfirmDialog(new ConfirmDialogOptions(getScene().getWindow(), res -> {
                     if (res.get()) {
@@ -200,7 +246,16 @@ public class MainFrame extends AnchorPane {
             } else {
                 throw new UnsupportedOperationException("Unknown subclass of FileObject");
             }
-            return fileService.updateFile(req).doOnSuccess(ignored -> asyncLoadFolder(currentFolder)).doOnError(e -> showErrorDialog("Failed to update file. Message is " + e.getMessage(), "Failed to update file", null)).map(ignored -> true);
+            // show the change right away instead of waiting on the server, and put it back if the server rejects it
+            var rollback = showFileUpdate(fileApi);
+            return fileService.updateFile(req)
+                    .observeOn(JavaFxScheduler.platform())
+                    .doOnSuccess(this::showFileUpdate)
+                    .doOnError(e -> {
+                        rollback.run();
+                        showErrorDialog("Failed to update file. Message is " + e.getMessage(), "Failed to update file", null);
+                    })
+                    .map(ignored -> true);
         } else {
             return Single.error(new UnsupportedOperationException("asyncFileUpdateEvent only supports FileUpdateEvent"));
         }
@@ -213,8 +268,9 @@ public class MainFrame extends AnchorPane {
                 dir.mkdirs();
             }
             var fileExists = Arrays.stream(dir.listFiles()).filter(File::isFile).map(File::getName).anyMatch(file.name()::equalsIgnoreCase);
-            var loadingModal = new LoadingModal(new LoadingModalOptions(getScene().getWindow(), LoadingModalOptions.LoadingType.INDETERMINATE));
-            var saveAction = fileService.getFileContents(file, saveEvent.getDirectory()).doOnError(e -> showErrorDialog("Failed to save file: " + e.getMessage(), "Failed to save file", null)).doFinally(loadingModal::close);
+            var loadingModal = new LoadingModal(new LoadingModalOptions(getScene().getWindow(), LoadingModalOptions.LoadingType.DETERMINATE));
+            var progress = new TransferProgress(file.size() == null ? -1 : file.size());
+            var saveAction = fileService.getFileContents(file, saveEvent.getDirectory(), progress).doOnSubscribe(ignored -> loadingModal.track(progress)).doOnError(e -> showErrorDialog("Failed to save file: " + e.getMessage(), "Failed to save file", null)).doFinally(loadingModal::close);
             if (fileExists) {
                 var modal = new ConfirmDialog(new ConfirmDialogOptions(getScene().getWindow(), res -> {
                     if (res.get()) {
@@ -267,102 +323,256 @@ public class MainFrame extends AnchorPane {
     }
 
     private void asyncLoadFolder(FolderApi folder) {
+        // don't let a search that's still running add files to the folder view
+        searchSubscription.set(null);
+        // or changes to the folder that was shown, while this one is loading
+        folderSubscription.set(null);
+        // reloading the same folder (e.g. after a rename) keeps the scroll position, going to a different one starts at the top
+        var reloading = currentFolder != null && currentFolder.id() == folder.id();
         // pull the folder
-        var folderReq = folderService.getFolder(folder.id())
+        folderService.getFolder(folder.id())
                 .doOnSuccess(this::setCurrentFolder)
                 .doOnError(e -> showErrorDialog(e.getMessage(), "Failed to pull folder", null))
                 .observeOn(JavaFxScheduler.platform())
-                .toObservable()
-                .cache();
-        // handle child folders
-        folderReq.doOnNext(ignored -> folderPane.getChildren().clear())
-                .flatMapIterable(FolderApi::folders)
-                .map(this::createFolderEntry)
-                .toList()
-                .doOnSuccess(this.folderPane.getChildren()::addAll)
-                .subscribe(ignored -> drawAddFolder());
-
-        // handle child files
-        folderReq.doOnNext(f -> {
-                    loadFilePreviews(f);
-                    filePane.getChildren().clear();
-                })
-                .flatMapIterable(FolderApi::files)
-                .map(this::createFileEntry)
-                .toList()
-                .doOnSuccess(filePane.getChildren()::addAll)
-                .subscribe(ignored -> drawAddFile());
+                .subscribe(f -> {
+                    if (reloading) {
+                        reconcileFolder(f);
+                    } else {
+                        loadFilePreviews(f);
+                        // the panes only make nodes for what's on screen, so this is cheap even for huge folders
+                        folderPane.getItems().setAll(f.folders());
+                        filePane.getItems().setAll(f.files());
+                        scrollPane.setVvalue(0);
+                    }
+                    drawAddFolder();
+                    drawAddFile();
+                    // the store has the folder now, so anything that changes it from here on is shown without pulling it again
+                    folderSubscription.set(store.watchFolder(f.id())
+                            // the first value is the folder that was just shown
+                            .skip(1)
+                            .observeOn(JavaFxScheduler.platform())
+                            .subscribe(this::reconcileFolder, e -> log.error("Failed to watch folder {}", f.id(), e)));
+                }, e -> log.debug("Failed to load folder {}", folder.id(), e));
         // pulling the folder was probably after an update or change of some sort, so update the title to reflect how much storage is next
         apiService.getStorageUsed()
                 .subscribe(
                         storageAmount -> Platform.runLater(() -> ((Stage) getScene().getWindow()).setTitle("Ploiu File Server " + storageAmount)),
                         error -> log.error("Failed to pull storage amount", error)
                 );
+        log.debug("http transport: {}", transportStats);
+    }
+
+    /**
+     * updates the folder view to match a newer version of the folder that's shown. Only the tiles that changed are touched, so
+     * everything else keeps its node and preview
+     */
+    private void reconcileFolder(FolderApi folder) {
+        setCurrentFolder(folder);
+        reconcileFilePreviews(folder);
+        var folderChanges = ListReconciler.reconcile(folderPane.getItems(), List.copyOf(folder.folders()), FolderApi::id);
+        var fileChanges = ListReconciler.reconcile(filePane.getItems(), List.copyOf(folder.files()), FileApi::id);
+        if (!folderChanges.isEmpty() || !fileChanges.isEmpty()) {
+            log.debug("reconciled folder {}: folders {}, files {}", folder.id(), folderChanges, fileChanges);
+        }
     }
 
     private void loadFilePreviews(FolderApi folder) {
-        synchronized (filePreviews) {
-            filePreviews.clear();
+        // anything still loading is for whatever was shown before
+        clearFilePreviews();
+        previewScheduler.setFolderSize(folder.id(), folder.files().size());
+        createFilePreviews(folder.files());
+    }
+
+    /**
+     * keeps the previews of files that are still in {@code folder} and haven't changed, and drops the rest. A file that was
+     * renamed or re-tagged keeps its preview; one that was replaced (which changes its creation date) gets a new one
+     */
+    private void reconcileFilePreviews(FolderApi folder) {
+        var shown = new LongMap<FileApi>(filePane.getItems().size());
+        for (var file : filePane.getItems()) {
+            shown.put(file.id(), file);
         }
-        if (folder.files().isEmpty()) {
-            return;
+        var next = new LongMap<FileApi>(folder.files().size());
+        for (var file : folder.files()) {
+            next.put(file.id(), file);
         }
+        previewScheduler.setFolderSize(folder.id(), folder.files().size());
         synchronized (filePreviews) {
-            for (var file : folder.files()) {
-                filePreviews.put(file.id(), new SimpleObjectProperty<>(null));
-            }
-        }
-        //noinspection ResultOfMethodCallIgnored
-        folderService.getFilePreviewsForFolder(folder).subscribe(previewMap -> {
-            synchronized (filePreviews) {
-                previewMap.forEach((id, image) -> {
-                    if (filePreviews.containsKey(id)) {
-                        filePreviews.get(id).setValue(image);
+            for (var id : filePreviews.keys()) {
+                var before = shown.get(id);
+                var after = next.get(id);
+                if (before == null || after == null || !Objects.equals(before.dateCreated(), after.dateCreated())) {
+                    filePreviews.remove(id);
+                    var ticket = previewTickets.remove(id);
+                    if (ticket != null) {
+                        ticket.cancel();
                     }
-                });
+                }
             }
-        });
+        }
+        createFilePreviews(folder.files());
     }
 
-    private void loadFilePreviews(Collection<Long> fileIds) {
+    /**
+     * stops loading previews for whatever was shown before, and forgets the ones that were loaded
+     */
+    private void clearFilePreviews() {
+        previewScheduler.cancelAll();
         synchronized (filePreviews) {
             filePreviews.clear();
+            previewTickets.clear();
         }
-        if (fileIds.isEmpty()) {
-            return;
+    }
+
+    /**
+     * makes empty previews for {@code files}, on top of any that are already there. Nothing is fetched until the file's tile is
+     * close to being on screen
+     */
+    private void createFilePreviews(Collection<FileApi> files) {
+        synchronized (filePreviews) {
+            for (var file : files) {
+                filePreviews.computeIfAbsent(file.id(), ignored -> new SimpleObjectProperty<>(null));
+            }
+        }
+    }
+
+    /**
+     * @return the preview property for {@code file}, making an empty one if there isn't one yet
+     */
+    private ObjectProperty<Image> getFilePreview(FileApi file) {
+        synchronized (filePreviews) {
+            return filePreviews.computeIfAbsent(file.id(), ignored -> new SimpleObjectProperty<>(null));
+        }
+    }
+
+    /**
+     * asks for the preview of a file whose tile is on screen (or close to it), or moves it in line if it's already been asked for
+     *
+     * @param distance how far the tile is from the visible area, so the closest tiles load first
+     */
+    private void onFileShown(FileApi file, double distance) {
+        synchronized (filePreviews) {
+            var preview = filePreviews.get(file.id());
+            if (preview == null || preview.get() != null) {
+                return;
+            }
+            var ticket = previewTickets.get(file.id());
+            if (ticket == null || ticket.isCancelled()) {
+                previewTickets.put(file.id(), previewScheduler.request(file, distance, preview::setValue));
+            } else if (!ticket.isDone()) {
+                ticket.setPriority(distance);
+            }
         }
+    }
+
+    /**
+     * a file's tile scrolled far enough away that its preview isn't worth loading yet
+     */
+    private void onFileHidden(FileApi file) {
         synchronized (filePreviews) {
-            for (var id : fileIds) {
-                filePreviews.put(id, new SimpleObjectProperty<>(null));
+            var ticket = previewTickets.get(file.id());
+            // finished tickets are kept so files without a preview aren't asked about every time they're scrolled past
+            if (ticket != null && !ticket.isDone()) {
+                previewTickets.remove(file.id());
+                ticket.cancel();
             }
         }
+    }
+
+    /**
+     * shows {@code updated} in place of the displayed file with the same id. Fields the update doesn't have (like the size) are
+     * kept from the displayed file, so its preview stays. A file moved out of the current folder is taken out of the view
+     *
+     * @return puts the file back the way it was, for when the server rejects the update
+     */
+    private Runnable showFileUpdate(FileApi updated) {
+        // the store is updated too, so anything else showing the file (e.g. its info panel) changes along with the tile
+        var stored = store.getFile(updated.id());
+        var optimistic = store.putFile(updated);
+        Runnable rollbackStore = () -> store.revertFile(optimistic, stored);
+        var items = filePane.getItems();
+        var index = indexOfId(items, updated.id(), FileApi::id);
+        if (index < 0) {
+            return rollbackStore;
+        }
+        var previous = items.get(index);
+        var merged = new FileApi(
+                updated.id(),
+                updated.name(),
+                updated.tags(),
+                updated.folderId() == null ? previous.folderId() : updated.folderId(),
+                updated.size() == null ? previous.size() : updated.size(),
+                updated.dateCreated() == null ? previous.dateCreated() : updated.dateCreated(),
+                updated.fileType() == null ? previous.fileType() : updated.fileType()
+        );
+        var inCurrentFolder = currentFolder != null && Objects.equals(previous.folderId(), currentFolder.id());
+        if (inCurrentFolder && !Objects.equals(merged.folderId(), previous.folderId())) {
+            items.remove(index);
+        } else {
+            items.set(index, merged);
+        }
+        return () -> {
+            rollbackStore.run();
+            restore(items, previous, index, FileApi::id);
+        };
+    }
 
-        Collection<Maybe<Tuple2<Long, Image>>> images = new HashSet<>();
-        for (var id : fileIds) {
-            var req = fileService.getFilePreview(id)
-                    .map(img -> new Tuple2<>(id, img));
+    /**
+     * same as {@link #showFileUpdate(FileApi)}, but for a child folder
+     */
+    private Runnable showFolderUpdate(FolderApi updated) {
+        var stored = store.getFolderDetails(updated.id());
+        var optimistic = store.putFolderDetails(updated);
+        Runnable rollbackStore = () -> store.revertFolderDetails(optimistic, stored);
+        var items = folderPane.getItems();
+        var index = indexOfId(items, updated.id(), FolderApi::id);
+        if (index < 0) {
+            return rollbackStore;
+        }
+        var previous = items.get(index);
+        var merged = new FolderApi(updated.id(), updated.parentId(), updated.name(), updated.path() == null ? previous.path() : updated.path(), previous.folders(), previous.files(), updated.tags());
+        if (currentFolder != null && merged.parentId() != currentFolder.id()) {
+            items.remove(index);
+        } else {
+            items.set(index, merged);
+        }
+        return () -> {
+            rollbackStore.run();
+            restore(items, previous, index, FolderApi::id);
+        };
+    }
 
-            images.add(req);
+    /**
+     * puts {@code previous} back in {@code items}. The view might have changed since it was taken out (e.g. a reload), so it
+     * replaces whatever has the same id, or goes back where it was if nothing does
+     */
+    private static <T> void restore(List<T> items, T previous, int index, ToLongFunction<T> id) {
+        var current = indexOfId(items, id.applyAsLong(previous), id);
+        if (current >= 0) {
+            items.set(current, previous);
+        } else {
+            items.add(Math.min(index, items.size()), previous);
         }
+    }
 
-        Maybe.merge(images).toObservable()
-                .delay(1, TimeUnit.SECONDS)
-                .doOnNext(img -> filePreviews.get(img.first()).setValue(img.second()))
-                .subscribe(ignored -> {
-                }, e -> log.error("Failed to retrieve file preview for file", e));
+    private static <T> int indexOfId(List<T> items, long id, ToLongFunction<T> getId) {
+        for (var i = 0; i < items.size(); i++) {
+            if (getId.applyAsLong(items.get(i)) == id) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     private FileEntry createFileEntry(FileApi file) {
-        ObjectProperty<Image> filePreview;
-        synchronized (filePreviews) {
-            filePreview = filePreviews.get(file.id());
-        }
-        var fileEntry = new FileEntry(file, asyncFileCrudEvents, editingFile, filePreview);
+        var fileEntry = new FileEntry(file, asyncFileCrudEvents, editingFile, getFilePreview(file));
         var timesClicked = new AtomicInteger(0);
         var waitMillis = 250L;
         fileEntry.setOnMouseClicked(event -> {
             if (event.getButton() == MouseButton.PRIMARY) {
                 if (timesClicked.incrementAndGet() == 1) {
+                    // the entry gets re-used for other files as it's scrolled, so hold on to the one that was clicked
+                    var clicked = fileEntry.getFile();
                     // start the timer
                     new Thread(() -> {
                         try {
@@ -374,11 +584,12 @@ public class MainFrame extends AnchorPane {
                         timesClicked.set(0);
                         if (clickCount == 2) {
                             // open the file
-                            var modal = new LoadingModal(new LoadingModalOptions(getScene().getWindow(), LoadingModalOptions.LoadingType.INDETERMINATE));
+                            var modal = new LoadingModal(new LoadingModalOptions(getScene().getWindow(), LoadingModalOptions.LoadingType.DETERMINATE));
+                            var progress = new TransferProgress(clicked.size() == null ? -1 : clicked.size());
                             modal.open();
-                            fileService.getFileContents(file, null).doFinally(modal::close).subscribe(desktop::open, e -> showErrorDialog("Failed to open file: " + e.getMessage(), "Failed to open file", null));
+                            fileService.getFileContents(clicked, null, progress).doOnSubscribe(ignored -> modal.track(progress)).doFinally(modal::close).subscribe(desktop::open, e -> showErrorDialog("Failed to open file: " + e.getMessage(), "Failed to open file", null));
                         } else {
-                            editingFile.set(file);
+                            editingFile.set(clicked);
                         }
                     }).start();
                 }
@@ -393,8 +604,9 @@ public class MainFrame extends AnchorPane {
         folderEntry.setOnMouseClicked(mouseEvent -> {
             // left click is used for entry, right click is used for modifying properties
             if (mouseEvent.getButton() == MouseButton.PRIMARY) {
-                Single.just(folder).observeOn(JavaFxScheduler.platform()).subscribe(it -> {
-                    folderPane.getChildren().clear();
+                // the entry gets re-used for other folders as it's scrolled, so it's looked up when clicked
+                Single.just(folderEntry.getFolder()).observeOn(JavaFxScheduler.platform()).subscribe(it -> {
+                    folderPane.getItems().clear();
                     navigationBar.push(it);
                     asyncLoadFolder(it);
                 });
@@ -405,12 +617,12 @@ public class MainFrame extends AnchorPane {
 
     private void drawAddFolder() {
         var addFolder = new AddFolder(asyncFolderCrudEvents, currentFolder.id());
-        this.folderPane.getChildren().add(addFolder);
+        this.folderPane.setTrailing(addFolder);
     }
 
     private void drawAddFile() {
         var addFile = new AddFile(asyncFileUploadEvent, currentFolder.id());
-        this.filePane.getChildren().add(addFile);
+        this.filePane.setTrailing(addFile);
     }
 
     @FXML
@@ -441,32 +653,51 @@ public class MainFrame extends AnchorPane {
 
     @FXML
     private void initialize() {
+        folderPane.setCells(this::createFolderEntry, FolderEntry::setFolder);
+        filePane.setCells(this::createFileEntry, (entry, file) -> entry.setFile(file, getFilePreview(file)), FileEntry::release);
+        folderPane.setScrollPane(scrollPane);
+        filePane.setScrollPane(scrollPane);
+        filePane.setOverscan(uiConfig.getPreviewPrefetchMargin());
+        // previews are only loaded for files whose tiles exist, which is the ones on screen or close to it
+        filePane.setOnVisibilityChanged(this::onFileShown, this::onFileHidden);
         widthProperty().addListener((obs, oldVal, newVal) -> folderPane.setPrefWidth(newVal.doubleValue()));
         heightProperty().addListener((obs, oldVal, newVal) -> scrollPane.setPrefHeight(newVal.doubleValue() - 50));
         editingFolder.addListener((obs, oldFolder, f) -> {
             if (f == null && folderInfo != null) {
+                infoSubscription.set(null);
                 this.getChildren().remove(folderInfo);
                 folderInfo = null;
             } else if (f != null) {
-                // we don't contain detailed info about the folder unless we directly pull it
-                folderService.getFolder(f.id()).observeOn(JavaFxScheduler.platform()).doOnSuccess(retrieved -> {
+                // we don't contain detailed info about the folder unless it's been pulled, but once it has the store has it
+                var known = store.getFolder(f.id());
+                (known != null ? Single.just(known) : folderService.getFolder(f.id())).observeOn(JavaFxScheduler.platform()).doOnSuccess(retrieved -> {
                     this.folderInfo = new FolderInfo(retrieved, asyncFolderCrudEvents);
                     this.getChildren().add(folderInfo);
                     folderInfo.toFront();
+                    var shown = folderInfo;
+                    infoSubscription.set(store.watchFolder(f.id())
+                            .observeOn(JavaFxScheduler.platform())
+                            .subscribe(shown::setFolder, e -> log.error("Failed to watch folder {}", f.id(), e), () -> editingFolder.setValue(null)));
                 }).subscribe();
 
             }
         });
         editingFile.addListener((obs, oldFile, f) -> {
             if (f == null && fileInfo != null) {
+                infoSubscription.set(null);
                 this.getChildren().remove(fileInfo);
                 fileInfo = null;
             } else if (f != null) {
-                // make sure we have updated file information
-                fileService.getMetadata(f.id()).observeOn(JavaFxScheduler.platform()).doOnSuccess(retrieved -> {
+                // the store is kept up to date with every change, so the file only has to be pulled if it's never been seen
+                var known = store.getFile(f.id());
+                (known != null && known.size() != null ? Single.just(known) : fileService.getMetadata(f.id())).observeOn(JavaFxScheduler.platform()).doOnSuccess(retrieved -> {
                     this.fileInfo = new FileInfo(retrieved, asyncFileCrudEvents);
                     this.getChildren().add(fileInfo);
                     fileInfo.toFront();
+                    var shown = fileInfo;
+                    infoSubscription.set(store.watchFile(f.id())
+                            .observeOn(JavaFxScheduler.platform())
+                            .subscribe(shown::setFile, e -> log.error("Failed to watch file {}", f.id(), e), () -> editingFile.setValue(null)));
                 }).subscribe();
             }
         });
@@ -16,6 +16,7 @@ import ploiu.model.FileApi;
 import ploiu.model.FileObject;
 import ploiu.model.FolderApi;
 import ploiu.service.DragNDropService;
+import ploiu.service.EntityStore;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -27,6 +28,7 @@ public class NavBar extends HBox {
     private final List<FolderApi> folders = new LinkedList<>();
     private final AsyncEventReceiver<FolderApi> navigationReceiver;
     private final DragNDropService dragNDropService = App.INJECTOR.getInstance(DragNDropService.class);
+    private final EntityStore store = App.INJECTOR.getInstance(EntityStore.class);
     private final AsyncEventReceiver<FileObject> fileReceiver;
     private final AsyncEventReceiver<FolderApi> folderReceiver;
 
@@ -81,7 +83,9 @@ public class NavBar extends HBox {
         this.getChildren().clear();
         for (int i = 0; i < folders.size(); i++) {
             var folder = folders.get(i);
-            var link = new Label(folder.name());
+            // the folder might have been renamed since it was pushed
+            var stored = store.getFolderDetails(folder.id());
+            var link = new Label(stored == null ? folder.name() : stored.name());
             link.getStyleClass().add("folder-link");
             var divider = new Label("/");
             divider.getStyleClass().add("text");
@@ -110,16 +114,14 @@ public class NavBar extends HBox {
                             event.consume();
                             dragNDropService.dropFiles(board.getFiles(), folder, getScene().getWindow())
                                     .subscribe();
-                        } else if (board.getContent(DataTypes.FOLDER) instanceof String droppedFolder) {
+                        } else if (DragRegistry.droppedFolder(board.getContent(DataTypes.FOLDER)).orElse(null) instanceof FolderApi dropped) {
                             event.consume();
-                            var parsed = FolderApi.fromJson(droppedFolder);
-                            var newApi = new FolderApi(parsed.id(), folder.id(), parsed.name(), parsed.path(), parsed.folders(), parsed.files(), parsed.tags());
+                            var newApi = new FolderApi(dropped.id(), folder.id(), dropped.name(), dropped.path(), dropped.folders(), dropped.files(), dropped.tags());
                             folderReceiver.process(new FolderUpdateEvent(newApi))
                                     .subscribe();
-                        } else if (board.getContent(DataTypes.FILE) instanceof String droppedFile) {
+                        } else if (DragRegistry.droppedFile(board.getContent(DataTypes.FILE)).orElse(null) instanceof FileApi dropped) {
                             event.consume();
-                            var parsed = FileApi.fromJson(droppedFile);
-                            var newApi = new FileApi(parsed.id(), parsed.name(), parsed.tags(), folder.id(), null, null, null);
+                            var newApi = new FileApi(dropped.id(), dropped.name(), dropped.tags(), folder.id(), null, null, null);
                             fileReceiver.process(new FileUpdateEvent(newApi))
                                     .subscribe();
                         }
@@ -0,0 +1,315 @@
+package ploiu.ui;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.disposables.Disposable;
+import javafx.scene.image.Image;
+import lombok.extern.slf4j.Slf4j;
+import ploiu.model.FileApi;
+import ploiu.service.FileService;
+import ploiu.service.FolderService;
+import ploiu.util.PreviewCache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * fetches file previews a few at a time instead of all at once, so a search with thousands of results doesn't open thousands
+ * of requests. Requests are started in priority order (lowest first, e.g. the tile's position on screen), and can be cancelled
+ * or re-prioritized while they're waiting.
+ * <p>
+ * When several waiting previews are in the same folder, they're fetched together with the folder preview endpoint instead of
+ * 1 request each, unless the folder is known to be much bigger than what's wanted from it (see {@link #setFolderSize(long, int)}).
+ * Previews that are already in the {@link PreviewCache} are handed back right away without waiting in line
+ */
+@Slf4j
+public final class PreviewScheduler {
+    static final int MAX_CONCURRENT = 6;
+    // the folder endpoint sends every preview in the folder, so it's only worth it once enough of them are wanted
+    static final int MIN_FOLDER_BATCH = 4;
+
+    private final FileService fileService;
+    private final FolderService folderService;
+    private final PreviewCache previewCache;
+    // where loaded previews are handed over, e.g. the ui thread
+    private final Scheduler deliverOn;
+    private final int maxConcurrent;
+    private final PriorityQueue<Ticket> pending = new PriorityQueue<>(Comparator.comparingDouble((Ticket t) -> t.priority).thenComparingLong(t -> t.sequence));
+    private final Set<Job> running = new HashSet<>();
+    private final Map<Long, Integer> folderSizes = new HashMap<>();
+    private long sequence = 0;
+
+    public PreviewScheduler(FileService fileService, FolderService folderService, PreviewCache previewCache, Scheduler deliverOn) {
+        this(fileService, folderService, previewCache, deliverOn, MAX_CONCURRENT);
+    }
+
+    PreviewScheduler(FileService fileService, FolderService folderService, PreviewCache previewCache, Scheduler deliverOn, int maxConcurrent) {
+        this.fileService = fileService;
+        this.folderService = folderService;
+        this.previewCache = previewCache;
+        this.deliverOn = deliverOn;
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * queues up the preview for {@code file}
+     *
+     * @param priority  lower goes first
+     * @param onLoaded  called on {@code deliverOn} with the preview, unless the request was cancelled. Never called if the file
+     *                  has no preview
+     * @return a ticket that can cancel or re-prioritize the request
+     */
+    public Ticket request(FileApi file, double priority, Consumer<Image> onLoaded) {
+        var ticket = new Ticket(file, priority, onLoaded);
+        var cached = previewCache.get(file);
+        if (cached != null) {
+            ticket.done = true;
+            ticket.deliver(cached);
+            return ticket;
+        }
+        if (previewCache.isMissing(file)) {
+            ticket.done = true;
+            return ticket;
+        }
+        synchronized (this) {
+            ticket.sequence = sequence++;
+            pending.add(ticket);
+        }
+        pump();
+        return ticket;
+    }
+
+    /**
+     * cancels everything that's waiting or in flight, e.g. because the previews are for a search that's been replaced
+     */
+    public void cancelAll() {
+        List<Job> cancelled;
+        synchronized (this) {
+            for (var ticket : pending) {
+                ticket.cancelled = true;
+            }
+            pending.clear();
+            cancelled = new ArrayList<>(running);
+            running.clear();
+            for (var job : cancelled) {
+                job.tickets.forEach(t -> t.cancelled = true);
+            }
+        }
+        cancelled.forEach(Job::dispose);
+    }
+
+    /**
+     * lets the scheduler know how many files are in a folder. The folder preview endpoint sends every preview in the folder, so
+     * for a big folder where only a few previews are wanted (e.g. the ones on screen) it's cheaper to fetch them 1 at a time
+     */
+    public synchronized void setFolderSize(long folderId, int fileCount) {
+        folderSizes.put(folderId, fileCount);
+    }
+
+    /**
+     * @return how many previews are waiting for a free slot
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return how many requests are in flight
+     */
+    public synchronized int getRunningCount() {
+        return running.size();
+    }
+
+    /**
+     * starts as many waiting requests as there's room for
+     */
+    private void pump() {
+        List<Job> toStart = new ArrayList<>();
+        synchronized (this) {
+            while (running.size() < maxConcurrent && !pending.isEmpty()) {
+                var job = new Job(nextBatch());
+                for (var ticket : job.tickets) {
+                    ticket.job = job;
+                }
+                running.add(job);
+                toStart.add(job);
+            }
+        }
+        // started outside the lock, in case a request completes right away
+        toStart.forEach(this::start);
+    }
+
+    /**
+     * takes the highest priority ticket, along with every other waiting ticket in the same folder if there are enough of them
+     */
+    private List<Ticket> nextBatch() {
+        var first = pending.poll();
+        var folderId = first.file.folderId();
+        if (folderId == null) {
+            return List.of(first);
+        }
+        var sameFolder = pending.stream().filter(t -> folderId.equals(t.file.folderId())).toList();
+        var folderSize = folderSizes.get(folderId);
+        var batchSize = sameFolder.size() + 1;
+        // only worth downloading the whole folder's previews if at least half of them are wanted
+        if (batchSize < MIN_FOLDER_BATCH || (folderSize != null && batchSize * 2 < folderSize)) {
+            return List.of(first);
+        }
+        // as a set, so removing them is 1 pass over the queue instead of 1 per ticket
+        pending.removeAll(new HashSet<>(sameFolder));
+        var batch = new ArrayList<Ticket>(batchSize);
+        batch.add(first);
+        batch.addAll(sameFolder);
+        return batch;
+    }
+
+    private void start(Job job) {
+        if (job.tickets.size() == 1) {
+            var ticket = job.tickets.get(0);
+            job.setDisposable(fileService.fetchFilePreview(ticket.file)
+                    .subscribe(image -> {
+                        ticket.deliver(image);
+                        finish(job, null);
+                    }, e -> finish(job, e), () -> finish(job, null)));
+        } else {
+            var folderId = job.tickets.get(0).file.folderId();
+            job.setDisposable(folderService.fetchFilePreviews(folderId, job.tickets.stream().map(t -> t.file).toList())
+                    .subscribe(previews -> {
+                        deliverAll(job, previews);
+                        finish(job, null);
+                    }, e -> finish(job, e)));
+        }
+    }
+
+    private void deliverAll(Job job, Map<Long, Image> previews) {
+        for (var ticket : job.tickets) {
+            var image = previews.get(ticket.file.id());
+            if (image != null) {
+                ticket.deliver(image);
+            }
+        }
+    }
+
+    private void finish(Job job, Throwable error) {
+        if (error != null) {
+            log.warn("Failed to load {} file preview(s)", job.tickets.size(), error);
+        }
+        synchronized (this) {
+            if (!running.remove(job)) {
+                return;
+            }
+            // failed previews can be asked for again later
+            if (error == null) {
+                job.tickets.forEach(t -> t.done = true);
+            }
+        }
+        pump();
+    }
+
+    /**
+     * a file's place in line for its preview
+     */
+    public final class Ticket {
+        private final FileApi file;
+        private final Consumer<Image> onLoaded;
+        private double priority;
+        private long sequence;
+        private volatile boolean cancelled = false;
+        private volatile boolean done = false;
+        private Job job;
+
+        private Ticket(FileApi file, double priority, Consumer<Image> onLoaded) {
+            this.file = file;
+            this.priority = priority;
+            this.onLoaded = onLoaded;
+        }
+
+        /**
+         * stops the preview from being fetched if it hasn't been yet, and from being handed over if it has. A request shared with
+         * other previews (from the same folder) is only stopped once all of them are cancelled
+         */
+        public void cancel() {
+            Job toDispose = null;
+            synchronized (PreviewScheduler.this) {
+                cancelled = true;
+                if (pending.remove(this)) {
+                    return;
+                }
+                if (job != null && job.tickets.stream().allMatch(t -> t.cancelled) && running.remove(job)) {
+                    toDispose = job;
+                }
+            }
+            if (toDispose != null) {
+                toDispose.dispose();
+                pump();
+            }
+        }
+
+        /**
+         * moves the request in line, if it's still waiting
+         */
+        public void setPriority(double priority) {
+            synchronized (PreviewScheduler.this) {
+                if (pending.remove(this)) {
+                    this.priority = priority;
+                    pending.add(this);
+                } else {
+                    this.priority = priority;
+                }
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return true once the preview has been fetched, or the file turned out not to have one
+         */
+        public boolean isDone() {
+            return done;
+        }
+
+        private void deliver(Image image) {
+            deliverOn.scheduleDirect(() -> {
+                if (!cancelled) {
+                    onLoaded.accept(image);
+                }
+            });
+        }
+    }
+
+    private static final class Job {
+        private final List<Ticket> tickets;
+        private Disposable disposable;
+        private boolean disposed = false;
+
+        private Job(List<Ticket> tickets) {
+            this.tickets = tickets;
+        }
+
+        /**
+         * jobs are started outside the scheduler's lock, so the job can be cancelled before its request is handed over here. If it
+         * was, the request is stopped right away
+         */
+        private synchronized void setDisposable(Disposable disposable) {
+            this.disposable = disposable;
+            if (disposed) {
+                disposable.dispose();
+            }
+        }
+
+        private synchronized void dispose() {
+            disposed = true;
+            if (disposable != null) {
+                disposable.dispose();
+            }
+        }
+    }
+}
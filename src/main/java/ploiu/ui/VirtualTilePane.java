@@ -0,0 +1,325 @@
+package ploiu.ui;
+
+import javafx.beans.InvalidationListener;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Bounds;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.layout.Region;
+import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * a grid of same-size tiles (like {@link javafx.scene.layout.TilePane}) that only has nodes for the tiles that are on screen in
+ * its {@link ScrollPane}, plus {@code overscan} pixels above and below. As it's scrolled, nodes for tiles that leave that range
+ * are re-used for the tiles that enter it, so a folder with 100k files has the same number of nodes as one with 100.
+ * <p>
+ * Tiles are as big as the biggest cell that's been shown. An optional trailing node (e.g. a button to add another item) goes
+ * after the last item, as if it were 1 more tile. Whenever an item gets or loses a cell, {@code onShown} / {@code onHidden}
+ * are called for it, so things like previews can be loaded only for items that are close to being on screen.
+ * <p>
+ * Cells stay with their item, not their position: if an item is added or removed, the items around it keep their cells and
+ * just move. Only items that are new to the visible range (or were replaced by a different, non-equal version) get a cell
+ * pointed at them
+ *
+ * @param <T> the items in the grid
+ * @param <N> the nodes that show them
+ */
+public class VirtualTilePane<T, N extends Node> extends Region {
+    @Getter
+    private final ObservableList<T> items = FXCollections.observableArrayList();
+    private Function<T, N> cellFactory;
+    private BiConsumer<N, T> cellUpdater;
+    private Consumer<N> cellReleaser = cell -> {
+    };
+    private BiConsumer<T, Double> onShown = (item, distance) -> {
+    };
+    private Consumer<T> onHidden = item -> {
+    };
+    private ScrollPane scrollPane;
+    @Nullable
+    private Node trailing;
+    @Getter
+    private double hgap = 0;
+    @Getter
+    private double vgap = 0;
+    @Getter
+    private double overscan = 0;
+    private double tileWidth = 0;
+    private double tileHeight = 0;
+    // the cell showing each item that's in range
+    private final Map<T, N> cells = new HashMap<>();
+    // cells that aren't showing anything right now, kept around to be re-used
+    private final Deque<N> spare = new ArrayDeque<>();
+    private Set<T> shown = new HashSet<>();
+
+    public VirtualTilePane() {
+        items.addListener((InvalidationListener) ignored -> requestLayout());
+    }
+
+    /**
+     * @param cellFactory makes a new cell for an item, when there isn't a spare one to re-use
+     * @param cellUpdater points a spare cell at a different item
+     */
+    public void setCells(Function<T, N> cellFactory, BiConsumer<N, T> cellUpdater) {
+        setCells(cellFactory, cellUpdater, cell -> {
+        });
+    }
+
+    /**
+     * same as {@link #setCells(Function, BiConsumer)}, for cells that hold on to something of their item's (like a listener)
+     *
+     * @param cellReleaser called when a cell stops showing its item and is put aside as a spare, which is also before it's
+     *                     thrown away
+     */
+    public void setCells(Function<T, N> cellFactory, BiConsumer<N, T> cellUpdater, Consumer<N> cellReleaser) {
+        releaseAll();
+        this.cellFactory = cellFactory;
+        this.cellUpdater = cellUpdater;
+        this.cellReleaser = cellReleaser;
+        getChildren().removeAll(spare);
+        spare.clear();
+        requestLayout();
+    }
+
+    /**
+     * @param onShown  called with an item and how far its tile is from the visible area (0 if it's at least partly visible),
+     *                 whenever it gets a cell and again whenever it moves while it has one
+     * @param onHidden called when an item's cell is taken away (including when the item is removed)
+     */
+    public void setOnVisibilityChanged(BiConsumer<T, Double> onShown, Consumer<T> onHidden) {
+        this.onShown = onShown;
+        this.onHidden = onHidden;
+    }
+
+    /**
+     * the scroll pane this grid is in, which decides which tiles get a cell
+     */
+    public void setScrollPane(ScrollPane scrollPane) {
+        this.scrollPane = scrollPane;
+        InvalidationListener relayout = ignored -> requestLayout();
+        scrollPane.vvalueProperty().addListener(relayout);
+        scrollPane.hvalueProperty().addListener(relayout);
+        scrollPane.viewportBoundsProperty().addListener(relayout);
+        requestLayout();
+    }
+
+    /**
+     * @param trailing shown after the last item, or null for nothing
+     */
+    public void setTrailing(@Nullable Node trailing) {
+        if (this.trailing != null) {
+            getChildren().remove(this.trailing);
+        }
+        this.trailing = trailing;
+        if (trailing != null) {
+            trailing.setVisible(false);
+            getChildren().add(trailing);
+        }
+        requestLayout();
+    }
+
+    public void setHgap(double hgap) {
+        this.hgap = hgap;
+        requestLayout();
+    }
+
+    public void setVgap(double vgap) {
+        this.vgap = vgap;
+        requestLayout();
+    }
+
+    /**
+     * @param overscan how far (in pixels) above and below the visible area tiles get a cell
+     */
+    public void setOverscan(double overscan) {
+        this.overscan = overscan;
+        requestLayout();
+    }
+
+    /**
+     * @return how many nodes are showing an item, for checking that the node count stays constant
+     */
+    public int getCellCount() {
+        return cells.size();
+    }
+
+    @Override
+    public Orientation getContentBias() {
+        return Orientation.HORIZONTAL;
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+        measure();
+        var insets = getInsets();
+        return insets.getLeft() + tileWidth + insets.getRight();
+    }
+
+    @Override
+    protected double computePrefHeight(double width) {
+        measure();
+        var insets = getInsets();
+        var rows = getRows(width < 0 ? getWidth() : width);
+        var tiles = rows == 0 ? 0 : rows * tileHeight + (rows - 1) * vgap;
+        return insets.getTop() + tiles + insets.getBottom();
+    }
+
+    @Override
+    protected void layoutChildren() {
+        measure();
+        var tileCount = getTileCount();
+        var columns = getColumns(getWidth());
+        var rowHeight = tileHeight + vgap;
+        var insets = getInsets();
+        var visible = getVisibleArea();
+        int first = 0;
+        int last = 0;
+        if (visible != null && tileCount > 0 && rowHeight > 0) {
+            var rows = (tileCount + columns - 1) / columns;
+            var firstRow = (int) Math.floor((visible.getMinY() - overscan - insets.getTop()) / rowHeight);
+            var lastRow = (int) Math.floor((visible.getMaxY() + overscan - insets.getTop()) / rowHeight);
+            if (lastRow >= 0 && firstRow < rows) {
+                first = Math.max(0, firstRow) * columns;
+                last = Math.min(tileCount, (Math.min(rows - 1, lastRow) + 1) * columns);
+            }
+        }
+        Set<T> nowShown = new HashSet<>();
+        for (var index = first; index < Math.min(last, items.size()); index++) {
+            nowShown.add(items.get(index));
+        }
+        // cells for items that left the range (or the list) are freed up first, so they can be re-used for the ones that entered it
+        var iterator = cells.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            if (!nowShown.contains(entry.getKey())) {
+                park(entry.getValue());
+                iterator.remove();
+            }
+        }
+        var trailingShown = false;
+        for (var index = first; index < last; index++) {
+            var x = insets.getLeft() + (index % columns) * (tileWidth + hgap);
+            var y = insets.getTop() + (index / columns) * rowHeight;
+            if (index == items.size()) {
+                // only the trailing node can be past the last item
+                trailing.resizeRelocate(x, y, tileWidth, tileHeight);
+                trailingShown = true;
+                continue;
+            }
+            var item = items.get(index);
+            var cell = cells.get(item);
+            if (cell == null) {
+                cell = spare.poll();
+                if (cell == null) {
+                    cell = cellFactory.apply(item);
+                    getChildren().add(cell);
+                } else {
+                    cellUpdater.accept(cell, item);
+                }
+                cells.put(item, cell);
+            }
+            cell.setVisible(true);
+            cell.resizeRelocate(x, y, tileWidth, tileHeight);
+            onShown.accept(item, distance(y, y + tileHeight, visible));
+        }
+        if (trailing != null) {
+            trailing.setVisible(trailingShown);
+        }
+        for (var cell : spare) {
+            cell.setVisible(false);
+        }
+        // keep enough spares for the range to move a full screen without making new cells, but not more than that
+        while (spare.size() > Math.max(cells.size(), columns)) {
+            getChildren().remove(spare.removeLast());
+        }
+        for (var item : shown) {
+            if (!nowShown.contains(item)) {
+                onHidden.accept(item);
+            }
+        }
+        shown = nowShown;
+    }
+
+    /**
+     * sizes tiles to fit the biggest cell seen so far, making a cell for the first item if there aren't any yet
+     */
+    private void measure() {
+        if (cellFactory != null && !items.isEmpty() && cells.isEmpty() && spare.isEmpty()) {
+            var probe = cellFactory.apply(items.get(0));
+            probe.setVisible(false);
+            getChildren().add(probe);
+            park(probe);
+        }
+        for (var child : getChildren()) {
+            tileWidth = Math.max(tileWidth, child.prefWidth(-1));
+            tileHeight = Math.max(tileHeight, child.prefHeight(-1));
+        }
+    }
+
+    private void releaseAll() {
+        cells.values().forEach(this::park);
+        cells.clear();
+        for (var item : shown) {
+            onHidden.accept(item);
+        }
+        shown = new HashSet<>();
+    }
+
+    /**
+     * puts a cell aside to be re-used, letting go of whatever it had from its item
+     */
+    private void park(N cell) {
+        cellReleaser.accept(cell);
+        spare.push(cell);
+    }
+
+    private int getTileCount() {
+        return items.size() + (trailing == null ? 0 : 1);
+    }
+
+    private int getColumns(double width) {
+        var insets = getInsets();
+        var available = width - insets.getLeft() - insets.getRight();
+        if (tileWidth <= 0) {
+            return 1;
+        }
+        return Math.max(1, (int) Math.floor((available + hgap) / (tileWidth + hgap)));
+    }
+
+    private int getRows(double width) {
+        var columns = getColumns(width);
+        return (getTileCount() + columns - 1) / columns;
+    }
+
+    /**
+     * @return the part of this pane that the scroll pane is showing, in this pane's coordinates, or null if nothing is shown
+     */
+    @Nullable
+    private Bounds getVisibleArea() {
+        if (scrollPane == null || getScene() == null || scrollPane.getScene() == null) {
+            return null;
+        }
+        // the scroll pane's own bounds include its scroll bars, which is close enough given the overscan
+        return sceneToLocal(scrollPane.localToScene(scrollPane.getLayoutBounds()));
+    }
+
+    /**
+     * @return how many pixels the vertical span from {@code minY} to {@code maxY} is from {@code visible}, or 0 if they overlap
+     */
+    static double distance(double minY, double maxY, Bounds visible) {
+        return Math.max(0, Math.max(visible.getMinY() - maxY, minY - visible.getMaxY()));
+    }
+}
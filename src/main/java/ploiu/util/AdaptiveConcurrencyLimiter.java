@@ -0,0 +1,245 @@
+package ploiu.util;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.core.SingleEmitter;
+import io.reactivex.rxjava3.disposables.Disposable;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * limits how many requests run at once, and adjusts that limit based on how the server is handling them (AIMD).
+ * <ul>
+ *     <li>every request that succeeds without its latency blowing up raises the limit by {@code 1 / limit}, so about +1 per round of requests</li>
+ *     <li>a failure, or a latency well above the best seen for requests of that size, cuts the limit by {@link #BACKOFF_RATIO}</li>
+ * </ul>
+ * Latency is compared per size class (powers of 2 of the request's cost) because a 4gb upload is always going to take longer than a 1kb one.
+ * Requests over the limit wait in a queue in the order they were submitted
+ */
+public final class AdaptiveConcurrencyLimiter {
+    static final double BACKOFF_RATIO = 0.75;
+    // how much slower than the best observed latency a request can be before we consider the server congested
+    static final double LATENCY_TOLERANCE = 2.0;
+    // anything faster than this is never considered congested, it's just noise
+    private static final long MIN_CONGESTED_LATENCY_NANOS = 5_000_000;
+    // lets the baseline latency drift up over time so 1 lucky fast request doesn't count as the norm forever
+    private static final double BASELINE_DRIFT = 1.01;
+    private static final int THROUGHPUT_WINDOW_SECONDS = 10;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final Deque<Pending<?>> queue = new ArrayDeque<>();
+    // best latency (nanos) seen per size class, -1 if nothing has been seen yet
+    private final double[] baselines = new double[64];
+    private final AtomicInteger drainWip = new AtomicInteger(0);
+    private double limit;
+    private int inFlight = 0;
+    // bumped every time the limit is cut, so a burst of failures from the same round only cuts it once
+    private long generation = 0;
+
+    // per-second buckets for throughput
+    private final long[] bucketSeconds = new long[THROUGHPUT_WINDOW_SECONDS];
+    private final long[] bucketCounts = new long[THROUGHPUT_WINDOW_SECONDS];
+    private final long[] bucketCosts = new long[THROUGHPUT_WINDOW_SECONDS];
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("limits must satisfy 1 <= min <= initial <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        Arrays.fill(baselines, -1);
+    }
+
+    /**
+     * runs the request created by {@code task} once there's room under the current limit
+     *
+     * @param cost how big the request is (e.g. the number of bytes being uploaded). Used for throughput and to compare latency fairly
+     * @param task creates the request. Not called until the request is allowed to start
+     * @return the result of the request
+     */
+    public <T> Single<T> submit(long cost, Supplier<Single<T>> task) {
+        return Single.create(emitter -> {
+            var pending = new Pending<>(Math.max(cost, 0), task, emitter);
+            emitter.setCancellable(() -> cancel(pending));
+            synchronized (this) {
+                queue.add(pending);
+            }
+            drain();
+        });
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * @return requests completed per second, averaged over the last {@value THROUGHPUT_WINDOW_SECONDS} seconds
+     */
+    public synchronized double getThroughput() {
+        return sumWindow(bucketCounts) / (double) THROUGHPUT_WINDOW_SECONDS;
+    }
+
+    /**
+     * @return cost (e.g. bytes) completed per second, averaged over the last {@value THROUGHPUT_WINDOW_SECONDS} seconds
+     */
+    public synchronized double getCostThroughput() {
+        return sumWindow(bucketCosts) / (double) THROUGHPUT_WINDOW_SECONDS;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("limit=%d inFlight=%d queued=%d throughput=%.1f/s", getLimit(), getInFlight(), getQueued(), getThroughput());
+    }
+
+    private void drain() {
+        // only 1 thread drains at a time, and requests that complete synchronously don't recurse back in here
+        if (drainWip.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            Pending<?> next;
+            while ((next = nextToStart()) != null) {
+                next.start();
+            }
+        } while (drainWip.decrementAndGet() != 0);
+    }
+
+    private synchronized Pending<?> nextToStart() {
+        if (inFlight >= (int) limit || queue.isEmpty()) {
+            return null;
+        }
+        var next = queue.poll();
+        inFlight++;
+        next.generation = generation;
+        return next;
+    }
+
+    private void cancel(Pending<?> pending) {
+        boolean wasQueued;
+        synchronized (this) {
+            wasQueued = queue.remove(pending);
+        }
+        if (!wasQueued && pending.finish()) {
+            pending.dispose();
+            synchronized (this) {
+                inFlight--;
+            }
+            drain();
+        }
+    }
+
+    private void onFinished(Pending<?> pending, long latencyNanos, boolean failed) {
+        synchronized (this) {
+            inFlight--;
+            recordThroughput(pending.cost);
+            var sizeClass = 64 - Long.numberOfLeadingZeros(pending.cost);
+            var baseline = baselines[sizeClass];
+            var congested = failed || (baseline > 0 && latencyNanos > Math.max(baseline * LATENCY_TOLERANCE, MIN_CONGESTED_LATENCY_NANOS));
+            if (!failed) {
+                baselines[sizeClass] = baseline < 0 ? latencyNanos : Math.min(latencyNanos, baseline * BASELINE_DRIFT);
+            }
+            if (congested) {
+                // only requests started since the last cut can cause another one
+                if (pending.generation == generation) {
+                    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                    generation++;
+                }
+            } else {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+        drain();
+    }
+
+    private void recordThroughput(long cost) {
+        var second = System.nanoTime() / 1_000_000_000L;
+        var index = (int) (second % THROUGHPUT_WINDOW_SECONDS);
+        if (bucketSeconds[index] != second) {
+            bucketSeconds[index] = second;
+            bucketCounts[index] = 0;
+            bucketCosts[index] = 0;
+        }
+        bucketCounts[index]++;
+        bucketCosts[index] += cost;
+    }
+
+    private long sumWindow(long[] buckets) {
+        var now = System.nanoTime() / 1_000_000_000L;
+        long total = 0;
+        for (int i = 0; i < THROUGHPUT_WINDOW_SECONDS; i++) {
+            if (now - bucketSeconds[i] < THROUGHPUT_WINDOW_SECONDS) {
+                total += buckets[i];
+            }
+        }
+        return total;
+    }
+
+    private final class Pending<T> {
+        private final long cost;
+        private final Supplier<Single<T>> task;
+        private final SingleEmitter<T> emitter;
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+        private volatile Disposable subscription;
+        // only touched while holding the limiter's lock
+        private long generation;
+
+        Pending(long cost, Supplier<Single<T>> task, SingleEmitter<T> emitter) {
+            this.cost = cost;
+            this.task = task;
+            this.emitter = emitter;
+        }
+
+        void start() {
+            var startedAt = System.nanoTime();
+            Single<T> request;
+            try {
+                request = task.get();
+            } catch (Throwable e) {
+                if (finish()) {
+                    onFinished(this, System.nanoTime() - startedAt, true);
+                    emitter.tryOnError(e);
+                }
+                return;
+            }
+            subscription = request.subscribe(value -> {
+                if (finish()) {
+                    onFinished(this, System.nanoTime() - startedAt, false);
+                    emitter.onSuccess(value);
+                }
+            }, e -> {
+                if (finish()) {
+                    onFinished(this, System.nanoTime() - startedAt, true);
+                    emitter.tryOnError(e);
+                }
+            });
+        }
+
+        /**
+         * @return true the first time this is called, so a request is only ever released once
+         */
+        boolean finish() {
+            return finished.compareAndSet(false, true);
+        }
+
+        void dispose() {
+            var current = subscription;
+            if (current != null) {
+                current.dispose();
+            }
+        }
+    }
+}
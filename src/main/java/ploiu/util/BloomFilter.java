@@ -0,0 +1,54 @@
+package ploiu.util;
+
+/**
+ * a set that can only answer "definitely not in here" or "maybe in here", in a fraction of the memory a real set would take
+ * (about 1.2 bytes per entry at a 1% false positive rate). Entries can't be removed.
+ * <p>
+ * Entries are passed in as 2 independent 64-bit hashes instead of objects, so callers that already have a good hash (e.g. a
+ * digest) don't pay for hashing twice. Not thread safe
+ */
+public final class BloomFilter {
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedEntries   how many entries the filter is sized for. Adding more still works, but false positives go up
+     * @param falsePositiveRate how often {@link #mightContain(long, long)} can be wrong at {@code expectedEntries}, e.g. 0.01
+     */
+    public BloomFilter(long expectedEntries, double falsePositiveRate) {
+        var entries = Math.max(expectedEntries, 1);
+        var optimalBits = (long) Math.ceil(-entries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        // round up to whole longs
+        this.bits = new long[(int) Math.max((optimalBits + 63) / 64, 1)];
+        this.bitCount = bits.length * 64L;
+        this.hashCount = (int) Math.max(Math.round((double) bitCount / entries * Math.log(2)), 1);
+    }
+
+    public void add(long hash1, long hash2) {
+        for (int i = 0; i < hashCount; i++) {
+            var bit = bitIndex(hash1, hash2, i);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return false if the entry was never added, true if it probably was
+     */
+    public boolean mightContain(long hash1, long hash2) {
+        for (int i = 0; i < hashCount; i++) {
+            var bit = bitIndex(hash1, hash2, i);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * the i-th bit for an entry. Combining 2 hashes like this works as well as having {@code hashCount} independent ones
+     */
+    private long bitIndex(long hash1, long hash2, int i) {
+        return Math.floorMod(hash1 + i * hash2, bitCount);
+    }
+}
@@ -0,0 +1,57 @@
+package ploiu.util;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import io.reactivex.rxjava3.core.Flowable;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public final class JsonUtils {
+    /**
+     * shared by everything that reads or writes json. Creating an {@link ObjectMapper} is expensive, but using one is thread safe
+     */
+    public static final ObjectMapper MAPPER = new ObjectMapper()
+            .registerModule(new Jdk8Module())
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private JsonUtils() {
+    }
+
+    /**
+     * reads a json array 1 element at a time, so elements can be used before the whole array has been downloaded and only
+     * the elements that haven't been consumed yet are held in memory. Elements are only parsed as they're requested.
+     * <p>
+     * {@code in} is closed when the array ends, parsing fails, or the subscription is cancelled
+     *
+     * @param in   the stream containing the json array
+     * @param type the type of each element
+     * @return a flowable that emits each element of the array, in order
+     */
+    public static <T> Flowable<T> streamArray(InputStream in, Class<T> type) {
+        return Flowable.using(
+                () -> in,
+                stream -> Flowable.<T, JsonParser>generate(() -> openArray(stream), (parser, emitter) -> {
+                    var token = parser.nextToken();
+                    if (token == JsonToken.END_ARRAY || token == null) {
+                        emitter.onComplete();
+                    } else {
+                        emitter.onNext(MAPPER.readValue(parser, type));
+                    }
+                }, JsonParser::close),
+                InputStream::close
+        );
+    }
+
+    private static JsonParser openArray(InputStream in) throws IOException {
+        var parser = MAPPER.createParser(in);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected a json array");
+        }
+        return parser;
+    }
+}
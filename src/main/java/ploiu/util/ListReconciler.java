@@ -0,0 +1,98 @@
+package ploiu.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * updates a list that's on screen to match a newer copy of it, touching only what changed. Items are matched up by key
+ * (e.g. their id) instead of by position, so an item that was added or removed doesn't make everything after it look changed.
+ * Anything listening to the list (like {@link ploiu.ui.VirtualTilePane}) only sees the items that were actually added,
+ * removed, or replaced
+ */
+public final class ListReconciler {
+    private ListReconciler() {
+    }
+
+    /**
+     * what {@link #reconcile(List, List, Function)} did
+     *
+     * @param added   items whose key wasn't in the list before
+     * @param removed items whose key isn't in the list anymore
+     * @param updated items that were replaced by a different version with the same key
+     * @param moved   items that had to be moved to a different position
+     */
+    public record Changes(int added, int removed, int updated, int moved) {
+        public boolean isEmpty() {
+            return added == 0 && removed == 0 && updated == 0 && moved == 0;
+        }
+    }
+
+    /**
+     * makes {@code current} have the same items, in the same order, as {@code next}. Items that are equal in both are left
+     * alone, items with the same key but different contents are replaced where they are, and everything else is added or
+     * removed. {@code next} shouldn't have 2 items with the same key
+     */
+    public static <T, K> Changes reconcile(List<T> current, List<T> next, Function<T, K> key) {
+        Set<K> nextKeys = new HashSet<>(next.size());
+        for (var item : next) {
+            nextKeys.add(key.apply(item));
+        }
+        var removed = 0;
+        // backwards so removing doesn't shift the items that haven't been checked yet
+        for (var i = current.size() - 1; i >= 0; i--) {
+            if (!nextKeys.contains(key.apply(current.get(i)))) {
+                current.remove(i);
+                removed++;
+            }
+        }
+        // where each remaining key is, so moving something doesn't take a search through the whole list
+        var positions = new HashMap<K, Integer>(current.size());
+        for (var i = 0; i < current.size(); i++) {
+            positions.put(key.apply(current.get(i)), i);
+        }
+        var added = 0;
+        var updated = 0;
+        var moved = 0;
+        for (var i = 0; i < next.size(); i++) {
+            var item = next.get(i);
+            var itemKey = key.apply(item);
+            if (i < current.size() && Objects.equals(key.apply(current.get(i)), itemKey)) {
+                if (!Objects.equals(current.get(i), item)) {
+                    current.set(i, item);
+                    updated++;
+                }
+                continue;
+            }
+            var from = positions.get(itemKey);
+            if (from != null) {
+                // everything before i is already where it belongs, so the item can only be further down
+                current.remove(from.intValue());
+                moved++;
+            } else {
+                added++;
+            }
+            current.add(i, item);
+            reindex(current, key, positions, i, from == null ? current.size() - 1 : from);
+        }
+        // only left over if current had the same key more than once
+        while (current.size() > next.size()) {
+            current.remove(current.size() - 1);
+            removed++;
+        }
+        return new Changes(added, removed, updated, moved);
+    }
+
+    /**
+     * refreshes the positions between {@code from} and {@code to} (inclusive), which are the only ones an insert or a move
+     * can shift
+     */
+    private static <T, K> void reindex(List<T> current, Function<T, K> key, HashMap<K, Integer> positions, int from, int to) {
+        for (var i = from; i <= to && i < current.size(); i++) {
+            positions.put(key.apply(current.get(i)), i);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package ploiu.util;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.LongFunction;
+
+/**
+ * a map from {@code long} to objects that keeps its keys as primitives, so looking something up by id doesn't box the id (and
+ * the map doesn't hold a {@link Long} for every entry). Uses open addressing with linear probing, which keeps all the keys in a
+ * single array.
+ * <p>
+ * Values can't be null, since an empty slot is one without a value. Not thread safe
+ *
+ * @param <V> the values in the map
+ */
+public final class LongMap<V> {
+    private static final int MIN_CAPACITY = 8;
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    public LongMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize how many entries the map is sized for before it has to grow
+     */
+    public LongMap(int expectedSize) {
+        // grows at 3/4 full, so leave room for expectedSize under that
+        var capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize * 4 / 3 + 1) - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        var slot = find(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * @return the value that was there before, or null if there wasn't one
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        Objects.requireNonNull(value, "LongMap can't hold null values");
+        var mask = keys.length - 1;
+        for (var slot = slotFor(key); ; slot = (slot + 1) & mask) {
+            if (values[slot] == null) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size * 4 >= keys.length * 3) {
+                    resize(keys.length * 2);
+                }
+                return null;
+            }
+            if (keys[slot] == key) {
+                var previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * @return the value for {@code key}, after making it with {@code factory} if there wasn't one
+     */
+    public V computeIfAbsent(long key, LongFunction<V> factory) {
+        var existing = get(key);
+        if (existing != null) {
+            return existing;
+        }
+        var created = factory.apply(key);
+        put(key, created);
+        return created;
+    }
+
+    /**
+     * @return the value that was removed, or null if there wasn't one
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        var slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        var removed = (V) values[slot];
+        // shift the entries after it back, so a lookup never stops early at the hole this leaves
+        var mask = keys.length - 1;
+        var hole = slot;
+        for (var next = (hole + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+            var home = slotFor(keys[next]);
+            // the entry can fill the hole if the hole is between where it wants to be and where it is
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        values[hole] = null;
+        size--;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * @return a copy of the keys, in no particular order. Being a copy, the map can be changed while going through it
+     */
+    public long[] keys() {
+        var copy = new long[size];
+        var index = 0;
+        for (var slot = 0; slot < keys.length; slot++) {
+            if (values[slot] != null) {
+                copy[index++] = keys[slot];
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * @return a copy of the values, in no particular order
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        var copy = new ArrayList<V>(size);
+        for (var value : values) {
+            if (value != null) {
+                copy.add((V) value);
+            }
+        }
+        return copy;
+    }
+
+    private int find(long key) {
+        var mask = keys.length - 1;
+        for (var slot = slotFor(key); values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * ids are mostly sequential, so they're mixed up first to keep nearby ids from piling up in the same stretch of slots
+     */
+    private int slotFor(long key) {
+        var hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & (keys.length - 1);
+    }
+
+    private void resize(int capacity) {
+        var oldKeys = keys;
+        var oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        var mask = capacity - 1;
+        for (var i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                var slot = slotFor(oldKeys[i]);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
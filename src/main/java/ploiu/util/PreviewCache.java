@@ -0,0 +1,152 @@
+package ploiu.util;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import javafx.scene.image.Image;
+import org.jetbrains.annotations.Nullable;
+import ploiu.config.CacheConfig;
+import ploiu.model.FileApi;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+/**
+ * decoded file previews, shared by everything that shows them so going back to a folder (or opening a file's info) doesn't
+ * download and decode the same previews again.
+ * <p>
+ * Previews are stored with the file's {@code dateCreated}, and a preview stored for a different date is treated as missing.
+ * The cache is bounded by how much memory the decoded pixels take (4 bytes per pixel) instead of how many previews there are,
+ * and drops the least recently used previews first. Files that turned out not to have a preview are remembered too, so they
+ * aren't asked for again every time their folder is opened. That's only for a short while, since the server may still be making
+ * the preview for a file that was just uploaded
+ */
+@Singleton
+public final class PreviewCache {
+    private static final int BYTES_PER_PIXEL = 4;
+    // roughly what an entry without an image costs, so remembering lots of files without previews still counts against the budget
+    private static final long MISSING_BYTES = 64;
+    private static final long MISSING_TTL_NANOS = Duration.ofMinutes(1).toNanos();
+
+    private final long maxBytes;
+    private final LongSupplier nanoClock;
+    // least recently used first
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    @Inject
+    public PreviewCache(CacheConfig config) {
+        this(config.getPreviewCacheMaxBytes());
+    }
+
+    public PreviewCache(long maxBytes) {
+        this(maxBytes, System::nanoTime);
+    }
+
+    PreviewCache(long maxBytes, LongSupplier nanoClock) {
+        this.maxBytes = maxBytes;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @return the preview for {@code file}, or null if there isn't one for its current version (or it's known not to have one)
+     */
+    @Nullable
+    public synchronized Image get(FileApi file) {
+        var entry = find(file);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.image();
+    }
+
+    /**
+     * @return true if the current version of {@code file} is known to not have a preview, so there's no point asking for it
+     */
+    public synchronized boolean isMissing(FileApi file) {
+        var entry = find(file);
+        return entry != null && entry.image() == null;
+    }
+
+    public synchronized void put(FileApi file, Image image) {
+        store(file, image, estimateBytes(image));
+    }
+
+    /**
+     * remembers that the current version of {@code file} doesn't have a preview, for a minute or so
+     */
+    public synchronized void putMissing(FileApi file) {
+        store(file, null, MISSING_BYTES);
+    }
+
+    @Nullable
+    private Entry find(FileApi file) {
+        var entry = entries.get(file.id());
+        if (entry == null || !Objects.equals(entry.version(), file.dateCreated())) {
+            return null;
+        }
+        if (entry.image() == null && nanoClock.getAsLong() - entry.storedAt() >= MISSING_TTL_NANOS) {
+            // long enough ago that it's worth asking again
+            entries.remove(file.id());
+            bytes -= entry.bytes();
+            return null;
+        }
+        return entry;
+    }
+
+    private void store(FileApi file, @Nullable Image image, long size) {
+        var previous = entries.put(file.id(), new Entry(file.dateCreated(), image, size, nanoClock.getAsLong()));
+        if (previous != null) {
+            bytes -= previous.bytes();
+        }
+        bytes += size;
+        var iterator = entries.values().iterator();
+        // the newest preview is last, so it's only dropped if it's bigger than the whole budget on its own
+        while (bytes > maxBytes && iterator.hasNext()) {
+            var eldest = iterator.next();
+            iterator.remove();
+            bytes -= eldest.bytes();
+            evictions++;
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(entries.size(), bytes, hits, misses, evictions);
+    }
+
+    static long estimateBytes(Image image) {
+        return (long) Math.ceil(image.getWidth()) * (long) Math.ceil(image.getHeight()) * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * @param image    null if the file doesn't have a preview
+     * @param storedAt when this was stored, from the cache's clock
+     */
+    private record Entry(@Nullable String version, @Nullable Image image, long bytes, long storedAt) {
+    }
+
+    /**
+     * @param previews  how many previews are cached
+     * @param bytes     roughly how much memory they take up
+     * @param hits      lookups that found a preview, or found that there isn't one
+     * @param misses    lookups that didn't know either way
+     * @param evictions previews dropped to stay under budget
+     */
+    public record Stats(int previews, long bytes, long hits, long misses, long evictions) {
+        public double hitRate() {
+            var lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d previews (%d KiB), %.1f%% hit rate over %d lookups, %d evicted", previews, bytes / 1024, hitRate() * 100, hits + misses, evictions);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ploiu.util;
+
+import io.reactivex.rxjava3.core.Single;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * makes concurrent identical reads share 1 in-flight request instead of each making their own.
+ * <p>
+ * A result can optionally be re-used for a short time after it completes. Any write to the server (see {@link #writeCompleted()})
+ * stops later reads from joining a flight that started before it, so nobody is ever handed data from before their own change
+ *
+ * @param <K> what identifies a request (e.g. a folder id)
+ * @param <V> the response type
+ */
+public final class SingleFlight<K, V> {
+    // shared across every instance, because writing a file changes the folder it's in too
+    private static final AtomicLong WRITES = new AtomicLong(0);
+
+    private final Map<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * marks everything currently in flight or cached as stale. Call this whenever a request that changes server state finishes
+     */
+    public static void writeCompleted() {
+        WRITES.incrementAndGet();
+    }
+
+    /**
+     * same as {@link #get(Object, Duration, Supplier)}, but the result is dropped as soon as the request completes
+     */
+    public Single<V> get(K key, Supplier<Single<V>> loader) {
+        return get(key, Duration.ZERO, loader);
+    }
+
+    /**
+     * joins the in-flight request for {@code key}, or starts a new one with {@code loader} if there isn't one
+     *
+     * @param key    identifies the request
+     * @param ttl    how long a successful result can be handed out after it completes
+     * @param loader creates the actual request. Only called when there's nothing to join
+     * @return the shared result
+     */
+    public Single<V> get(K key, Duration ttl, Supplier<Single<V>> loader) {
+        return Single.defer(() -> flights.compute(key, (k, existing) -> {
+            if (existing != null && existing.isUsable(WRITES.get(), System.nanoTime())) {
+                return existing;
+            }
+            return new Flight<>(loader.get(), ttl.toNanos(), WRITES.get(), done -> flights.remove(k, done));
+        }).result);
+    }
+
+    /**
+     * drops whatever is in flight or cached for {@code key}, so the next call makes a new request
+     */
+    public void invalidate(K key) {
+        flights.remove(key);
+    }
+
+    public void invalidateAll() {
+        flights.clear();
+    }
+
+    private static final class Flight<V> {
+        private final Single<V> result;
+        private final long ttlNanos;
+        private final long writeEpoch;
+        // 0 until the request has completed successfully
+        private volatile long completedAt = 0;
+        private volatile boolean failed = false;
+
+        Flight(Single<V> request, long ttlNanos, long writeEpoch, Consumer<Flight<V>> onDone) {
+            this.ttlNanos = ttlNanos;
+            this.writeEpoch = writeEpoch;
+            this.result = request
+                    .doOnSuccess(ignored -> {
+                        completedAt = System.nanoTime();
+                        if (ttlNanos <= 0) {
+                            onDone.accept(this);
+                        }
+                    })
+                    // errors are never shared past the callers that were already waiting on them
+                    .doOnError(ignored -> {
+                        failed = true;
+                        onDone.accept(this);
+                    })
+                    .cache();
+        }
+
+        boolean isUsable(long currentWriteEpoch, long now) {
+            if (failed || writeEpoch != currentWriteEpoch) {
+                return false;
+            }
+            return completedAt == 0 || now - completedAt < ttlNanos;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ploiu.util;
+
+import java.io.InterruptedIOException;
+import java.util.function.LongSupplier;
+
+/**
+ * limits how many bytes per second can pass through it. Holds up to 1 second's worth of tokens, so short bursts go through
+ * right away, and anything beyond that waits until enough tokens have refilled.
+ * <p>
+ * Callers that take more tokens than are available go into debt and are told to wait until it's paid off, so a big write
+ * isn't starved by a stream of small ones. The rate can be changed at any time, and a rate of 0 or less means unlimited
+ */
+public final class TokenBucket {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long RATE_WINDOW_NANOS = NANOS_PER_SECOND;
+
+    private final LongSupplier nanoClock;
+    private long bytesPerSecond;
+    private double tokens;
+    private long lastRefill;
+
+    // bytes that went through in the current window, for reporting the rate we're actually getting
+    private long windowStart;
+    private long windowBytes = 0;
+    private double lastWindowRate = 0;
+
+    public TokenBucket(long bytesPerSecond) {
+        this(bytesPerSecond, System::nanoTime);
+    }
+
+    TokenBucket(long bytesPerSecond, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.bytesPerSecond = bytesPerSecond;
+        this.tokens = Math.max(bytesPerSecond, 0);
+        this.lastRefill = nanoClock.getAsLong();
+        this.windowStart = lastRefill;
+    }
+
+    /**
+     * blocks until {@code bytes} are allowed through
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void acquire(long bytes) throws InterruptedIOException {
+        var waitNanos = reserve(bytes);
+        if (waitNanos <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for bandwidth");
+        }
+    }
+
+    /**
+     * takes {@code bytes} worth of tokens without waiting
+     *
+     * @return how long the caller needs to wait (in nanoseconds) before sending those bytes
+     */
+    synchronized long reserve(long bytes) {
+        var now = nanoClock.getAsLong();
+        recordBytes(bytes, now);
+        if (bytesPerSecond <= 0) {
+            return 0;
+        }
+        refill(now);
+        tokens -= bytes;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens * NANOS_PER_SECOND / bytesPerSecond);
+    }
+
+    public synchronized long getRate() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * changes the limit. Anything currently waiting finishes its wait at the old rate, but everything after that uses the new one
+     *
+     * @param bytesPerSecond the new limit, 0 or less for unlimited
+     */
+    public synchronized void setRate(long bytesPerSecond) {
+        var now = nanoClock.getAsLong();
+        if (this.bytesPerSecond > 0) {
+            refill(now);
+        } else {
+            // coming from unlimited, start with a full bucket
+            tokens = Math.max(bytesPerSecond, 0);
+        }
+        lastRefill = now;
+        this.bytesPerSecond = bytesPerSecond;
+        tokens = Math.min(tokens, Math.max(bytesPerSecond, 0));
+    }
+
+    /**
+     * @return how many bytes per second have actually been going through, measured over the last second
+     */
+    public synchronized long getEffectiveRate() {
+        var elapsed = nanoClock.getAsLong() - windowStart;
+        if (elapsed >= 2 * RATE_WINDOW_NANOS) {
+            // nothing has gone through in over a window, so whatever we measured last is stale
+            return 0;
+        }
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            return (long) ((double) windowBytes * NANOS_PER_SECOND / elapsed);
+        }
+        return (long) lastWindowRate;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("limit=%s effective=%d B/s", bytesPerSecond > 0 ? bytesPerSecond + " B/s" : "unlimited", getEffectiveRate());
+    }
+
+    private void refill(long now) {
+        var elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(bytesPerSecond, tokens + (double) elapsed * bytesPerSecond / NANOS_PER_SECOND);
+            lastRefill = now;
+        }
+    }
+
+    private void recordBytes(long bytes, long now) {
+        var elapsed = now - windowStart;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            lastWindowRate = elapsed >= 2 * RATE_WINDOW_NANOS ? 0 : (double) windowBytes * NANOS_PER_SECOND / elapsed;
+            windowStart = now;
+            windowBytes = 0;
+        }
+        windowBytes += bytes;
+    }
+}
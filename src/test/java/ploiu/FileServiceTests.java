@@ -9,24 +9,34 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EmptySource;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import ploiu.client.FileClient;
+import ploiu.config.UiConfig;
 import ploiu.exception.BadFileRequestException;
 import ploiu.exception.BadFileResponseException;
 import ploiu.model.CreateFileRequest;
 import ploiu.model.FileApi;
 import ploiu.model.UpdateFileRequest;
+import ploiu.service.ApiService;
+import ploiu.service.EntityStore;
 import ploiu.service.FileService;
+import ploiu.transfer.ChunkedUploader;
+import ploiu.transfer.ContentIndex;
+import ploiu.transfer.FileCache;
+import retrofit2.Response;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -34,7 +44,6 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
-import static ploiu.Constants.CACHE_DIR;
 
 @ExtendWith(MockitoExtension.class)
 public class FileServiceTests {
@@ -43,6 +52,25 @@ public class FileServiceTests {
     @Mock
     FileClient fileClient;
 
+    @Mock
+    ApiService apiService;
+    @Mock
+    ContentIndex contentIndex;
+    @Mock
+    UiConfig uiConfig;
+    @Mock
+    ChunkedUploader chunkedUploader;
+
+    // static so it's already made when the spy below is
+    @TempDir
+    static Path cacheDir;
+
+    @Spy
+    FileCache fileCache = new FileCache(cacheDir, Long.MAX_VALUE);
+
+    @Spy
+    EntityStore store = new EntityStore();
+
     @InjectMocks
     FileService fileService;
 
@@ -59,11 +87,11 @@ public class FileServiceTests {
 
     @Test
     void testGetFile_Contents_CACHE_DIR() throws Exception {
-        when(fileClient.getFileContents(anyLong()))
-                .thenReturn(Single.just(ResponseBody.create("test".getBytes(StandardCharsets.UTF_8), MediaType.get("text/plain"))));
+        when(fileClient.getFileContents(anyLong(), any(), any()))
+                .thenReturn(Single.just(Response.success(ResponseBody.create("test".getBytes(StandardCharsets.UTF_8), MediaType.get("text/plain")))));
         var savedFile = fileService.getFileContents(new FileApi(0, "test.txt", List.of(), null, null, null, null), null)
                 .blockingGet();
-        assertEquals(new File(CACHE_DIR), savedFile.getParentFile());
+        assertEquals(cacheDir.toFile(), savedFile.getParentFile());
         // cache dir can have a lot of files, so append the file ID to help make it unique
         assertEquals("0_test.txt", savedFile.getName());
         try (var reader = new BufferedReader(new FileReader(savedFile))) {
@@ -75,8 +103,8 @@ public class FileServiceTests {
 
     @Test
     void testGetFileContents() throws Exception {
-        when(fileClient.getFileContents(anyLong()))
-                .thenReturn(Single.just(ResponseBody.create("test".getBytes(StandardCharsets.UTF_8), MediaType.get("text/plain"))));
+        when(fileClient.getFileContents(anyLong(), any(), any()))
+                .thenReturn(Single.just(Response.success(ResponseBody.create("test".getBytes(StandardCharsets.UTF_8), MediaType.get("text/plain")))));
         var savedFile = fileService.getFileContents(new FileApi(0, "test.txt", List.of(), null, null, null, null), saveDir)
                 .blockingGet();
         assertEquals(saveDir, savedFile.getParentFile());
@@ -102,6 +130,15 @@ public class FileServiceTests {
         assertEquals("The file with the passed id could not be found.", e.getMessage());
     }
 
+    @Test
+    void testSearchStreamingParsesEachFile() {
+        var json = "[{\"id\":1,\"name\":\"a.txt\",\"tags\":[]},{\"id\":2,\"name\":\"b.txt\",\"tags\":[]}]";
+        when(fileClient.searchStreaming(any(), any(), any()))
+                .thenReturn(Single.just(ResponseBody.create(json, MediaType.get("application/json"))));
+        var names = fileService.searchStreaming("test").map(FileApi::name).toList().blockingGet();
+        assertEquals(List.of("a.txt", "b.txt"), names);
+    }
+
     @Test
     void testDeleteFileThrowsExceptionIfIdIsNegative() {
         var e = assertThrows(Exception.class, () -> fileService.deleteFile(-1).blockingAwait()).getCause();
@@ -6,12 +6,14 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import ploiu.client.FolderClient;
 import ploiu.exception.BadFolderRequestException;
 import ploiu.exception.BadFolderResponseException;
 import ploiu.model.FolderApi;
 import ploiu.model.FolderRequest;
+import ploiu.service.EntityStore;
 import ploiu.service.FolderService;
 
 import java.util.List;
@@ -27,6 +29,9 @@ class FolderServiceTests {
     @Mock
     FolderClient client;
 
+    @Spy
+    EntityStore store = new EntityStore();
+
     @InjectMocks
     FolderService folderService;
 
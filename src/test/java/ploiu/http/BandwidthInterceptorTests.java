@@ -0,0 +1,85 @@
+package ploiu.http;
+
+import okhttp3.*;
+import okio.Buffer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import retrofit2.Invocation;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BandwidthInterceptorTests {
+    static final int SIZE = 48 * 1024;
+
+    interface TestClient {
+        @BulkTransfer(BulkTransfer.Direction.UPLOAD)
+        void upload();
+
+        @BulkTransfer(BulkTransfer.Direction.DOWNLOAD)
+        void download();
+
+        void metadata();
+    }
+
+    @Test
+    @DisplayName("downloads are limited to the per-transfer rate")
+    void testDownloadLimited() throws Exception {
+        var bandwidth = new BandwidthInterceptor(0, 0, 0, 32 * 1024);
+        var start = System.nanoTime();
+        try (var res = client(bandwidth).newCall(request("download").build()).execute()) {
+            assertEquals(SIZE, res.body().bytes().length);
+        }
+        // 32k goes through right away, the last 16k takes half a second
+        assertTrue(System.nanoTime() - start >= 400_000_000L);
+        // the global limit was never touched
+        assertEquals(0, bandwidth.getDownloadBucket().getRate());
+    }
+
+    @Test
+    @DisplayName("uploads are limited to the global rate")
+    void testUploadLimited() throws Exception {
+        var bandwidth = new BandwidthInterceptor(32 * 1024, 0, 0, 0);
+        var start = System.nanoTime();
+        var body = RequestBody.create(new byte[SIZE], MediaType.get("application/octet-stream"));
+        client(bandwidth).newCall(request("upload").post(body).build()).execute().close();
+        assertTrue(System.nanoTime() - start >= 400_000_000L);
+    }
+
+    @Test
+    @DisplayName("calls that aren't marked as transfers aren't limited")
+    void testMetadataNotLimited() throws Exception {
+        var bandwidth = new BandwidthInterceptor(1, 1, 1, 1);
+        var start = System.nanoTime();
+        try (var res = client(bandwidth).newCall(request("metadata").build()).execute()) {
+            assertEquals(SIZE, res.body().bytes().length);
+        }
+        assertTrue(System.nanoTime() - start < 400_000_000L);
+    }
+
+    private static Request.Builder request(String method) throws Exception {
+        var invocation = Invocation.of(TestClient.class.getMethod(method), List.of());
+        return new Request.Builder().url("http://localhost/test").tag(Invocation.class, invocation);
+    }
+
+    private static OkHttpClient client(BandwidthInterceptor bandwidth) {
+        return new OkHttpClient.Builder()
+                .addInterceptor(bandwidth)
+                // stands in for the server. Reads the whole request body like the network would
+                .addInterceptor(chain -> {
+                    var requestBody = chain.request().body();
+                    if (requestBody != null) {
+                        requestBody.writeTo(new Buffer());
+                    }
+                    return new Response.Builder()
+                            .request(chain.request())
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(200)
+                            .message("OK")
+                            .body(ResponseBody.create(new byte[SIZE], MediaType.get("application/octet-stream")))
+                            .build();
+                })
+                .build();
+    }
+}
@@ -0,0 +1,107 @@
+package ploiu.http;
+
+import okhttp3.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ploiu.exception.ServerUnavailableException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerInterceptorTests {
+    final List<String> requestedPaths = new ArrayList<>();
+    boolean serverUp = false;
+
+    @Test
+    @DisplayName("the breaker opens after enough failures in a row and then fails fast")
+    void testOpensAfterThreshold() {
+        var breaker = new CircuitBreakerInterceptor(2, 60_000);
+        var client = client(breaker);
+        assertThrows(IOException.class, () -> get(client, "/folders/metadata/1"));
+        assertThrows(IOException.class, () -> get(client, "/folders/metadata/1"));
+        assertEquals(CircuitBreakerInterceptor.State.OPEN, breaker.getState());
+        assertThrows(ServerUnavailableException.class, () -> get(client, "/folders/metadata/1"));
+        // the last request never made it to the server
+        assertEquals(2, requestedPaths.size());
+    }
+
+    @Test
+    @DisplayName("a successful probe of /api/version closes the breaker")
+    void testHalfOpenProbeCloses() throws Exception {
+        var breaker = new CircuitBreakerInterceptor(1, 0);
+        var client = client(breaker);
+        assertThrows(IOException.class, () -> get(client, "/folders/metadata/1"));
+        assertEquals(CircuitBreakerInterceptor.State.OPEN, breaker.getState());
+        serverUp = true;
+        assertEquals(200, get(client, "/folders/metadata/1"));
+        assertEquals(List.of("/folders/metadata/1", "/api/version", "/folders/metadata/1"), requestedPaths);
+        assertEquals(CircuitBreakerInterceptor.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    @DisplayName("a failed probe keeps the breaker open")
+    void testHalfOpenProbeFails() {
+        var breaker = new CircuitBreakerInterceptor(1, 0);
+        var client = client(breaker);
+        assertThrows(IOException.class, () -> get(client, "/folders/metadata/1"));
+        assertThrows(ServerUnavailableException.class, () -> get(client, "/folders/metadata/1"));
+        assertEquals(List.of("/folders/metadata/1", "/api/version"), requestedPaths);
+        assertEquals(CircuitBreakerInterceptor.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    @DisplayName("client errors don't count as the server being down")
+    void testClientErrorsDontTrip() throws Exception {
+        var breaker = new CircuitBreakerInterceptor(1, 60_000);
+        var client = new OkHttpClient.Builder()
+                .addInterceptor(breaker)
+                .addInterceptor(chain -> respond(chain, 404))
+                .build();
+        get(client, "/files/metadata/1");
+        get(client, "/files/metadata/1");
+        assertEquals(CircuitBreakerInterceptor.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    @DisplayName("cancelled calls don't count as the server being down")
+    void testCancelledCallsDontTrip() {
+        var breaker = new CircuitBreakerInterceptor(2, 60_000);
+        var client = new OkHttpClient.Builder()
+                .addInterceptor(breaker)
+                .addInterceptor(chain -> {
+                    chain.call().cancel();
+                    throw new IOException("Canceled");
+                })
+                .build();
+        for (int i = 0; i < 5; i++) {
+            assertThrows(IOException.class, () -> get(client, "/files/preview/1"));
+        }
+        assertEquals(CircuitBreakerInterceptor.State.CLOSED, breaker.getState());
+    }
+
+    private OkHttpClient client(CircuitBreakerInterceptor breaker) {
+        return new OkHttpClient.Builder()
+                .addInterceptor(breaker)
+                .addInterceptor(chain -> {
+                    requestedPaths.add(chain.request().url().encodedPath());
+                    if (!serverUp) {
+                        throw new IOException("connection refused");
+                    }
+                    return respond(chain, 200);
+                })
+                .build();
+    }
+
+    private static int get(OkHttpClient client, String path) throws IOException {
+        try (var res = client.newCall(new Request.Builder().url("http://localhost" + path).build()).execute()) {
+            return res.code();
+        }
+    }
+
+    private static Response respond(Interceptor.Chain chain, int code) {
+        return new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1).code(code).message("").body(ResponseBody.create("{}", null)).build();
+    }
+}
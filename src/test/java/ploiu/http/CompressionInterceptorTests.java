@@ -0,0 +1,123 @@
+package ploiu.http;
+
+import okhttp3.*;
+import okio.Buffer;
+import okio.GzipSink;
+import okio.Okio;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionInterceptorTests {
+    // highly compressible, like folder metadata
+    static final String BODY = "{\"id\":1,\"name\":\"test\"}".repeat(100);
+
+    CompressionInterceptor compression;
+    List<Request> requests;
+    OkHttpClient client;
+
+    @BeforeEach
+    void setup() {
+        compression = new CompressionInterceptor(true, CompressionInterceptor.defaultDecoders());
+        requests = new ArrayList<>();
+        client = client(compression);
+    }
+
+    OkHttpClient client(CompressionInterceptor compression) {
+        return new OkHttpClient.Builder()
+                .addInterceptor(compression)
+                // stands in for the server, gzipping the body if the client asked for it
+                .addInterceptor(chain -> {
+                    requests.add(chain.request());
+                    var builder = new Response.Builder()
+                            .request(chain.request())
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(200)
+                            .message("OK");
+                    var acceptEncoding = chain.request().header("Accept-Encoding");
+                    if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                        var gzipped = gzip(BODY);
+                        return builder.header("Content-Encoding", "gzip")
+                                .header("Content-Length", String.valueOf(gzipped.size()))
+                                .body(ResponseBody.create(gzipped, MediaType.get("application/json"), gzipped.size()))
+                                .build();
+                    }
+                    return builder.body(ResponseBody.create(BODY, MediaType.get("application/json"))).build();
+                })
+                .build();
+    }
+
+    @Test
+    @DisplayName("compressed responses are decompressed and counted")
+    void testGzipDecoded() throws Exception {
+        try (var res = get(new Request.Builder().url("http://localhost/folders/metadata/1"))) {
+            assertEquals(BODY, res.body().string());
+            assertNull(res.header("Content-Encoding"));
+            assertNull(res.header("Content-Length"));
+        }
+        assertEquals("gzip, deflate", requests.get(0).header("Accept-Encoding"));
+        var counts = compression.byteCounts("GET /folders/metadata/1");
+        assertEquals(BODY.length(), counts.decodedBytes());
+        assertTrue(counts.wireBytes() < counts.decodedBytes());
+        assertTrue(counts.savings() > 0.5);
+    }
+
+    @Test
+    @DisplayName("range requests aren't compressed, because the range is of the compressed bytes")
+    void testRangeNotNegotiated() throws Exception {
+        try (var res = get(new Request.Builder().url("http://localhost/files/1").header("Range", "bytes=0-"))) {
+            assertEquals(BODY, res.body().string());
+        }
+        assertEquals("identity", requests.get(0).header("Accept-Encoding"));
+        var counts = compression.byteCounts("GET /files/1");
+        assertEquals(BODY.length(), counts.wireBytes());
+        assertEquals(BODY.length(), counts.decodedBytes());
+    }
+
+    @Test
+    @DisplayName("an Accept-Encoding set by the caller is left alone")
+    void testCallerEncodingRespected() throws Exception {
+        try (var res = get(new Request.Builder().url("http://localhost/files/1").header("Accept-Encoding", "identity"))) {
+            assertEquals(BODY, res.body().string());
+        }
+        assertEquals("identity", requests.get(0).header("Accept-Encoding"));
+    }
+
+    @Test
+    @DisplayName("only identity is accepted when compression is turned off")
+    void testDisabled() throws Exception {
+        compression = new CompressionInterceptor(false, CompressionInterceptor.defaultDecoders());
+        client = client(compression);
+        try (var res = get(new Request.Builder().url("http://localhost/folders/metadata/1"))) {
+            assertEquals(BODY, res.body().string());
+        }
+        assertEquals("identity", requests.get(0).header("Accept-Encoding"));
+    }
+
+    @Test
+    @DisplayName("requests other than GET only accept identity")
+    void testPostNotNegotiated() throws Exception {
+        try (var res = client.newCall(new Request.Builder().url("http://localhost/folders").post(RequestBody.create("{}", MediaType.get("application/json"))).build()).execute()) {
+            assertEquals(BODY, res.body().string());
+        }
+        assertEquals("identity", requests.get(0).header("Accept-Encoding"));
+    }
+
+    private Response get(Request.Builder request) throws IOException {
+        return client.newCall(request.build()).execute();
+    }
+
+    private static Buffer gzip(String text) throws IOException {
+        var buffer = new Buffer();
+        try (var sink = Okio.buffer(new GzipSink(buffer))) {
+            sink.writeUtf8(text);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,111 @@
+package ploiu.http;
+
+import okhttp3.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ploiu.http.LatencyStats.Phase;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+import retrofit2.http.Body;
+import retrofit2.http.GET;
+import retrofit2.http.POST;
+import retrofit2.http.Path;
+
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyStatsTests {
+    interface TestClient {
+        @GET("/folders/metadata/{id}")
+        Call<Map<String, Object>> getFolder(@Path("id") long id);
+
+        @POST("/folders")
+        Call<Map<String, Object>> createFolder(@Body Map<String, Object> body);
+    }
+
+    LatencyStats stats;
+    TestClient client;
+    OkHttpClient httpClient;
+
+    @BeforeEach
+    void setup() {
+        stats = new LatencyStats();
+        httpClient = new OkHttpClient.Builder()
+                .eventListenerFactory(stats)
+                // stands in for the server so nothing goes over the network
+                .addInterceptor(chain -> new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create("{\"id\":1}", MediaType.get("application/json")))
+                        .build())
+                .build();
+        client = new Retrofit.Builder()
+                .baseUrl("http://localhost")
+                .client(httpClient)
+                .addConverterFactory(new LatencyConverterFactory(JacksonConverterFactory.create(), stats, List.of(TestClient.class)))
+                .build()
+                .create(TestClient.class);
+    }
+
+    @Test
+    @DisplayName("calls are recorded under the retrofit method that made them")
+    void testKeyedByRetrofitMethod() throws Exception {
+        client.getFolder(1).execute();
+        client.getFolder(2).execute();
+        assertEquals(2, stats.summary("TestClient.getFolder", Phase.TOTAL).count());
+        assertEquals(2, stats.summary("TestClient.getFolder", Phase.DECODE).count());
+        assertEquals(0, stats.summary("TestClient.getFolder", Phase.ENCODE).count());
+    }
+
+    @Test
+    @DisplayName("request bodies are timed when they're encoded")
+    void testEncodeRecorded() throws Exception {
+        client.createFolder(Map.of("name", "test")).execute();
+        assertEquals(1, stats.summary("TestClient.createFolder", Phase.ENCODE).count());
+        assertEquals(1, stats.summary("TestClient.createFolder", Phase.DECODE).count());
+    }
+
+    @Test
+    @DisplayName("requests that didn't come from retrofit are keyed by method and path")
+    void testNonRetrofitRequest() throws Exception {
+        httpClient.newCall(new Request.Builder().url("http://localhost/api/version").build()).execute().close();
+        assertEquals(Set.of(Phase.TOTAL), stats.snapshot().get("GET /api/version").keySet());
+    }
+
+    @Test
+    @DisplayName("the report is written to a file")
+    void testDumpTo(@TempDir java.nio.file.Path dir) throws Exception {
+        client.getFolder(1).execute();
+        var file = dir.resolve("reports/latency.txt");
+        stats.dumpTo(file);
+        var report = Files.readString(file);
+        assertTrue(report.contains("TestClient.getFolder"));
+        assertTrue(report.contains("DECODE"));
+    }
+
+    @Test
+    @DisplayName("percentiles come from the right bucket")
+    void testPercentiles() {
+        var histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.recordNanos(i * 1_000_000L);
+        }
+        var summary = histogram.summary();
+        assertEquals(100, summary.count());
+        assertEquals(100_000, summary.maxMicros());
+        // buckets are at most 12.5% wide
+        assertEquals(50_000, summary.p50Micros(), 50_000 * 0.125);
+        assertEquals(90_000, summary.p90Micros(), 90_000 * 0.125);
+        assertEquals(99_000, summary.p99Micros(), 99_000 * 0.125);
+        assertTrue(summary.p50Micros() <= summary.p90Micros() && summary.p90Micros() <= summary.p99Micros());
+    }
+}
@@ -0,0 +1,118 @@
+package ploiu.http;
+
+import okhttp3.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataCacheInterceptorTests {
+    static final MediaType JSON = MediaType.get("application/json");
+
+    MetadataCacheInterceptor cache;
+    // what the fake server will respond with, in order
+    Queue<Response.Builder> responses;
+    List<Request> requests;
+    OkHttpClient client;
+
+    @BeforeEach
+    void setup() {
+        cache = new MetadataCacheInterceptor(1024);
+        responses = new LinkedList<>();
+        requests = new ArrayList<>();
+        client = new OkHttpClient.Builder()
+                .addInterceptor(cache)
+                // stands in for the server so nothing goes over the network
+                .addInterceptor(chain -> {
+                    requests.add(chain.request());
+                    return responses.remove()
+                            .request(chain.request())
+                            .protocol(Protocol.HTTP_1_1)
+                            .build();
+                })
+                .build();
+    }
+
+    @Test
+    @DisplayName("a 304 is turned into the cached body")
+    void testNotModifiedServedFromCache() throws Exception {
+        responses.add(ok("{\"id\":1}").header("ETag", "\"v1\""));
+        responses.add(new Response.Builder().code(304).message("Not Modified"));
+        assertEquals("{\"id\":1}", get("/folders/metadata/1"));
+        assertEquals("{\"id\":1}", get("/folders/metadata/1"));
+        assertNull(requests.get(0).header("If-None-Match"));
+        assertEquals("\"v1\"", requests.get(1).header("If-None-Match"));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.revalidations());
+    }
+
+    @Test
+    @DisplayName("Last-Modified is sent back as If-Modified-Since")
+    void testLastModifiedRevalidation() throws Exception {
+        responses.add(ok("{}").header("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT"));
+        responses.add(new Response.Builder().code(304).message("Not Modified"));
+        get("/files/metadata/2");
+        get("/files/metadata/2");
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", requests.get(1).header("If-Modified-Since"));
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    @DisplayName("identical bodies without validators are detected by fingerprint")
+    void testFingerprintFallback() throws Exception {
+        responses.add(ok("{\"id\":3}"));
+        responses.add(ok("{\"id\":3}"));
+        responses.add(ok("{\"id\":4}"));
+        get("/folders/metadata/3");
+        get("/folders/metadata/3");
+        assertEquals("{\"id\":4}", get("/folders/metadata/3"));
+        assertNull(requests.get(1).header("If-None-Match"));
+        assertEquals(1, cache.unchanged());
+        assertEquals(0, cache.hits());
+    }
+
+    @Test
+    @DisplayName("searches and mutations are not cached")
+    void testOnlyMetadataLookupsAreCached() throws Exception {
+        responses.add(ok("[]").header("ETag", "\"v1\""));
+        responses.add(ok("[]").header("ETag", "\"v1\""));
+        get("/files/metadata?search=test");
+        get("/files/metadata?search=test");
+        assertNull(requests.get(1).header("If-None-Match"));
+        assertEquals(0, cache.misses());
+        assertEquals(0, cache.sizeInBytes());
+    }
+
+    @Test
+    @DisplayName("least recently used entries are evicted once the byte budget is exceeded")
+    void testEviction() throws Exception {
+        var big = "x".repeat(600);
+        responses.add(ok(big).header("ETag", "\"a\""));
+        responses.add(ok(big).header("ETag", "\"b\""));
+        responses.add(ok(big).header("ETag", "\"a\""));
+        get("/folders/metadata/1");
+        get("/folders/metadata/2");
+        get("/folders/metadata/1");
+        // folder 1 was evicted to make room for folder 2, so there was nothing to revalidate with
+        assertNull(requests.get(2).header("If-None-Match"));
+        assertEquals(3, cache.misses());
+        assertTrue(cache.sizeInBytes() <= 1024);
+    }
+
+    private String get(String path) throws Exception {
+        try (var res = client.newCall(new Request.Builder().url("http://localhost" + path).build()).execute()) {
+            return res.body().string();
+        }
+    }
+
+    private static Response.Builder ok(String body) {
+        return new Response.Builder().code(200).message("OK").body(ResponseBody.create(body, JSON));
+    }
+}
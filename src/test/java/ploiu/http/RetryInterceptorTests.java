@@ -0,0 +1,105 @@
+package ploiu.http;
+
+import okhttp3.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import retrofit2.Invocation;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryInterceptorTests {
+    final AtomicInteger attempts = new AtomicInteger(0);
+
+    interface TestClient {
+        @NoRetry
+        void uploadChunk();
+    }
+
+    @Test
+    @DisplayName("reads are retried after a network failure")
+    void testGetRetriedOnIOException() throws Exception {
+        var client = client(3, chain -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IOException("connection reset");
+            }
+            return ok(chain);
+        });
+        try (var res = client.newCall(new Request.Builder().url("http://localhost/folders/metadata/1").build()).execute()) {
+            assertEquals(200, res.code());
+        }
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    @DisplayName("the last failure is thrown once attempts run out")
+    void testGivesUp() {
+        var client = client(2, chain -> {
+            attempts.incrementAndGet();
+            throw new IOException("connection reset");
+        });
+        assertThrows(IOException.class, () -> client.newCall(new Request.Builder().url("http://localhost/api/disk").build()).execute());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    @DisplayName("gateway errors are retried")
+    void testRetriedOnGatewayError() throws Exception {
+        var client = client(3, chain -> attempts.incrementAndGet() == 1
+                ? new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1).code(503).message("Unavailable").body(ResponseBody.create("", null)).build()
+                : ok(chain));
+        try (var res = client.newCall(new Request.Builder().url("http://localhost/api/disk").build()).execute()) {
+            assertEquals(200, res.code());
+        }
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    @DisplayName("creates are never retried")
+    void testPostNotRetried() {
+        var client = client(3, chain -> {
+            attempts.incrementAndGet();
+            throw new IOException("connection reset");
+        });
+        var req = new Request.Builder().url("http://localhost/folders").post(RequestBody.create("{}", MediaType.get("application/json"))).build();
+        assertThrows(IOException.class, () -> client.newCall(req).execute());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    @DisplayName("methods marked as not retried aren't, even if they're safe to repeat")
+    void testNoRetryNotRetried() throws Exception {
+        var client = client(3, chain -> {
+            attempts.incrementAndGet();
+            throw new IOException("connection reset");
+        });
+        var invocation = Invocation.of(TestClient.class.getMethod("uploadChunk"), List.of());
+        var req = new Request.Builder().url("http://localhost/files/uploads/1").put(RequestBody.create("data", null)).tag(Invocation.class, invocation).build();
+        assertThrows(IOException.class, () -> client.newCall(req).execute());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    @DisplayName("backoff never exceeds the max delay")
+    void testBackoffIsCapped() {
+        var interceptor = new RetryInterceptor(10, 100, 1000);
+        for (int attempt = 1; attempt < 10; attempt++) {
+            var delay = interceptor.backoffMillis(attempt);
+            assertTrue(delay >= 0 && delay <= Math.min(1000, 100L << (attempt - 1)));
+        }
+    }
+
+    private static OkHttpClient client(int maxAttempts, Interceptor server) {
+        return new OkHttpClient.Builder()
+                .addInterceptor(new RetryInterceptor(maxAttempts, 1, 2))
+                .addInterceptor(server)
+                .build();
+    }
+
+    private static Response ok(Interceptor.Chain chain) {
+        return new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1).code(200).message("OK").body(ResponseBody.create("{}", null)).build();
+    }
+}
@@ -7,17 +7,24 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import ploiu.TestHelper;
+import ploiu.config.UiConfig;
 import ploiu.model.FileApi;
 import ploiu.model.FolderApi;
 import ploiu.model.FolderRequest;
+import ploiu.transfer.ContentIndex;
+import ploiu.transfer.TransferProgress;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Properties;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -32,6 +39,10 @@ class DragNDropServiceTests {
     FolderService folderService;
     @Mock
     FileService fileService;
+    @Mock
+    ContentIndex contentIndex;
+    @Spy
+    UiConfig uiConfig = new UiConfig(new Properties());
 
     @InjectMocks
     DragNDropService service;
@@ -53,7 +64,7 @@ class DragNDropServiceTests {
     void testUploadFoldersSingleFolder() throws IOException {
         var dir = helper.createDir("top");
         when(folderService.createFolder(any())).thenReturn(Single.just(new FolderApi(1, 0, "", null, List.of(), List.of(), List.of())));
-        service.uploadFolders(List.of(dir), rootApi).toList().blockingGet();
+        service.uploadFolders(List.of(dir), rootApi, new TransferProgress(-1)).toList().blockingGet();
         verify(folderService).createFolder(eq(new FolderRequest(Optional.empty(), 0, "top", List.of())));
         verifyNoMoreInteractions(folderService);
         verifyNoInteractions(fileService);
@@ -65,7 +76,7 @@ class DragNDropServiceTests {
         var second = helper.createDir("middle");
         var third = helper.createDir("bottom");
         when(folderService.createFolder(any())).thenReturn(Single.just(new FolderApi(1, 0, "", null, List.of(), List.of(), List.of())));
-        service.uploadFolders(List.of(first, second, third), rootApi).toList().blockingGet();
+        service.uploadFolders(List.of(first, second, third), rootApi, new TransferProgress(-1)).toList().blockingGet();
         verify(folderService, times(3)).createFolder(argThat(arg -> arg.id().isEmpty() && arg.parentId() == 0));
         verifyNoMoreInteractions(folderService);
         verifyNoInteractions(fileService);
@@ -76,7 +87,7 @@ class DragNDropServiceTests {
         var top = helper.createDir("top");
         helper.createDir("top/middle/bottom");
         when(folderService.createFolder(any())).thenReturn(Single.just(new FolderApi(1, 0, "top", null, List.of(), List.of(), List.of()))).thenReturn(Single.just(new FolderApi(2, 1, "middle", null, List.of(), List.of(), List.of()))).thenReturn(Single.just(new FolderApi(3, 2, "bottom", null, List.of(), List.of(), List.of())));
-        service.uploadFolders(List.of(top), rootApi).toList().blockingGet();
+        service.uploadFolders(List.of(top), rootApi, new TransferProgress(-1)).toList().blockingGet();
         verify(folderService).createFolder(argThat(it -> it.parentId() == 0 && it.name().equals("top")));
         verify(folderService).createFolder(argThat(it -> it.parentId() == 1 && it.name().equals("middle")));
         verify(folderService).createFolder(argThat(it -> it.parentId() == 2 && it.name().equals("bottom")));
@@ -91,12 +102,12 @@ class DragNDropServiceTests {
         helper.createFile("top/second.txt");
         helper.createFile("top/third.txt");
         when(folderService.createFolder(any())).thenReturn(Single.just(new FolderApi(1, 0, "", null, List.of(), List.of(), List.of())));
-        when(fileService.createFile(any())).thenReturn(Single.just(new FileApi(0, "", List.of(), null, null, null, null)));
-        service.uploadFolders(List.of(dir), rootApi).toList().blockingGet();
+        when(fileService.createFile(any(), any())).thenReturn(Single.just(new FileApi(0, "", List.of(), null, null, null, null)));
+        service.uploadFolders(List.of(dir), rootApi, new TransferProgress(-1)).toList().blockingGet();
         verify(folderService).createFolder(any());
-        verify(fileService).createFile(argThat(it -> it.file().getName().equals("first.txt") && it.folderId() == 1));
-        verify(fileService).createFile(argThat(it -> it.file().getName().equals("second.txt") && it.folderId() == 1));
-        verify(fileService).createFile(argThat(it -> it.file().getName().equals("third.txt") && it.folderId() == 1));
+        verify(fileService).createFile(argThat(it -> it.file().getName().equals("first.txt") && it.folderId() == 1), any());
+        verify(fileService).createFile(argThat(it -> it.file().getName().equals("second.txt") && it.folderId() == 1), any());
+        verify(fileService).createFile(argThat(it -> it.file().getName().equals("third.txt") && it.folderId() == 1), any());
         verifyNoMoreInteractions(fileService);
         verifyNoMoreInteractions(folderService);
     }
@@ -142,9 +153,9 @@ class DragNDropServiceTests {
         when(folderService.createFolder(eq(new FolderRequest(Optional.empty(), 1, "middle2", List.of())))).thenReturn(Single.just(new FolderApi(4, 1, "middle2", null, List.of(), List.of(), List.of())));
         when(folderService.createFolder(eq(new FolderRequest(Optional.empty(), 2, "bottom", List.of())))).thenReturn(Single.just(new FolderApi(3, 2, "bottom", null, List.of(), List.of(), List.of())));
 
-        when(fileService.createFile(any())).thenReturn(Single.just(new FileApi(0, "", List.of(), null, null, null, null)));
+        when(fileService.createFile(any(), any())).thenReturn(Single.just(new FileApi(0, "", List.of(), null, null, null, null)));
 
-        service.uploadFolders(List.of(top), rootApi).toList().blockingGet();
+        service.uploadFolders(List.of(top), rootApi, new TransferProgress(-1)).toList().blockingGet();
 
         /// FOLDERS
         verify(folderService).createFolder(argThat(it -> it.parentId() == 0 && "top".equals(it.name())));
@@ -154,17 +165,84 @@ class DragNDropServiceTests {
         verifyNoMoreInteractions(folderService);
         /// FILES
         // top
-        verify(fileService).createFile(argThat(it -> it.folderId() == 1 && "topFirst.txt".equals(it.file().getName())));
+        verify(fileService).createFile(argThat(it -> it.folderId() == 1 && "topFirst.txt".equals(it.file().getName())), any());
         // middle
-        verify(fileService).createFile(argThat(it -> it.folderId() == 2 && "middleFirst.txt".equals(it.file().getName())));
-        verify(fileService).createFile(argThat(it -> it.folderId() == 2 && "middleSecond.txt".equals(it.file().getName())));
-        verify(fileService).createFile(argThat(it -> it.folderId() == 2 && "middleThird.txt".equals(it.file().getName())));
+        verify(fileService).createFile(argThat(it -> it.folderId() == 2 && "middleFirst.txt".equals(it.file().getName())), any());
+        verify(fileService).createFile(argThat(it -> it.folderId() == 2 && "middleSecond.txt".equals(it.file().getName())), any());
+        verify(fileService).createFile(argThat(it -> it.folderId() == 2 && "middleThird.txt".equals(it.file().getName())), any());
         // middle 2
-        verify(fileService).createFile(argThat(it -> it.folderId() == 4 && "middle2First.txt".equals(it.file().getName())));
-        verify(fileService).createFile(argThat(it -> it.folderId() == 4 && "middle2Second.txt".equals(it.file().getName())));
+        verify(fileService).createFile(argThat(it -> it.folderId() == 4 && "middle2First.txt".equals(it.file().getName())), any());
+        verify(fileService).createFile(argThat(it -> it.folderId() == 4 && "middle2Second.txt".equals(it.file().getName())), any());
         // bottom
-        verify(fileService).createFile(argThat(it -> it.folderId() == 3 && "bottomFirst.txt".equals(it.file().getName())));
-        verify(fileService).createFile(argThat(it -> it.folderId() == 3 && "bottomSecond.txt".equals(it.file().getName())));
+        verify(fileService).createFile(argThat(it -> it.folderId() == 3 && "bottomFirst.txt".equals(it.file().getName())), any());
+        verify(fileService).createFile(argThat(it -> it.folderId() == 3 && "bottomSecond.txt".equals(it.file().getName())), any());
         verifyNoMoreInteractions(fileService);
     }
+
+    @Test
+    void testUploadFileSkipsAlreadyUploadedFile() throws IOException {
+        var file = helper.createFile("first.txt");
+        var existing = new FileApi(5, "first.txt", List.of(), 0L, 0L, null, null);
+        var target = new FolderApi(0, 0, "root", null, List.of(), List.of(existing), List.of());
+        when(contentIndex.find(any())).thenReturn(OptionalLong.of(5));
+        var progress = new TransferProgress(-1);
+        var result = service.uploadFile(file, target, progress).blockingGet();
+        assertEquals(existing, result);
+        verifyNoInteractions(fileService);
+    }
+
+    @Test
+    void testUploadFileUploadsWhenContentsDiffer() throws IOException {
+        var file = helper.createFile("first.txt");
+        var existing = new FileApi(5, "first.txt", List.of(), 0L, 0L, null, null);
+        var target = new FolderApi(0, 0, "root", null, List.of(), List.of(existing), List.of());
+        // the index knows these contents as a different file, so the one in the folder isn't the same
+        when(contentIndex.find(any())).thenReturn(OptionalLong.of(6));
+        when(fileService.createFile(any(), any())).thenReturn(Single.just(new FileApi(7, "first.txt", List.of(), 0L, 0L, null, null)));
+        service.uploadFile(file, target, new TransferProgress(-1)).blockingGet();
+        verify(fileService).createFile(argThat(it -> it.file().getName().equals("first.txt")), any());
+        verify(contentIndex).remember(file.toPath(), 7);
+    }
+
+    @Test
+    void testUploadFoldersCreatesFolderWithSameNameAsExisting() throws IOException {
+        var top = helper.createDir("top");
+        var existingTop = new FolderApi(1, 0, "top", null, List.of(), List.of(), List.of());
+        var target = new FolderApi(0, 0, "root", null, List.of(existingTop), List.of(), List.of());
+        when(folderService.createFolder(any())).thenReturn(Single.just(new FolderApi(2, 0, "top", null, List.of(), List.of(), List.of())));
+        service.uploadFolders(List.of(top), target, new TransferProgress(-1)).toList().blockingGet();
+        verify(folderService).createFolder(eq(new FolderRequest(Optional.empty(), 0, "top", List.of())));
+        verifyNoMoreInteractions(folderService);
+    }
+
+    @Test
+    void testUploadFoldersMergesIntoExistingFolderWhenEnabled() throws IOException {
+        var top = helper.createDir("top");
+        var existingTop = new FolderApi(1, 0, "top", null, List.of(), List.of(), List.of());
+        var target = new FolderApi(0, 0, "root", null, List.of(existingTop), List.of(), List.of());
+        var props = new Properties();
+        props.setProperty("ui.drop.merge-folders", "true");
+        var merging = new DragNDropService(folderService, fileService, contentIndex, new UiConfig(props));
+        when(folderService.getFolder(1)).thenReturn(Single.just(existingTop));
+        merging.uploadFolders(List.of(top), target, new TransferProgress(-1)).toList().blockingGet();
+        verify(folderService).getFolder(1);
+        verifyNoMoreInteractions(folderService);
+    }
+
+    @Test
+    void testUploadFoldersSkipsFilesAlreadyInMergedFolder() throws IOException {
+        var top = helper.createDir("top");
+        var file = helper.createFile("top/test.txt");
+        var existingFile = new FileApi(5, "test.txt", List.of(), 1L, file.length(), null, null);
+        var existingTop = new FolderApi(1, 0, "top", null, List.of(), List.of(existingFile), List.of());
+        var target = new FolderApi(0, 0, "root", null, List.of(existingTop), List.of(), List.of());
+        var props = new Properties();
+        props.setProperty("ui.drop.merge-folders", "true");
+        var merging = new DragNDropService(folderService, fileService, contentIndex, new UiConfig(props));
+        when(folderService.getFolder(1)).thenReturn(Single.just(existingTop));
+        when(contentIndex.find(any())).thenReturn(OptionalLong.of(5));
+        merging.uploadFolders(List.of(top), target, new TransferProgress(-1)).toList().blockingGet();
+        verify(folderService, never()).createFolder(any());
+        verifyNoInteractions(fileService);
+    }
 }
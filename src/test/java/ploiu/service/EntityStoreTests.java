@@ -0,0 +1,185 @@
+package ploiu.service;
+
+import io.reactivex.rxjava3.observers.TestObserver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ploiu.model.FileApi;
+import ploiu.model.FolderApi;
+import ploiu.model.TagApi;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityStoreTests {
+    EntityStore store;
+
+    @BeforeEach
+    void setup() {
+        store = new EntityStore();
+    }
+
+    @Test
+    @DisplayName("pulling a folder stores it, what's in it, and their tags")
+    void testPutFolder() {
+        store.putFolder(folder(1, 0, List.of(folder(2, 1, List.of(), List.of())), List.of(file(10, 1, "a"), file(11, 1, "b"))));
+
+        var stored = store.getFolder(1);
+        assertNotNull(stored);
+        assertEquals(List.of(2L), stored.folders().stream().map(FolderApi::id).toList());
+        assertEquals(List.of("a", "b"), stored.files().stream().map(FileApi::name).toList());
+        assertEquals("a", store.getFile(10).name());
+        assertEquals("tag", store.getTag(5).title());
+        // 2 was only seen inside of 1, so what's in it isn't known
+        assertNull(store.getFolder(2));
+    }
+
+    @Test
+    @DisplayName("a file update without the server-only fields keeps the stored ones")
+    void testPutFileKeepsServerFields() {
+        store.putFile(file(10, 1, "a"));
+
+        var stored = store.putFile(new FileApi(10, "renamed", List.of(), null, null, null, null));
+
+        assertEquals("renamed", stored.name());
+        assertEquals(1L, stored.folderId());
+        assertEquals(100L, stored.size());
+        assertEquals("2024-01-01", stored.dateCreated());
+    }
+
+    @Test
+    @DisplayName("changing a file lets its watchers and its folder's watchers know")
+    void testWatchFile() {
+        store.putFolder(folder(1, 0, List.of(), List.of(file(10, 1, "a"))));
+        TestObserver<FileApi> fileObserver = store.watchFile(10).test();
+        TestObserver<FolderApi> folderObserver = store.watchFolder(1).test();
+
+        store.putFile(file(10, 1, "renamed"));
+
+        fileObserver.assertValueCount(2);
+        assertEquals("renamed", fileObserver.values().get(1).name());
+        folderObserver.assertValueCount(2);
+        assertEquals("renamed", folderObserver.values().get(1).files().iterator().next().name());
+    }
+
+    @Test
+    @DisplayName("putting the same file again doesn't notify anything")
+    void testNoChangeNoNotification() {
+        store.putFile(file(10, 1, "a"));
+        TestObserver<FileApi> observer = store.watchFile(10).test();
+
+        store.putFile(file(10, 1, "a"));
+
+        observer.assertValueCount(1);
+    }
+
+    @Test
+    @DisplayName("moving a file takes it out of the old folder and puts it in the new one")
+    void testMoveFile() {
+        store.putFolder(folder(1, 0, List.of(), List.of(file(10, 1, "a"))));
+        store.putFolder(folder(2, 0, List.of(), List.of()));
+        TestObserver<FolderApi> oldFolder = store.watchFolder(1).test();
+        TestObserver<FolderApi> newFolder = store.watchFolder(2).test();
+
+        store.putFile(file(10, 2, "a"));
+
+        assertTrue(store.getFolder(1).files().isEmpty());
+        assertEquals(List.of(10L), store.getFolder(2).files().stream().map(FileApi::id).toList());
+        assertTrue(oldFolder.values().get(1).files().isEmpty());
+        assertEquals(1, newFolder.values().get(1).files().size());
+    }
+
+    @Test
+    @DisplayName("pulling a folder again forgets the files that aren't in it anymore, and completes anything watching them")
+    void testPutFolderDropsMissing() {
+        store.putFolder(folder(1, 0, List.of(), List.of(file(10, 1, "a"), file(11, 1, "b"))));
+        TestObserver<FileApi> goneObserver = store.watchFile(10).test();
+
+        store.putFolder(folder(1, 0, List.of(), List.of(file(11, 1, "b"))));
+
+        assertNull(store.getFile(10));
+        assertEquals(1, store.getFolder(1).files().size());
+        goneObserver.assertComplete();
+    }
+
+    @Test
+    @DisplayName("updating a folder's details keeps what's in it")
+    void testPutFolderDetails() {
+        store.putFolder(folder(1, 0, List.of(), List.of(file(10, 1, "a"))));
+
+        store.putFolderDetails(new FolderApi(1, 0, "renamed", null, List.of(), List.of(), List.of()));
+
+        var stored = store.getFolder(1);
+        assertEquals("renamed", stored.name());
+        assertEquals(1, stored.files().size());
+    }
+
+    @Test
+    @DisplayName("removing a folder removes what's in it, and completes anything watching them")
+    void testRemoveFolder() {
+        store.putFolder(folder(0, -1, List.of(folder(1, 0, List.of(), List.of())), List.of()));
+        store.putFolder(folder(1, 0, List.of(), List.of(file(10, 1, "a"))));
+        TestObserver<FileApi> fileObserver = store.watchFile(10).test();
+        TestObserver<FolderApi> rootObserver = store.watchFolder(0).test();
+
+        store.removeFolder(1);
+
+        assertNull(store.getFile(10));
+        assertNull(store.getFolder(1));
+        fileObserver.assertComplete();
+        assertTrue(rootObserver.values().get(1).folders().isEmpty());
+    }
+
+    @Test
+    @DisplayName("reverting a file puts the old one back, unless it changed again since")
+    void testRevertFile() {
+        var original = store.putFile(file(10, 1, "a"));
+        var optimistic = store.putFile(file(10, 1, "renamed"));
+        store.putFile(file(10, 1, "renamed again"));
+
+        store.revertFile(optimistic, original);
+        assertEquals("renamed again", store.getFile(10).name());
+
+        var newer = store.getFile(10);
+        store.revertFile(newer, original);
+        assertEquals("a", store.getFile(10).name());
+    }
+
+    @Test
+    @DisplayName("reverting a file that wasn't stored before removes it")
+    void testRevertFileWithoutPrevious() {
+        var optimistic = store.putFile(file(10, 1, "a"));
+
+        store.revertFile(optimistic, null);
+
+        assertNull(store.getFile(10));
+    }
+
+    @Test
+    @DisplayName("a watcher that subscribes before anything is stored gets the value once it is")
+    void testWatchBeforeStored() {
+        TestObserver<FileApi> observer = store.watchFile(10).test();
+        observer.assertNoValues();
+
+        store.putFile(file(10, 1, "a"));
+
+        observer.assertValueCount(1);
+    }
+
+    @Test
+    @DisplayName("the root folder saying it's its own parent doesn't put it inside of itself")
+    void testRootOwnParent() {
+        store.putFolder(folder(0, 0, List.of(folder(1, 0, List.of(), List.of())), List.of()));
+
+        assertEquals(List.of(1L), store.getFolder(0).folders().stream().map(FolderApi::id).toList());
+    }
+
+    private static FileApi file(long id, long folderId, String name) {
+        return new FileApi(id, name, List.of(new TagApi(5L, "tag", null)), folderId, 100L, "2024-01-01", "text");
+    }
+
+    private static FolderApi folder(long id, long parentId, List<FolderApi> folders, List<FileApi> files) {
+        return new FolderApi(id, parentId, "folder" + id, null, folders, files, List.of());
+    }
+}
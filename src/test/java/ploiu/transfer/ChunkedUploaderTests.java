@@ -0,0 +1,267 @@
+package ploiu.transfer;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ploiu.client.FileClient;
+import ploiu.model.StartUploadRequest;
+import ploiu.model.UploadSession;
+import ploiu.util.JsonUtils;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava3.RxJava3CallAdapterFactory;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedUploaderTests {
+    static final int SIZE = 1000;
+    static final byte[] CONTENT = new byte[SIZE];
+    static final MediaType JSON = MediaType.get("application/json");
+
+    static {
+        new Random(42).nextBytes(CONTENT);
+    }
+
+    @TempDir
+    Path dir;
+    Path file;
+    StandInServer server;
+    FileClient client;
+
+    @BeforeEach
+    void setup() throws Exception {
+        file = dir.resolve("test.bin");
+        Files.write(file, CONTENT);
+        server = new StandInServer();
+        client = new Retrofit.Builder()
+                .baseUrl("http://localhost/")
+                .addConverterFactory(JacksonConverterFactory.create(JsonUtils.MAPPER))
+                .addCallAdapterFactory(RxJava3CallAdapterFactory.createAsync())
+                .client(new OkHttpClient.Builder().addInterceptor(server).build())
+                .build()
+                .create(FileClient.class);
+    }
+
+    @Test
+    @DisplayName("the file is sent in chunks and put back together on the server")
+    void testUpload() {
+        var progress = new TransferProgress(SIZE);
+        var uploaded = uploader().upload(file.toFile(), 0, "test", "bin", progress).blockingGet();
+        assertEquals("test.bin", uploaded.name());
+        assertArrayEquals(CONTENT, server.completed.get(0));
+        assertEquals(List.of(0L, 300L, 600L, 900L), server.offsets);
+        assertEquals(SIZE, progress.getTransferred());
+        assertTrue(isEmpty(dir.resolve("state")));
+    }
+
+    @Test
+    @DisplayName("a dropped chunk picks up from what the server actually kept")
+    void testDroppedChunkResumes() {
+        // the server keeps the first 120 bytes of the chunk at 300, then the connection drops
+        server.dropAt(300, 120);
+        var progress = new TransferProgress(SIZE);
+        uploader().upload(file.toFile(), 0, "test", "bin", progress).blockingGet();
+        assertArrayEquals(CONTENT, server.completed.get(0));
+        assertEquals(List.of(0L, 300L, 420L, 720L), server.offsets);
+        assertEquals(SIZE, progress.getTransferred());
+    }
+
+    @Test
+    @DisplayName("a server error partway through a chunk picks up from what the server actually kept")
+    void testServerErrorResyncs() {
+        server.respondAt(300, 120, 500);
+        var progress = new TransferProgress(SIZE);
+        uploader().upload(file.toFile(), 0, "test", "bin", progress).blockingGet();
+        assertArrayEquals(CONTENT, server.completed.get(0));
+        assertEquals(List.of(0L, 300L, 420L, 720L), server.offsets);
+        assertEquals(SIZE, progress.getTransferred());
+    }
+
+    @Test
+    @DisplayName("a chunk rejected with a conflict is sent again from the server's offset")
+    void testConflictResyncs() {
+        server.respondAt(300, 0, 409);
+        var progress = new TransferProgress(SIZE);
+        uploader().upload(file.toFile(), 0, "test", "bin", progress).blockingGet();
+        assertArrayEquals(CONTENT, server.completed.get(0));
+        assertEquals(List.of(0L, 300L, 300L, 600L, 900L), server.offsets);
+        assertEquals(SIZE, progress.getTransferred());
+    }
+
+    @Test
+    @DisplayName("an upload interrupted by the app closing is continued by the next upload of the same file")
+    void testResumesAcrossRuns() {
+        server.dropAt(600, 0);
+        server.failGetUpload = true;
+        assertThrows(RuntimeException.class, () -> uploader().upload(file.toFile(), 0, "test", "bin", new TransferProgress(SIZE)).blockingGet());
+        assertFalse(isEmpty(dir.resolve("state")));
+        server.failGetUpload = false;
+        server.offsets.clear();
+        var progress = new TransferProgress(SIZE);
+        uploader().upload(file.toFile(), 0, "test", "bin", progress).blockingGet();
+        assertArrayEquals(CONTENT, server.completed.get(0));
+        assertEquals(List.of(600L, 900L), server.offsets);
+        assertEquals(1, server.started.get());
+        assertEquals(SIZE, progress.getTransferred());
+    }
+
+    @Test
+    @DisplayName("a changed file starts a new upload instead of continuing the old one")
+    void testChangedFileStartsOver() throws Exception {
+        server.dropAt(600, 0);
+        server.failGetUpload = true;
+        assertThrows(RuntimeException.class, () -> uploader().upload(file.toFile(), 0, "test", "bin", new TransferProgress(SIZE)).blockingGet());
+        server.failGetUpload = false;
+        var changed = CONTENT.clone();
+        changed[0]++;
+        Files.write(file, changed);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+        uploader().upload(file.toFile(), 0, "test", "bin", new TransferProgress(SIZE)).blockingGet();
+        assertArrayEquals(changed, server.completed.get(0));
+        assertEquals(2, server.started.get());
+    }
+
+    private ChunkedUploader uploader() {
+        return new ChunkedUploader(client, dir.resolve("state"), 300);
+    }
+
+    private static boolean isEmpty(Path directory) {
+        try (var files = Files.list(directory)) {
+            return files.findAny().isEmpty();
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * just enough of the server's chunked upload endpoints to upload against, kept in memory
+     */
+    static final class StandInServer implements Interceptor {
+        final Map<String, ByteArrayOutputStream> sessions = new ConcurrentHashMap<>();
+        final Map<String, StartUploadRequest> requests = new ConcurrentHashMap<>();
+        final List<byte[]> completed = new CopyOnWriteArrayList<>();
+        // the Upload-Offset of every chunk received
+        final List<Long> offsets = new CopyOnWriteArrayList<>();
+        final AtomicInteger started = new AtomicInteger();
+        volatile long dropOffset = -1;
+        volatile int dropKeeping;
+        // 0 drops the connection instead of responding
+        volatile int dropStatus;
+        volatile boolean failGetUpload;
+
+        /**
+         * the next chunk starting at {@code offset} only gets {@code keep} bytes stored before its connection drops
+         */
+        void dropAt(long offset, int keep) {
+            respondAt(offset, keep, 0);
+        }
+
+        /**
+         * the next chunk starting at {@code offset} only gets {@code keep} bytes stored before the server responds with {@code status}
+         */
+        void respondAt(long offset, int keep, int status) {
+            dropOffset = offset;
+            dropKeeping = keep;
+            dropStatus = status;
+        }
+
+        @NotNull
+        @Override
+        public Response intercept(@NotNull Chain chain) throws IOException {
+            var request = chain.request();
+            var path = request.url().encodedPath();
+            var method = request.method();
+            if (method.equals("POST") && path.equals("/files/uploads")) {
+                var body = JsonUtils.MAPPER.readValue(readBody(request), StartUploadRequest.class);
+                var id = "upload-" + started.incrementAndGet();
+                sessions.put(id, new ByteArrayOutputStream());
+                requests.put(id, body);
+                return json(request, session(id));
+            }
+            if (method.equals("POST") && path.endsWith("/complete")) {
+                var id = path.split("/")[3];
+                var data = sessions.remove(id).toByteArray();
+                var start = requests.remove(id);
+                if (data.length != start.size()) {
+                    return response(request, 409, "{}");
+                }
+                completed.add(data);
+                return json(request, "{\"id\":1,\"name\":\"" + start.name() + "." + start.extension() + "\",\"tags\":[],\"folderId\":" + start.folderId() + ",\"size\":" + data.length + "}");
+            }
+            var id = path.substring("/files/uploads/".length());
+            if (!sessions.containsKey(id)) {
+                return response(request, 404, "{}");
+            }
+            if (method.equals("GET")) {
+                if (failGetUpload) {
+                    throw new IOException("server went away");
+                }
+                return json(request, session(id));
+            }
+            var offset = Long.parseLong(request.header("Upload-Offset"));
+            offsets.add(offset);
+            var stored = sessions.get(id);
+            if (offset != stored.size()) {
+                return response(request, 409, "{}");
+            }
+            var chunk = readBody(request);
+            if (offset == dropOffset) {
+                dropOffset = -1;
+                stored.write(chunk, 0, dropKeeping);
+                if (dropStatus != 0) {
+                    return response(request, dropStatus, "{}");
+                }
+                throw new IOException("connection reset");
+            }
+            stored.write(chunk, 0, chunk.length);
+            return json(request, session(id));
+        }
+
+        private String session(String id) throws IOException {
+            var size = requests.get(id).size();
+            return JsonUtils.MAPPER.writeValueAsString(new UploadSession(id, size, sessions.get(id).size()));
+        }
+
+        private static byte[] readBody(Request request) throws IOException {
+            var buffer = new Buffer();
+            request.body().writeTo(buffer);
+            return buffer.readByteArray();
+        }
+
+        private static Response json(Request request, String body) {
+            return response(request, 200, body);
+        }
+
+        private static Response response(Request request, int code, String body) {
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(code)
+                    .message(code == 200 ? "OK" : "Error")
+                    .body(ResponseBody.create(body, JSON))
+                    .build();
+        }
+    }
+}
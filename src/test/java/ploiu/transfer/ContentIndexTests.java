@@ -0,0 +1,112 @@
+package ploiu.transfer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentIndexTests {
+    @TempDir
+    Path dir;
+    ContentIndex index;
+
+    @BeforeEach
+    void setup() {
+        index = new ContentIndex(dir.resolve("content-index"));
+    }
+
+    @AfterEach
+    void teardown() throws Exception {
+        index.close();
+    }
+
+    @Test
+    @DisplayName("files are hashed with SHA-256")
+    void testHash() throws Exception {
+        var file = dir.resolve("test.txt");
+        Files.writeString(file, "hello world");
+        assertEquals("b94d27b9934d3e08a52e52d7da7dabfac484efe37a5380ee9088f7ace2efcde9", HexFormat.of().formatHex(ContentIndex.hash(file)));
+    }
+
+    @Test
+    @DisplayName("entries can be found and replaced")
+    void testPutFind() throws Exception {
+        assertEquals(OptionalLong.empty(), index.find(hash(1)));
+        index.put(hash(1), 0);
+        index.put(hash(2), 20);
+        assertEquals(OptionalLong.of(0), index.find(hash(1)));
+        index.put(hash(1), 10);
+        assertEquals(OptionalLong.of(10), index.find(hash(1)));
+        assertEquals(OptionalLong.of(20), index.find(hash(2)));
+    }
+
+    @Test
+    @DisplayName("entries are still there after the index is reopened")
+    void testPersists() throws Exception {
+        index.put(hash(1), 10);
+        index.close();
+        index = new ContentIndex(dir.resolve("content-index"));
+        assertEquals(OptionalLong.of(10), index.find(hash(1)));
+    }
+
+    @Test
+    @DisplayName("the index grows as entries are added without losing any")
+    void testGrows() throws Exception {
+        var count = 20_000;
+        for (int i = 0; i < count; i++) {
+            index.put(hash(i), i);
+        }
+        for (int i = 0; i < count; i++) {
+            assertEquals(OptionalLong.of(i), index.find(hash(i)));
+        }
+        assertEquals(OptionalLong.empty(), index.find(hash(count)));
+    }
+
+    @Test
+    @DisplayName("entries that share a starting slot are all kept")
+    void testCollisions() throws Exception {
+        // the first 8 bytes pick the slot, so these all land on the same one
+        var first = hash(1);
+        var second = hash(1);
+        second[31] = 1;
+        var third = hash(1);
+        third[31] = 2;
+        index.put(first, 1);
+        index.put(second, 2);
+        index.put(third, 3);
+        index.put(second, 4);
+        assertEquals(OptionalLong.of(1), index.find(first));
+        assertEquals(OptionalLong.of(4), index.find(second));
+        assertEquals(OptionalLong.of(3), index.find(third));
+    }
+
+    @Test
+    @DisplayName("an unreadable index is replaced instead of failing every lookup")
+    void testCorruptIndex() throws Exception {
+        Files.writeString(dir.resolve("content-index"), "not an index");
+        assertEquals(OptionalLong.empty(), index.find(hash(1)));
+        index.put(hash(1), 10);
+        assertEquals(OptionalLong.of(10), index.find(hash(1)));
+    }
+
+    /**
+     * a stand-in for a digest. The value is spread through the whole hash so entries land all over the table like real ones do
+     */
+    private static byte[] hash(long value) {
+        var mixed = value * 0x9E3779B97F4A7C15L;
+        return ByteBuffer.allocate(ContentIndex.HASH_SIZE)
+                .putLong(mixed)
+                .putLong(Long.rotateLeft(mixed, 17) ^ value)
+                .putLong(value)
+                .array();
+    }
+}
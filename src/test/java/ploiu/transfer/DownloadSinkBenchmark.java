@@ -0,0 +1,109 @@
+package ploiu.transfer;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * compares {@link DownloadSink} against how downloads used to be written ({@code InputStream} copied straight onto the
+ * target). Not part of the normal test run; use {@code ./gradlew benchmark}
+ */
+@Tag("benchmark")
+class DownloadSinkBenchmark {
+    static final long SIZE = 512L * 1024 * 1024;
+    static final int WARMUP_ROUNDS = 2;
+    static final int ROUNDS = 5;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void compareWritePaths() throws Exception {
+        var target = dir.resolve("benchmark.bin");
+        var part = dir.resolve("benchmark.bin.part");
+        report("InputStream -> Files.copy", () -> {
+            try (var in = source().inputStream()) {
+                Files.copy(in, target, REPLACE_EXISTING);
+            }
+        }, target);
+        for (var policy : DownloadSink.FsyncPolicy.values()) {
+            report("DownloadSink (" + policy + ")", () -> {
+                try (var sink = DownloadSink.open(part, SIZE, policy); var source = source()) {
+                    var written = new long[]{0};
+                    sink.write(source, 0, Long.MAX_VALUE, count -> written[0] += count);
+                    sink.commit(target, written[0]);
+                }
+            }, target);
+        }
+    }
+
+    private static void report(String name, IoRunnable run, Path target) throws IOException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            run.run();
+        }
+        var best = Long.MAX_VALUE;
+        var total = 0L;
+        for (int i = 0; i < ROUNDS; i++) {
+            var start = System.nanoTime();
+            run.run();
+            var elapsed = System.nanoTime() - start;
+            best = Math.min(best, elapsed);
+            total += elapsed;
+            assertEquals(SIZE, Files.size(target));
+        }
+        var mib = SIZE / (1024.0 * 1024.0);
+        System.out.printf("%-32s best %8.1f MiB/s, mean %8.1f MiB/s%n", name, mib / (best / 1e9), mib / (total / (double) ROUNDS / 1e9));
+    }
+
+    /**
+     * {@link #SIZE} bytes of a repeating pattern, handed out in socket sized reads like a response body would be
+     */
+    private static BufferedSource source() {
+        var chunk = new byte[8192];
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = (byte) i;
+        }
+        return Okio.buffer(new Source() {
+            long remaining = SIZE;
+
+            @Override
+            public long read(@NotNull Buffer sink, long byteCount) {
+                if (remaining == 0) {
+                    return -1;
+                }
+                var count = (int) Math.min(Math.min(byteCount, chunk.length), remaining);
+                sink.write(chunk, 0, count);
+                remaining -= count;
+                return count;
+            }
+
+            @NotNull
+            @Override
+            public Timeout timeout() {
+                return Timeout.NONE;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface IoRunnable {
+        void run() throws IOException;
+    }
+}
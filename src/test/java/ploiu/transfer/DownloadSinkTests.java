@@ -0,0 +1,81 @@
+package ploiu.transfer;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloadSinkTests {
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("the part file is set to the expected length before anything is written")
+    void testSetsFinalLength() throws Exception {
+        var part = dir.resolve("test.part");
+        try (var ignored = DownloadSink.open(part, 1000, DownloadSink.FsyncPolicy.NEVER)) {
+            assertEquals(1000, Files.size(part));
+        }
+    }
+
+    @Test
+    @DisplayName("committing trims the file to its real length and moves it over the target")
+    void testCommit() throws Exception {
+        var part = dir.resolve("test.part");
+        var target = dir.resolve("test.txt");
+        Files.writeString(target, "old contents");
+        var sink = DownloadSink.open(part, 100, DownloadSink.FsyncPolicy.ON_COMPLETE);
+        var written = new AtomicLong();
+        sink.write(new Buffer().writeUtf8("hello world"), 0, Long.MAX_VALUE, written::addAndGet);
+        sink.commit(target, written.get());
+        assertEquals(11, written.get());
+        assertEquals("hello world", Files.readString(target));
+        assertFalse(Files.exists(part));
+    }
+
+    @Test
+    @DisplayName("writes land at their own positions and stop at the limit")
+    void testPositionalWrites() throws Exception {
+        var part = dir.resolve("test.part");
+        var target = dir.resolve("test.txt");
+        var sink = DownloadSink.open(part, 11, DownloadSink.FsyncPolicy.NEVER);
+        sink.write(new Buffer().writeUtf8("world and more"), 6, 5, ignored -> {
+        });
+        sink.write(new Buffer().writeUtf8("hello "), 0, 6, ignored -> {
+        });
+        sink.commit(target, 11);
+        assertEquals("hello world", Files.readString(target));
+    }
+
+    @Test
+    @DisplayName("bytes read before the connection dropped are still written")
+    void testPartialWriteOnFailure() throws Exception {
+        var part = dir.resolve("test.part");
+        var source = new ForwardingSource(new Buffer().writeUtf8("hello")) {
+            @Override
+            public long read(@NotNull Buffer sink, long byteCount) throws IOException {
+                var read = super.read(sink, byteCount);
+                if (read == -1) {
+                    throw new IOException("connection reset");
+                }
+                return read;
+            }
+        };
+        var written = new AtomicLong();
+        try (var sink = DownloadSink.open(part, 11, DownloadSink.FsyncPolicy.NEVER)) {
+            assertThrows(IOException.class, () -> sink.write(Okio.buffer(source), 0, Long.MAX_VALUE, written::addAndGet));
+        }
+        assertEquals(5, written.get());
+        assertEquals("hello", new String(Files.readAllBytes(part), 0, 5));
+    }
+}
@@ -0,0 +1,127 @@
+package ploiu.transfer;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ploiu.model.FileApi;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileCacheTests {
+    @TempDir
+    Path dir;
+    final AtomicInteger downloads = new AtomicInteger();
+
+    @Test
+    @DisplayName("a file that hasn't changed is opened without downloading it again")
+    void testHit() {
+        var cache = new FileCache(dir, 1000);
+        var file = file(1, 10, "2024-01-01");
+        var first = cache.get(file, "test.txt", download(10)).blockingGet();
+        var second = cache.get(file, "test.txt", download(10)).blockingGet();
+        assertEquals(first, second);
+        assertEquals(1, downloads.get());
+    }
+
+    @Test
+    @DisplayName("a file whose size or creation date changed is downloaded again")
+    void testStale() {
+        var cache = new FileCache(dir, 1000);
+        cache.get(file(1, 10, "2024-01-01"), "test.txt", download(10)).blockingGet();
+        cache.get(file(1, 10, "2024-02-01"), "test.txt", download(10)).blockingGet();
+        cache.get(file(1, 20, "2024-02-01"), "test.txt", download(20)).blockingGet();
+        assertEquals(3, downloads.get());
+        assertEquals(20, cache.getTotalBytes());
+    }
+
+    @Test
+    @DisplayName("the least recently opened files are deleted once the cache is over budget")
+    void testEviction() {
+        var cache = new FileCache(dir, 25);
+        var first = cache.get(file(1, 10, "a"), "first.txt", download(10)).blockingGet();
+        var second = cache.get(file(2, 10, "a"), "second.txt", download(10)).blockingGet();
+        // opening the first file again makes the second the least recently used
+        cache.get(file(1, 10, "a"), "first.txt", download(10)).blockingGet();
+        var third = cache.get(file(3, 10, "a"), "third.txt", download(10)).blockingGet();
+        assertTrue(first.exists());
+        assertFalse(second.exists());
+        assertTrue(third.exists());
+        assertEquals(20, cache.getTotalBytes());
+    }
+
+    @Test
+    @DisplayName("opening a cached file again only saves its new place in line once the index is flushed")
+    void testLazyOrder() throws Exception {
+        var index = dir.resolve("file-cache.json");
+        var cache = new FileCache(dir, 25);
+        cache.get(file(1, 10, "a"), "first.txt", download(10)).blockingGet();
+        cache.get(file(2, 10, "a"), "second.txt", download(10)).blockingGet();
+        var saved = Files.readString(index);
+        cache.get(file(1, 10, "a"), "first.txt", download(10)).blockingGet();
+        assertEquals(saved, Files.readString(index));
+        cache.flush();
+        // the second file is the least recently used after a restart too, so it's the one that makes room for the third
+        var restarted = new FileCache(dir, 25);
+        restarted.get(file(3, 10, "a"), "third.txt", download(10)).blockingGet();
+        assertTrue(Files.exists(dir.resolve("1_first.txt")));
+        assertFalse(Files.exists(dir.resolve("2_second.txt")));
+    }
+
+    @Test
+    @DisplayName("opening a file that's already downloading waits for that download instead of starting another")
+    void testSingleFlight() throws Exception {
+        var cache = new FileCache(dir, 1000);
+        var release = new CountDownLatch(1);
+        Function<File, Single<File>> slowDownload = target -> Single.fromCallable(() -> {
+            downloads.incrementAndGet();
+            release.await(5, TimeUnit.SECONDS);
+            Files.write(target.toPath(), new byte[10]);
+            return target;
+        }).subscribeOn(Schedulers.io());
+        var first = cache.get(file(1, 10, "a"), "test.txt", slowDownload);
+        var second = cache.get(file(1, 10, "a"), "test.txt", slowDownload);
+        var results = Single.zip(first, second, List::of).subscribeOn(Schedulers.io()).toFuture();
+        Thread.sleep(100);
+        release.countDown();
+        var files = results.get(5, TimeUnit.SECONDS);
+        assertEquals(files.get(0), files.get(1));
+        assertEquals(1, downloads.get());
+    }
+
+    @Test
+    @DisplayName("the cache is remembered across restarts, and files it doesn't know about are removed")
+    void testPersists() throws Exception {
+        var stray = Files.write(dir.resolve("9_stray.txt"), new byte[5]);
+        var part = Files.write(dir.resolve("8_download.txt.part"), new byte[5]);
+        new FileCache(dir, 1000).get(file(1, 10, "a"), "test.txt", download(10)).blockingGet();
+        var restarted = new FileCache(dir, 1000);
+        restarted.get(file(1, 10, "a"), "test.txt", download(10)).blockingGet();
+        assertEquals(1, downloads.get());
+        assertEquals(10, restarted.getTotalBytes());
+        assertFalse(Files.exists(stray));
+        assertTrue(Files.exists(part));
+    }
+
+    private static FileApi file(long id, long size, String dateCreated) {
+        return new FileApi(id, "test.txt", List.of(), 0L, size, dateCreated, null);
+    }
+
+    private Function<File, Single<File>> download(int size) {
+        return target -> Single.fromCallable(() -> {
+            downloads.incrementAndGet();
+            Files.write(target.toPath(), new byte[size]);
+            return target;
+        });
+    }
+}
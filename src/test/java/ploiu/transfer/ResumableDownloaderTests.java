@@ -0,0 +1,190 @@
+package ploiu.transfer;
+
+import io.reactivex.rxjava3.core.Single;
+import okhttp3.Headers;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ploiu.util.JsonUtils;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResumableDownloaderTests {
+    static final String CONTENT = "hello world";
+
+    @TempDir
+    Path dir;
+    Path target;
+    Path part;
+    Path state;
+    ResumableDownloader downloader;
+    // the Range header of each request, in order
+    List<String> ranges;
+
+    @BeforeEach
+    void setup() {
+        target = dir.resolve("test.txt");
+        part = dir.resolve("test.txt.part");
+        state = dir.resolve("test.txt.part.state");
+        downloader = new ResumableDownloader();
+        ranges = new ArrayList<>();
+    }
+
+    @Test
+    @DisplayName("a fresh download ends up at the target with nothing left behind")
+    void testFreshDownload() throws Exception {
+        downloader.download("file:1", target.toFile(), (range, ifRange) -> {
+            ranges.add(range);
+            return Single.just(full());
+        }).blockingGet();
+        assertEquals(CONTENT, Files.readString(target));
+        assertFalse(Files.exists(part));
+        assertFalse(Files.exists(state));
+        assertEquals(Arrays.asList((String) null), ranges);
+    }
+
+    @Test
+    @DisplayName("a partial download left over from before resumes where it stopped")
+    void testResumeFromPart() throws Exception {
+        Files.writeString(part, "hello ");
+        JsonUtils.MAPPER.writeValue(state.toFile(), new DownloadState("file:1", "\"v1\"", null, CONTENT.length()).withWritten(6));
+        downloader.download("file:1", target.toFile(), (range, ifRange) -> {
+            ranges.add(range);
+            assertEquals("\"v1\"", ifRange);
+            return Single.just(partial("world", "bytes 6-10/11"));
+        }).blockingGet();
+        assertEquals(CONTENT, Files.readString(target));
+        assertEquals(List.of("bytes=6-"), ranges);
+        assertFalse(Files.exists(state));
+    }
+
+    @Test
+    @DisplayName("progress of a resumed download includes what was already on disk")
+    void testResumeProgress() throws Exception {
+        Files.writeString(part, "hello ");
+        JsonUtils.MAPPER.writeValue(state.toFile(), new DownloadState("file:1", "\"v1\"", null, CONTENT.length()).withWritten(6));
+        var progress = new TransferProgress(-1);
+        downloader.download("file:1", target.toFile(), (range, ifRange) -> Single.just(partial("world", "bytes 6-10/11")), progress).blockingGet();
+        assertEquals(CONTENT.length(), progress.getTransferred());
+        assertEquals(CONTENT.length(), progress.getTotal());
+    }
+
+    @Test
+    @DisplayName("if the server sends everything instead of the range, the partial data is thrown away")
+    void testServerIgnoresRange() throws Exception {
+        Files.writeString(part, "stale data that's longer than the real thing");
+        JsonUtils.MAPPER.writeValue(state.toFile(), new DownloadState("file:1", "\"v1\"", null, 44).withWritten(44));
+        downloader.download("file:1", target.toFile(), (range, ifRange) -> Single.just(full())).blockingGet();
+        assertEquals(CONTENT, Files.readString(target));
+    }
+
+    @Test
+    @DisplayName("partial data for something else is never resumed")
+    void testDifferentResource() throws Exception {
+        Files.writeString(part, "hello ");
+        JsonUtils.MAPPER.writeValue(state.toFile(), new DownloadState("file:2", "\"v1\"", null, CONTENT.length()));
+        downloader.download("file:1", target.toFile(), (range, ifRange) -> {
+            ranges.add(range);
+            return Single.just(full());
+        }).blockingGet();
+        assertEquals(CONTENT, Files.readString(target));
+        assertEquals(Arrays.asList((String) null), ranges);
+    }
+
+    @Test
+    @DisplayName("state saved without how much was written is thrown away along with its partial data")
+    void testStateWithoutWrittenRestarts() throws Exception {
+        Files.writeString(part, "hello ");
+        Files.writeString(state, "{\"resource\":\"file:1\",\"etag\":\"\\\"v1\\\"\",\"length\":11}");
+        downloader.download("file:1", target.toFile(), (range, ifRange) -> {
+            ranges.add(range);
+            return Single.just(full());
+        }).blockingGet();
+        assertEquals(CONTENT, Files.readString(target));
+        assertEquals(Arrays.asList((String) null), ranges);
+    }
+
+    @Test
+    @DisplayName("a dropped connection is resumed automatically")
+    void testDroppedConnectionResumes() throws Exception {
+        downloader.download("file:1", target.toFile(), (range, ifRange) -> {
+            ranges.add(range);
+            if (range == null) {
+                return Single.just(dropsAfter("hello"));
+            }
+            return Single.just(partial(" world", "bytes 5-10/11"));
+        }).blockingGet();
+        assertEquals(CONTENT, Files.readString(target));
+        assertEquals(Arrays.asList(null, "bytes=5-"), ranges);
+    }
+
+    @Test
+    @DisplayName("a range that doesn't line up with the partial data restarts the download")
+    void testMismatchedRangeRestarts() throws Exception {
+        Files.writeString(part, "hello ");
+        JsonUtils.MAPPER.writeValue(state.toFile(), new DownloadState("file:1", "\"v1\"", null, CONTENT.length()).withWritten(6));
+        downloader.download("file:1", target.toFile(), (range, ifRange) -> {
+            ranges.add(range);
+            return Single.just(range == null ? full() : partial(CONTENT, "bytes 0-10/11"));
+        }).blockingGet();
+        assertEquals(CONTENT, Files.readString(target));
+        assertEquals(Arrays.asList("bytes=6-", null), ranges);
+    }
+
+    @Test
+    void testParseContentRange() {
+        assertArrayEquals(new long[]{6, 10, 11}, ResumableDownloader.parseContentRange("bytes 6-10/11"));
+        assertArrayEquals(new long[]{6, 10, -1}, ResumableDownloader.parseContentRange("bytes 6-10/*"));
+        assertNull(ResumableDownloader.parseContentRange("bytes */11"));
+        assertNull(ResumableDownloader.parseContentRange(null));
+    }
+
+    private static Response<ResponseBody> full() {
+        return Response.success(ResponseBody.create(CONTENT, null), Headers.of("ETag", "\"v1\""));
+    }
+
+    private static Response<ResponseBody> partial(String body, String contentRange) {
+        var raw = new okhttp3.Response.Builder()
+                .request(new Request.Builder().url("http://localhost/files/1").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(206)
+                .message("Partial Content")
+                .header("Content-Range", contentRange)
+                .build();
+        return Response.success(ResponseBody.create(body, null), raw);
+    }
+
+    /**
+     * a response that claims to be the whole file, but the connection drops after {@code sent}
+     */
+    private static Response<ResponseBody> dropsAfter(String sent) {
+        var source = new ForwardingSource(new Buffer().writeUtf8(sent)) {
+            @Override
+            public long read(@NotNull Buffer sink, long byteCount) throws IOException {
+                var read = super.read(sink, byteCount);
+                if (read == -1) {
+                    throw new IOException("connection reset");
+                }
+                return read;
+            }
+        };
+        var body = ResponseBody.create(Okio.buffer(source), null, CONTENT.length());
+        return Response.success(body, Headers.of("ETag", "\"v1\""));
+    }
+}
@@ -0,0 +1,205 @@
+package ploiu.transfer;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import okhttp3.Headers;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentedDownloaderTests {
+    static final int SIZE = 1000;
+    static final byte[] CONTENT = new byte[SIZE];
+
+    static {
+        new Random(42).nextBytes(CONTENT);
+    }
+
+    @TempDir
+    Path dir;
+    Path target;
+    SegmentedDownloader downloader;
+    // the Range header of each request
+    List<String> ranges;
+
+    @BeforeEach
+    void setup() {
+        target = dir.resolve("test.bin");
+        downloader = new SegmentedDownloader(new ResumableDownloader(), 0, 100, 4, DownloadSink.FsyncPolicy.NEVER);
+        ranges = new CopyOnWriteArrayList<>();
+    }
+
+    @Test
+    @DisplayName("segments are fetched concurrently and written at their offsets")
+    void testSegmentedDownload() throws Exception {
+        var active = new AtomicInteger();
+        var maxActive = new AtomicInteger();
+        downloader.download("file:1", target.toFile(), SIZE, (range, ifRange) -> {
+            ranges.add(range);
+            return Single.fromCallable(() -> {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                active.decrementAndGet();
+                return serveRange(range);
+            }).subscribeOn(Schedulers.io());
+        }).blockingGet();
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertEquals(10, ranges.size());
+        assertTrue(ranges.contains("bytes=0-99"));
+        assertTrue(ranges.contains("bytes=900-999"));
+        assertTrue(maxActive.get() > 1, "segments should overlap");
+        assertFalse(Files.exists(dir.resolve("test.bin.part")));
+    }
+
+    @Test
+    @DisplayName("if the server ignores Range, the first response is used as a single stream")
+    void testServerIgnoresRange() throws Exception {
+        downloader.download("file:1", target.toFile(), SIZE, (range, ifRange) -> {
+            ranges.add(range);
+            return Single.just(Response.success(ResponseBody.create(CONTENT, null)));
+        }).blockingGet();
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertEquals(List.of("bytes=0-99"), ranges);
+    }
+
+    @Test
+    @DisplayName("small files skip segmenting entirely")
+    void testSmallFileUsesSingleStream() throws Exception {
+        downloader = new SegmentedDownloader(new ResumableDownloader(), SIZE + 1, 100, 4, DownloadSink.FsyncPolicy.NEVER);
+        downloader.download("file:1", target.toFile(), SIZE, (range, ifRange) -> {
+            ranges.add(range);
+            return Single.just(Response.success(ResponseBody.create(CONTENT, null)));
+        }).blockingGet();
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertEquals(Arrays.asList((String) null), ranges);
+    }
+
+    @Test
+    @DisplayName("a dropped segment resumes from where it stopped instead of starting over")
+    void testDroppedSegmentResumes() throws Exception {
+        downloader.download("file:1", target.toFile(), SIZE, (range, ifRange) -> {
+            ranges.add(range);
+            if (range.equals("bytes=300-399")) {
+                return Single.just(dropsAfter(300, 50));
+            }
+            return Single.just(serveRange(range));
+        }).blockingGet();
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertTrue(ranges.contains("bytes=350-399"));
+    }
+
+    @Test
+    @DisplayName("bytes a dropped segment already wrote aren't counted again when it resumes")
+    void testDroppedSegmentProgress() throws Exception {
+        var progress = new TransferProgress(SIZE);
+        downloader.download("file:1", target.toFile(), SIZE, (range, ifRange) -> {
+            if (range.equals("bytes=300-399")) {
+                return Single.just(dropsAfter(300, 50));
+            }
+            return Single.just(serveRange(range));
+        }, progress).blockingGet();
+        assertEquals(SIZE, progress.getTransferred());
+    }
+
+    @Test
+    @DisplayName("a segment coming back as the whole file means it changed, and the download fails")
+    void testContentChangedMidDownload() {
+        var result = downloader.download("file:1", target.toFile(), SIZE, (range, ifRange) -> {
+            if (range.equals("bytes=0-99")) {
+                return Single.just(serveRange(range));
+            }
+            assertEquals("\"v1\"", ifRange);
+            return Single.just(Response.success(ResponseBody.create(CONTENT, null)));
+        });
+        assertThrows(IllegalStateException.class, result::blockingGet);
+        assertFalse(Files.exists(target));
+        assertFalse(Files.exists(dir.resolve("test.bin.part")));
+    }
+
+    @Test
+    @DisplayName("a failed download keeps what it got, and the next attempt only fetches the segments that are missing")
+    void testResumesAfterFailure() throws Exception {
+        var failed = downloader.download("file:1", target.toFile(), SIZE, (range, ifRange) -> {
+            if (range.equals("bytes=500-599")) {
+                return Single.error(new IOException("connection reset"));
+            }
+            return Single.just(serveRange(range));
+        });
+        assertThrows(RuntimeException.class, failed::blockingGet);
+        assertTrue(Files.exists(dir.resolve("test.bin.part")));
+        assertTrue(Files.exists(dir.resolve("test.bin.part.state")));
+
+        downloader.download("file:1", target.toFile(), SIZE, (range, ifRange) -> {
+            ranges.add(range);
+            return Single.just(serveRange(range));
+        }).blockingGet();
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertFalse(ranges.contains("bytes=0-99"));
+        assertTrue(ranges.contains("bytes=500-599"));
+        assertFalse(Files.exists(dir.resolve("test.bin.part.state")));
+    }
+
+    @Test
+    @DisplayName("a segment whose total doesn't match the expected size fails instead of committing a mixed up file")
+    void testTotalMismatch() {
+        var result = downloader.download("file:1", target.toFile(), 2 * SIZE, (range, ifRange) -> Single.just(serveRange(range)));
+        assertThrows(IllegalStateException.class, result::blockingGet);
+        assertFalse(Files.exists(target));
+    }
+
+    private static Response<ResponseBody> serveRange(String range) {
+        var bounds = range.substring("bytes=".length()).split("-");
+        var start = Integer.parseInt(bounds[0]);
+        var end = Integer.parseInt(bounds[1]);
+        var body = ResponseBody.create(Arrays.copyOfRange(CONTENT, start, end + 1), null);
+        return Response.success(body, partialResponse(start, end));
+    }
+
+    /**
+     * a response for the range starting at {@code start} that drops the connection after {@code sent} bytes
+     */
+    private static Response<ResponseBody> dropsAfter(int start, int sent) {
+        var source = new ForwardingSource(new Buffer().write(Arrays.copyOfRange(CONTENT, start, start + sent))) {
+            @Override
+            public long read(@NotNull Buffer sink, long byteCount) throws IOException {
+                var read = super.read(sink, byteCount);
+                if (read == -1) {
+                    throw new IOException("connection reset");
+                }
+                return read;
+            }
+        };
+        var body = ResponseBody.create(Okio.buffer(source), null, 100);
+        return Response.success(body, partialResponse(start, start + 99));
+    }
+
+    private static okhttp3.Response partialResponse(int start, int end) {
+        return new okhttp3.Response.Builder()
+                .request(new Request.Builder().url("http://localhost/files/1").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(206)
+                .message("Partial Content")
+                .headers(Headers.of("Content-Range", "bytes " + start + "-" + end + "/" + SIZE, "ETag", "\"v1\""))
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+package ploiu.transfer;
+
+import okhttp3.RequestBody;
+import okio.Buffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferProgressTests {
+    static final long SECOND = 1_000_000_000L;
+
+    AtomicLong clock;
+
+    @BeforeEach
+    void setup() {
+        clock = new AtomicLong(0);
+    }
+
+    @Test
+    @DisplayName("rate and eta come from bytes over time")
+    void testRateAndEta() {
+        var progress = new TransferProgress(1000, clock::get);
+        progress.add(100);
+        clock.addAndGet(SECOND);
+        var snapshot = progress.snapshot();
+        assertEquals(100, snapshot.transferred());
+        assertEquals(100, snapshot.bytesPerSecond(), 0.001);
+        assertEquals(100, snapshot.smoothedBytesPerSecond(), 0.001);
+        assertEquals(Duration.ofSeconds(9), snapshot.eta());
+        assertEquals(0.1, snapshot.fraction(), 0.001);
+    }
+
+    @Test
+    @DisplayName("the smoothed rate moves towards a new rate instead of jumping to it")
+    void testSmoothing() {
+        var progress = new TransferProgress(-1, clock::get);
+        progress.add(100);
+        clock.addAndGet(SECOND);
+        progress.snapshot();
+        progress.add(1000);
+        clock.addAndGet(SECOND);
+        var snapshot = progress.snapshot();
+        assertEquals(1000, snapshot.bytesPerSecond(), 0.001);
+        assertTrue(snapshot.smoothedBytesPerSecond() > 100 && snapshot.smoothedBytesPerSecond() < 1000);
+    }
+
+    @Test
+    @DisplayName("snapshots taken too close together don't change the rate")
+    void testSnapshotsTooClose() {
+        var progress = new TransferProgress(-1, clock::get);
+        progress.add(100);
+        clock.addAndGet(SECOND);
+        progress.snapshot();
+        progress.add(1000);
+        clock.addAndGet(1_000_000);
+        var snapshot = progress.snapshot();
+        assertEquals(100, snapshot.bytesPerSecond(), 0.001);
+        assertEquals(1100, snapshot.transferred());
+    }
+
+    @Test
+    @DisplayName("an unknown total has no eta or fraction until one is set")
+    void testUnknownTotal() {
+        var progress = new TransferProgress(-1, clock::get);
+        progress.add(100);
+        clock.addAndGet(SECOND);
+        assertNull(progress.snapshot().eta());
+        assertEquals(-1, progress.snapshot().fraction());
+        progress.expectTotal(200);
+        progress.expectTotal(500);
+        assertEquals(200, progress.getTotal());
+    }
+
+    @Test
+    @DisplayName("writing a request body again takes back the bytes from the first attempt")
+    void testRequestBodyRetry() throws Exception {
+        var progress = new TransferProgress(11);
+        var body = new CountingRequestBody(RequestBody.create("hello world", null), progress);
+        body.writeTo(new Buffer());
+        assertEquals(11, progress.getTransferred());
+        body.writeTo(new Buffer());
+        assertEquals(11, progress.getTransferred());
+    }
+}
@@ -0,0 +1,63 @@
+package ploiu.ui;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ploiu.model.FileApi;
+import ploiu.model.FolderApi;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DragRegistryTests {
+
+    @AfterEach
+    void teardown() {
+        DragRegistry.dragDone();
+    }
+
+    @Test
+    @DisplayName("only the id of a dragged folder goes on the dragboard")
+    void testDragFolderContent() {
+        var folder = new FolderApi(12, 0, "test", "test", List.of(), List.of(), List.of());
+        var content = DragRegistry.dragFolder(folder);
+        assertEquals("12", content.get(DataTypes.FOLDER));
+        assertNull(content.get(DataTypes.FILE));
+    }
+
+    @Test
+    @DisplayName("dropping a folder gives back the same folder that was dragged")
+    void testDroppedFolder() {
+        var folder = new FolderApi(12, 0, "test", "test", List.of(), List.of(), List.of());
+        var content = DragRegistry.dragFolder(folder);
+        assertSame(folder, DragRegistry.droppedFolder(content.get(DataTypes.FOLDER)).orElseThrow());
+    }
+
+    @Test
+    @DisplayName("dropping a file gives back the same file that was dragged")
+    void testDroppedFile() {
+        var file = new FileApi(3, "test.txt", List.of(), 0L, null, null, null);
+        var content = DragRegistry.dragFile(file);
+        assertSame(file, DragRegistry.droppedFile(content.get(DataTypes.FILE)).orElseThrow());
+        // files and folders don't share ids
+        assertEquals(Optional.empty(), DragRegistry.droppedFolder(content.get(DataTypes.FILE)));
+    }
+
+    @Test
+    @DisplayName("nothing can be dropped once the drag is done")
+    void testDragDone() {
+        var content = DragRegistry.dragFile(new FileApi(3, "test.txt", List.of(), 0L, null, null, null));
+        DragRegistry.dragDone();
+        assertEquals(Optional.empty(), DragRegistry.droppedFile(content.get(DataTypes.FILE)));
+    }
+
+    @Test
+    @DisplayName("content that didn't come from this app is ignored")
+    void testForeignContent() {
+        assertEquals(Optional.empty(), DragRegistry.droppedFile(null));
+        assertEquals(Optional.empty(), DragRegistry.droppedFile("{\"id\":3}"));
+        assertEquals(Optional.empty(), DragRegistry.droppedFolder(7));
+    }
+}
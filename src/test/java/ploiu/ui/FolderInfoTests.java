@@ -156,6 +156,31 @@ class FolderInfoTests {
         verifyThat("#folderTitle", LabeledMatchers.hasText("renamed"));
     }
 
+    @Test
+    @DisplayName("the update is shown before the receiver is done with it")
+    void testUpdateShownImmediately(FxRobot robot) {
+        when(receiver.process(any())).thenReturn(Single.never());
+
+        robot.clickOn("#renameButton");
+        var dialog = (TextInputDialog) robot.listTargetWindows().get(1).getScene().getRoot();
+        robot.clickOn(dialog.lookup("#textBox"));
+        robot.type(R, E, N, A, M, E, D);
+        robot.clickOn(dialog.lookup("#actionButton"));
+
+        verifyThat("#folderTitle", LabeledMatchers.hasText("renamed"));
+    }
+
+    @Test
+    @DisplayName("update failure puts the folder info back the way it was")
+    void testUpdateFailureRollsBack(FxRobot robot) {
+        when(receiver.process(any())).thenReturn(Single.just(false));
+
+        robot.clickOn(LabeledMatchers.hasText("tag2"));
+
+        var tags = folderInfo.lookupAll(".tag-btn").stream().map(it -> ((Button) it).getText()).toList();
+        assertTrue(tags.contains("tag2"));
+    }
+
     @Test
     @DisplayName("clicking on a tag attempts to remove it")
     void testRemoveTag(FxRobot robot) {
@@ -0,0 +1,176 @@
+package ploiu.ui;
+
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import io.reactivex.rxjava3.subjects.MaybeSubject;
+import io.reactivex.rxjava3.subjects.SingleSubject;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.testfx.framework.junit5.ApplicationExtension;
+import ploiu.model.FileApi;
+import ploiu.service.FileService;
+import ploiu.service.FolderService;
+import ploiu.util.PreviewCache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(ApplicationExtension.class)
+class PreviewSchedulerTests {
+    FileService fileService;
+    FolderService folderService;
+    PreviewCache previewCache;
+    // the request for each file id, so tests can decide when each one finishes
+    Map<Long, MaybeSubject<Image>> requests;
+    // the order files were requested in
+    List<Long> started;
+    Map<Long, Image> loaded;
+
+    @BeforeEach
+    void setup() {
+        fileService = Mockito.mock();
+        folderService = Mockito.mock();
+        previewCache = new PreviewCache(Long.MAX_VALUE);
+        requests = new HashMap<>();
+        started = new ArrayList<>();
+        loaded = new HashMap<>();
+        lenient().when(fileService.fetchFilePreview(any())).thenAnswer(invocation -> {
+            FileApi file = invocation.getArgument(0);
+            started.add(file.id());
+            return requests.computeIfAbsent(file.id(), ignored -> MaybeSubject.create());
+        });
+    }
+
+    @Test
+    @DisplayName("only a few previews are fetched at once, the rest wait until a slot frees up")
+    void testConcurrencyCap() {
+        var scheduler = scheduler(2);
+        for (long id = 1; id <= 5; id++) {
+            request(scheduler, file(id, null), id);
+        }
+        assertEquals(List.of(1L, 2L), started);
+        assertEquals(2, scheduler.getRunningCount());
+        assertEquals(3, scheduler.getPendingCount());
+        requests.get(1L).onSuccess(new WritableImage(1, 1));
+        assertEquals(List.of(1L, 2L, 3L), started);
+        assertTrue(loaded.containsKey(1L));
+        // a file without a preview frees its slot too
+        requests.get(2L).onComplete();
+        assertEquals(List.of(1L, 2L, 3L, 4L), started);
+    }
+
+    @Test
+    @DisplayName("waiting previews start in priority order, and can be moved in line")
+    void testPriority() {
+        var scheduler = scheduler(1);
+        request(scheduler, file(1, null), 0);
+        request(scheduler, file(2, null), 30);
+        var third = request(scheduler, file(3, null), 20);
+        request(scheduler, file(4, null), 10);
+        third.setPriority(5);
+        for (long id : List.of(1L, 3L, 4L)) {
+            requests.get(id).onComplete();
+        }
+        assertEquals(List.of(1L, 3L, 4L, 2L), started);
+    }
+
+    @Test
+    @DisplayName("enough waiting previews in the same folder are fetched with 1 folder request")
+    void testGroupsByFolder() {
+        var folderRequest = SingleSubject.<Map<Long, Image>>create();
+        when(folderService.fetchFilePreviews(eq(9L), anyCollection())).thenReturn(folderRequest);
+        var scheduler = scheduler(1);
+        request(scheduler, file(1, null), 0);
+        for (long id = 10; id < 10 + PreviewScheduler.MIN_FOLDER_BATCH; id++) {
+            request(scheduler, file(id, 9L), id);
+        }
+        requests.get(1L).onComplete();
+        verify(folderService).fetchFilePreviews(eq(9L), argThat(files -> files.size() == PreviewScheduler.MIN_FOLDER_BATCH));
+        assertEquals(List.of(1L), started);
+        folderRequest.onSuccess(Map.of(10L, new WritableImage(1, 1), 11L, new WritableImage(1, 1)));
+        assertEquals(2, loaded.size());
+        assertEquals(0, scheduler.getRunningCount());
+    }
+
+    @Test
+    @DisplayName("a few previews out of a big folder are fetched 1 at a time instead of downloading the whole folder's previews")
+    void testBigFolderNotGrouped() {
+        var scheduler = scheduler(1);
+        scheduler.setFolderSize(9L, 1000);
+        request(scheduler, file(1, null), 0);
+        for (long id = 10; id < 10 + PreviewScheduler.MIN_FOLDER_BATCH; id++) {
+            request(scheduler, file(id, 9L), id);
+        }
+        requests.get(1L).onComplete();
+        verifyNoInteractions(folderService);
+        assertEquals(List.of(1L, 10L), started);
+    }
+
+    @Test
+    @DisplayName("cancelling everything stops what's in flight and drops what's waiting")
+    void testCancelAll() {
+        var scheduler = scheduler(1);
+        request(scheduler, file(1, null), 0);
+        request(scheduler, file(2, null), 1);
+        scheduler.cancelAll();
+        assertFalse(requests.get(1L).hasObservers());
+        assertEquals(0, scheduler.getPendingCount());
+        assertEquals(0, scheduler.getRunningCount());
+        assertEquals(List.of(1L), started);
+        // new requests aren't held up by the cancelled ones
+        request(scheduler, file(3, null), 0);
+        assertEquals(List.of(1L, 3L), started);
+    }
+
+    @Test
+    @DisplayName("a cancelled preview is never handed over, even if it finishes")
+    void testCancelledNotDelivered() {
+        var folderRequest = SingleSubject.<Map<Long, Image>>create();
+        when(folderService.fetchFilePreviews(eq(9L), anyCollection())).thenReturn(folderRequest);
+        var scheduler = scheduler(1);
+        // keeps the only slot busy so the folder previews queue up together
+        request(scheduler, file(1, null), 0);
+        var tickets = new ArrayList<PreviewScheduler.Ticket>();
+        for (long id = 10; id < 10 + PreviewScheduler.MIN_FOLDER_BATCH; id++) {
+            tickets.add(request(scheduler, file(id, 9L), id));
+        }
+        requests.get(1L).onComplete();
+        tickets.get(0).cancel();
+        // the rest of the folder still wants its previews, so the shared request keeps going
+        assertEquals(1, scheduler.getRunningCount());
+        folderRequest.onSuccess(Map.of(10L, new WritableImage(1, 1), 11L, new WritableImage(1, 1)));
+        assertEquals(List.of(11L), List.copyOf(loaded.keySet()));
+    }
+
+    @Test
+    @DisplayName("cached previews are handed over right away without a request")
+    void testCacheHit() {
+        var file = file(1, null);
+        previewCache.put(file, new WritableImage(1, 1));
+        request(scheduler(1), file, 0);
+        assertTrue(loaded.containsKey(1L));
+        verifyNoInteractions(fileService, folderService);
+    }
+
+    private PreviewScheduler scheduler(int maxConcurrent) {
+        return new PreviewScheduler(fileService, folderService, previewCache, Schedulers.trampoline(), maxConcurrent);
+    }
+
+    private PreviewScheduler.Ticket request(PreviewScheduler scheduler, FileApi file, double priority) {
+        return scheduler.request(file, priority, image -> loaded.put(file.id(), image));
+    }
+
+    private static FileApi file(long id, Long folderId) {
+        return new FileApi(id, "test.png", List.of(), folderId, 0L, "2024-01-01", null);
+    }
+}
@@ -0,0 +1,144 @@
+package ploiu.ui;
+
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Node;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.AnchorPane;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.testfx.api.FxRobot;
+import org.testfx.framework.junit5.ApplicationExtension;
+import ploiu.model.FileApi;
+import ploiu.model.FolderApi;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * compares how fast file / folder tiles are made now against how they used to be made (parsing their fxml for every tile and
+ * installing a tooltip right away). Not part of the normal test run; use {@code ./gradlew benchmark}
+ */
+@Tag("benchmark")
+@ExtendWith(ApplicationExtension.class)
+class TileConstructionBenchmark {
+    static final int TILES = 2_000;
+    static final int WARMUP_ROUNDS = 2;
+    static final int ROUNDS = 5;
+
+    // what FileEntry.fxml / FolderEntry.fxml used to be, minus the event handlers (which need the real controller)
+    static final String FILE_ENTRY_FXML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <?import javafx.scene.control.*?>
+            <?import javafx.scene.image.ImageView?>
+            <?import javafx.scene.layout.*?>
+            <fx:root xmlns:fx="http://javafx.com/fxml/1" type="javafx.scene.layout.AnchorPane" stylesheets="@FileEntry/FileEntry.css">
+                <VBox alignment="CENTER" fx:id="fileEntryContainer" styleClass="file-entry-container">
+                    <AnchorPane.bottomAnchor>0</AnchorPane.bottomAnchor>
+                    <AnchorPane.topAnchor>0</AnchorPane.topAnchor>
+                    <AnchorPane.leftAnchor>0</AnchorPane.leftAnchor>
+                    <AnchorPane.rightAnchor>0</AnchorPane.rightAnchor>
+                    <HBox alignment="CENTER">
+                        <ImageView fx:id="icon" styleClass="image"/>
+                    </HBox>
+                    <HBox alignment="CENTER">
+                        <Label fx:id="fileName" styleClass="text"/>
+                    </HBox>
+                </VBox>
+                <fx:define>
+                    <ContextMenu fx:id="fileMenu">
+                        <items>
+                            <MenuItem fx:id="saveAs" text="Save As..."/>
+                            <MenuItem fx:id="renameFile" text="Rename File"/>
+                            <MenuItem fx:id="deleteFile" text="Delete File"/>
+                            <MenuItem fx:id="info" text="Info"/>
+                        </items>
+                    </ContextMenu>
+                </fx:define>
+            </fx:root>
+            """;
+    static final String FOLDER_ENTRY_FXML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <?import javafx.scene.control.*?>
+            <?import javafx.scene.image.Image?>
+            <?import javafx.scene.image.ImageView?>
+            <?import javafx.scene.layout.*?>
+            <fx:root xmlns:fx="http://javafx.com/fxml/1" prefHeight="100" prefWidth="100" type="javafx.scene.layout.AnchorPane" stylesheets="@FolderEntry/FolderEntry.css">
+                <VBox alignment="CENTER" id="imagePane">
+                    <HBox alignment="CENTER">
+                        <ImageView fx:id="icon" id="icon" preserveRatio="true">
+                            <Image url="@../../assets/img/folder.png" requestedWidth="100" requestedHeight="100"/>
+                        </ImageView>
+                    </HBox>
+                    <HBox alignment="CENTER">
+                        <Label fx:id="folderName" styleClass="text"/>
+                    </HBox>
+                </VBox>
+                <fx:define>
+                    <ContextMenu fx:id="folderMenu">
+                        <items>
+                            <MenuItem text="Rename Folder"/>
+                            <MenuItem text="Delete Folder"/>
+                            <MenuItem text="Download Folder"/>
+                            <MenuItem text="Info"/>
+                        </items>
+                    </ContextMenu>
+                </fx:define>
+            </fx:root>
+            """;
+
+    @Test
+    void compareTileConstruction(FxRobot robot) {
+        var file = new FileApi(1, "test.txt", List.of(), 0L, 10L, "2024-01-01", "text");
+        var folder = new FolderApi(1, 0, "test", null, List.of(), List.of(), List.of());
+        robot.interact(() -> {
+            report("FileEntry (fxml)", i -> fromFxml(FILE_ENTRY_FXML, file.name()));
+            report("FileEntry", i -> new FileEntry(file, event -> null, new SimpleObjectProperty<>(), new SimpleObjectProperty<>()));
+            report("FolderEntry (fxml)", i -> fromFxml(FOLDER_ENTRY_FXML, folder.name()));
+            report("FolderEntry", i -> new FolderEntry(folder, event -> null, event -> null, new SimpleObjectProperty<>()));
+        });
+    }
+
+    private static Node fromFxml(String fxml, String name) {
+        var loader = new FXMLLoader(TileConstructionBenchmark.class.getClassLoader().getResource("ui/components/"));
+        var root = new AnchorPane();
+        loader.setRoot(root);
+        loader.setController(new Object());
+        try {
+            loader.load(new ByteArrayInputStream(fxml.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Tooltip.install(root, new Tooltip(name));
+        return root;
+    }
+
+    private static void report(String name, IntFunction<Node> makeTile) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            makeTiles(makeTile);
+        }
+        var best = Long.MAX_VALUE;
+        var total = 0L;
+        for (int i = 0; i < ROUNDS; i++) {
+            var start = System.nanoTime();
+            makeTiles(makeTile);
+            var elapsed = System.nanoTime() - start;
+            best = Math.min(best, elapsed);
+            total += elapsed;
+        }
+        System.out.printf("%-24s best %10.0f tiles/s, mean %10.0f tiles/s%n", name, TILES / (best / 1e9), TILES / (total / (double) ROUNDS / 1e9));
+    }
+
+    private static void makeTiles(IntFunction<Node> makeTile) {
+        for (int i = 0; i < TILES; i++) {
+            assertNotNull(makeTile.apply(i));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package ploiu.ui;
+
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.testfx.api.FxRobot;
+import org.testfx.framework.junit5.ApplicationExtension;
+import org.testfx.framework.junit5.Start;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(ApplicationExtension.class)
+class VirtualTilePaneTests {
+    // 2 tiles per row, 100px per row, 2 and a half rows visible
+    static final int TILE_SIZE = 100;
+    static final int ITEM_COUNT = 100_000;
+    ScrollPane scrollPane;
+    VirtualTilePane<Integer, Label> pane;
+    AtomicInteger created;
+    Map<Integer, Double> shown;
+    Set<Integer> hidden;
+    Set<Label> released;
+
+    @Start
+    void start(Stage stage) {
+        created = new AtomicInteger();
+        shown = new HashMap<>();
+        hidden = new HashSet<>();
+        released = new HashSet<>();
+        pane = new VirtualTilePane<>();
+        pane.setCells(item -> {
+            created.incrementAndGet();
+            var label = new Label(item.toString());
+            label.setPrefSize(TILE_SIZE, TILE_SIZE);
+            return label;
+        }, (label, item) -> {
+            released.remove(label);
+            label.setText(item.toString());
+        }, released::add);
+        pane.setOnVisibilityChanged(shown::put, hidden::add);
+        pane.getItems().setAll(IntStream.range(0, ITEM_COUNT).boxed().toList());
+        scrollPane = new ScrollPane(new VBox(pane));
+        scrollPane.setFitToWidth(true);
+        scrollPane.setPrefSize(2 * TILE_SIZE, 2.5 * TILE_SIZE);
+        scrollPane.setHbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
+        scrollPane.setVbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
+        pane.setScrollPane(scrollPane);
+        pane.setOverscan(TILE_SIZE);
+        stage.setScene(new Scene(scrollPane));
+        stage.show();
+    }
+
+    @Test
+    @DisplayName("only tiles on screen, or within the overscan of it, get a cell")
+    void testOnlyVisibleCells(FxRobot robot) {
+        robot.interact(this::layout);
+        // 3 rows (partly) on screen and 1 more in the overscan below
+        assertEquals(8, pane.getCellCount());
+        assertEquals(Set.of(0, 1, 2, 3, 4, 5, 6, 7), shown.keySet());
+        assertEquals(0, shown.get(0));
+        assertTrue(shown.get(7) > 0);
+        // tall enough to scroll through every item, even though most don't have a node
+        assertEquals(ITEM_COUNT / 2 * TILE_SIZE, pane.getHeight(), 1);
+    }
+
+    @Test
+    @DisplayName("cells are re-used as the pane is scrolled, so the node count stays the same")
+    void testRecycles(FxRobot robot) {
+        // the visible area plus overscan above and below can touch at most 6 rows
+        var maxCells = 2 * 6;
+        robot.interact(this::layout);
+        for (var vvalue : List.of(0.25, 0.5, 0.75, 1.0)) {
+            robot.interact(() -> {
+                scrollPane.setVvalue(vvalue);
+                layout();
+            });
+            assertTrue(pane.getCellCount() <= maxCells, pane.getCellCount() + " cells");
+        }
+        assertTrue(shown.containsKey(ITEM_COUNT - 1));
+        assertTrue(hidden.contains(0));
+        // a screen's worth of spares is all that ever gets made on top of what's showing
+        assertTrue(created.get() <= 2 * maxCells, "made " + created.get() + " cells");
+        assertTrue(pane.getChildrenUnmodifiable().size() <= 2 * maxCells);
+    }
+
+    @Test
+    @DisplayName("cells are released when they're put aside, so spares don't hold on to their old item")
+    void testSparesReleased(FxRobot robot) {
+        robot.interact(this::layout);
+        robot.interact(() -> {
+            scrollPane.setVvalue(0.5);
+            layout();
+        });
+        assertFalse(released.isEmpty());
+        for (var child : pane.getChildrenUnmodifiable()) {
+            assertEquals(!child.isVisible(), released.contains(child), ((Label) child).getText());
+        }
+    }
+
+    @Test
+    @DisplayName("replacing the items points the existing cells at the new items")
+    void testItemsReplaced(FxRobot robot) {
+        robot.interact(this::layout);
+        var before = created.get();
+        robot.interact(() -> {
+            pane.getItems().setAll(IntStream.range(ITEM_COUNT, 2 * ITEM_COUNT).boxed().toList());
+            layout();
+        });
+        assertEquals(before, created.get());
+        assertTrue(hidden.contains(0));
+        assertTrue(shown.containsKey(ITEM_COUNT));
+        var labels = pane.getChildrenUnmodifiable().stream().filter(Node::isVisible).map(node -> ((Label) node).getText()).toList();
+        assertTrue(labels.contains(String.valueOf(ITEM_COUNT)));
+        assertFalse(labels.contains("0"));
+    }
+
+    @Test
+    @DisplayName("removing an item keeps the other items' cells, which just move over")
+    void testRemoveKeepsCells(FxRobot robot) {
+        robot.interact(this::layout);
+        var before = labelFor("2");
+        robot.interact(() -> {
+            pane.getItems().remove(Integer.valueOf(0));
+            layout();
+        });
+        assertSame(before, labelFor("2"));
+        // moved from the second row to the first
+        assertEquals(0, before.getLayoutY(), 1);
+        assertTrue(hidden.contains(0));
+        assertTrue(shown.containsKey(8));
+    }
+
+    @Test
+    @DisplayName("the trailing node is placed after the last item, and only shown when it's in range")
+    void testTrailing(FxRobot robot) {
+        var trailing = new Label("add");
+        robot.interact(() -> {
+            pane.setTrailing(trailing);
+            layout();
+        });
+        assertFalse(trailing.isVisible());
+        robot.interact(() -> {
+            scrollPane.setVvalue(1);
+            layout();
+        });
+        assertTrue(trailing.isVisible());
+        // ITEM_COUNT is even, so the trailing node starts a new row
+        assertEquals(0, trailing.getLayoutX(), 1);
+        assertEquals(ITEM_COUNT / 2 * TILE_SIZE, trailing.getLayoutY(), 1);
+    }
+
+    private Label labelFor(String text) {
+        return pane.getChildrenUnmodifiable().stream()
+                .filter(Node::isVisible)
+                .map(Label.class::cast)
+                .filter(label -> label.getText().equals(text))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private void layout() {
+        scrollPane.applyCss();
+        scrollPane.layout();
+        // the pane was laid out before the scroll pane moved its content, so lay it out again now that the content is in place
+        pane.requestLayout();
+        scrollPane.layout();
+    }
+}
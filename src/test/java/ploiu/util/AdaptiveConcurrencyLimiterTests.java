@@ -0,0 +1,99 @@
+package ploiu.util;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.subjects.SingleSubject;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTests {
+
+    @Test
+    @DisplayName("no more than the limit are started at once")
+    void testLimitIsRespected() {
+        var limiter = new AdaptiveConcurrencyLimiter(2, 1, 10);
+        var started = new AtomicInteger(0);
+        List<SingleSubject<Integer>> requests = new ArrayList<>();
+        List<TestObserver<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            var request = SingleSubject.<Integer>create();
+            requests.add(request);
+            results.add(limiter.submit(1, () -> {
+                started.incrementAndGet();
+                return request;
+            }).test());
+        }
+        assertEquals(2, started.get());
+        assertEquals(3, limiter.getQueued());
+        requests.get(0).onSuccess(0);
+        results.get(0).assertValue(0);
+        // finishing 1 lets the next one start
+        assertEquals(3, started.get());
+    }
+
+    @Test
+    @DisplayName("successful requests raise the limit")
+    void testAdditiveIncrease() {
+        var limiter = new AdaptiveConcurrencyLimiter(1, 1, 10);
+        for (int i = 0; i < 20; i++) {
+            limiter.submit(1, () -> Single.just(1)).blockingGet();
+        }
+        assertTrue(limiter.getLimit() > 1);
+        assertTrue(limiter.getThroughput() > 0);
+    }
+
+    @Test
+    @DisplayName("failures cut the limit")
+    void testMultiplicativeDecrease() {
+        var limiter = new AdaptiveConcurrencyLimiter(8, 1, 10);
+        limiter.submit(1, () -> Single.error(new RuntimeException())).test().assertError(RuntimeException.class);
+        assertEquals(6, limiter.getLimit());
+    }
+
+    @Test
+    @DisplayName("failures from the same round only cut the limit once")
+    void testSingleCutPerRound() {
+        var limiter = new AdaptiveConcurrencyLimiter(8, 1, 10);
+        List<SingleSubject<Integer>> requests = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            var request = SingleSubject.<Integer>create();
+            requests.add(request);
+            limiter.submit(1, () -> request).test();
+        }
+        requests.forEach(it -> it.onError(new RuntimeException()));
+        assertEquals(6, limiter.getLimit());
+    }
+
+    @Test
+    @DisplayName("the limit never goes below the minimum")
+    void testMinimum() {
+        var limiter = new AdaptiveConcurrencyLimiter(2, 2, 10);
+        for (int i = 0; i < 5; i++) {
+            limiter.submit(1, () -> Single.error(new RuntimeException())).test();
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    @DisplayName("cancelling a queued request means it never starts")
+    void testCancelQueued() {
+        var limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        var started = new AtomicInteger(0);
+        var first = SingleSubject.<Integer>create();
+        limiter.submit(1, () -> first).test();
+        var queued = limiter.submit(1, () -> {
+            started.incrementAndGet();
+            return Single.just(1);
+        }).test();
+        queued.dispose();
+        first.onSuccess(1);
+        assertEquals(0, started.get());
+        assertEquals(0, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,43 @@
+package ploiu.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTests {
+    @Test
+    @DisplayName("everything that was added is found")
+    void testNoFalseNegatives() {
+        var filter = new BloomFilter(10_000, 0.01);
+        var random = new SplittableRandom(42);
+        var hashes = new long[10_000][2];
+        for (var hash : hashes) {
+            hash[0] = random.nextLong();
+            hash[1] = random.nextLong();
+            filter.add(hash[0], hash[1]);
+        }
+        for (var hash : hashes) {
+            assertTrue(filter.mightContain(hash[0], hash[1]));
+        }
+    }
+
+    @Test
+    @DisplayName("false positives stay close to the configured rate")
+    void testFalsePositiveRate() {
+        var filter = new BloomFilter(10_000, 0.01);
+        var random = new SplittableRandom(42);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add(random.nextLong(), random.nextLong());
+        }
+        var falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(random.nextLong(), random.nextLong())) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2_000, "expected about 1% false positives, got " + falsePositives / 1000.0 + "%");
+    }
+}
@@ -0,0 +1,87 @@
+package ploiu.util;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ploiu.model.FileApi;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonUtilsTests {
+
+    @Test
+    @DisplayName("every element of the array is emitted in order")
+    void testStreamArray() {
+        var json = "[{\"id\":1,\"name\":\"a\",\"tags\":[]},{\"id\":2,\"name\":\"b\",\"tags\":[],\"unknownField\":true}]";
+        var ids = JsonUtils.streamArray(stream(json), FileApi.class)
+                .map(FileApi::id)
+                .toList()
+                .blockingGet();
+        assertEquals(List.of(1L, 2L), ids);
+    }
+
+    @Test
+    @DisplayName("elements are only parsed as they're requested")
+    void testStreamArrayBackpressure() {
+        var json = "[{\"id\":1,\"name\":\"a\",\"tags\":[]},{\"id\":2,\"name\":\"b\",\"tags\":[]},{\"id\":3,\"name\":\"c\",\"tags\":[]}]";
+        var in = new CloseTrackingStream(json);
+        var subscriber = JsonUtils.streamArray(in, FileApi.class).test(1);
+        subscriber.assertValueCount(1).assertNotComplete();
+        subscriber.request(2);
+        subscriber.assertValueCount(3).assertNotComplete();
+        // the end of the array is only read once something asks for another element
+        subscriber.request(1);
+        subscriber.assertComplete();
+        assertTrue(in.closed);
+    }
+
+    @Test
+    @DisplayName("cancelling closes the stream")
+    void testStreamArrayCancelled() {
+        var in = new CloseTrackingStream("[{\"id\":1,\"name\":\"a\",\"tags\":[]},{\"id\":2,\"name\":\"b\",\"tags\":[]}]");
+        var subscriber = JsonUtils.streamArray(in, FileApi.class).test(1);
+        subscriber.cancel();
+        assertTrue(in.closed);
+    }
+
+    @Test
+    @DisplayName("an empty array completes without emitting anything")
+    void testStreamEmptyArray() {
+        JsonUtils.streamArray(stream("[]"), FileApi.class)
+                .test()
+                .assertNoValues()
+                .assertComplete();
+    }
+
+    @Test
+    @DisplayName("anything other than an array is an error")
+    void testStreamArrayNotArray() {
+        JsonUtils.streamArray(stream("{\"id\":1}"), FileApi.class)
+                .test()
+                .assertError(JsonParseException.class);
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class CloseTrackingStream extends ByteArrayInputStream {
+        boolean closed = false;
+
+        CloseTrackingStream(String json) {
+            super(json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ploiu.util;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ListReconcilerTests {
+    record Item(long id, String name) {
+    }
+
+    @Test
+    @DisplayName("a list that didn't change isn't touched")
+    void testNoChanges() {
+        var current = FXCollections.observableArrayList(new Item(1, "a"), new Item(2, "b"));
+        var events = countEvents(current);
+        var changes = ListReconciler.reconcile(current, List.of(new Item(1, "a"), new Item(2, "b")), Item::id);
+        assertTrue(changes.isEmpty());
+        assertEquals(0, events.size());
+    }
+
+    @Test
+    @DisplayName("items are added, removed, and replaced in place by key")
+    void testChanges() {
+        var current = FXCollections.observableArrayList(new Item(1, "a"), new Item(2, "b"), new Item(3, "c"));
+        var renamed = new Item(3, "renamed");
+        var added = new Item(4, "d");
+        var changes = ListReconciler.reconcile(current, List.of(new Item(1, "a"), renamed, added), Item::id);
+        assertEquals(new ListReconciler.Changes(1, 1, 1, 0), changes);
+        assertEquals(List.of(new Item(1, "a"), renamed, added), current);
+    }
+
+    @Test
+    @DisplayName("items that stay the same keep their instance, even when things around them change")
+    void testKeepsUnchangedItems() {
+        var kept = new Item(2, "b");
+        var current = new ArrayList<>(List.of(new Item(1, "a"), kept, new Item(3, "c")));
+        ListReconciler.reconcile(current, List.of(new Item(0, "new"), new Item(2, "b"), new Item(3, "c")), Item::id);
+        assertSame(kept, current.get(1));
+    }
+
+    @Test
+    @DisplayName("items are moved when the order changes")
+    void testMoves() {
+        var current = new ArrayList<>(List.of(new Item(1, "a"), new Item(2, "b"), new Item(3, "c")));
+        var next = List.of(new Item(3, "c"), new Item(1, "a"), new Item(2, "b"));
+        var changes = ListReconciler.reconcile(current, next, Item::id);
+        assertEquals(next, current);
+        assertEquals(1, changes.moved());
+    }
+
+    @Test
+    @DisplayName("any list can be turned into any other list")
+    void testRandom() {
+        var random = new Random(0);
+        for (int round = 0; round < 1000; round++) {
+            var current = randomItems(random);
+            var next = randomItems(random);
+            ListReconciler.reconcile(current, next, Item::id);
+            assertEquals(next, current);
+        }
+    }
+
+    private static List<Item> randomItems(Random random) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 0; id < 30; id++) {
+            ids.add(id);
+        }
+        Collections.shuffle(ids, random);
+        var items = new ArrayList<Item>();
+        for (var id : ids.subList(0, random.nextInt(20))) {
+            items.add(new Item(id, random.nextBoolean() ? "a" : "b"));
+        }
+        return items;
+    }
+
+    private static <T> List<ListChangeListener.Change<? extends T>> countEvents(ObservableList<T> list) {
+        List<ListChangeListener.Change<? extends T>> events = new ArrayList<>();
+        list.addListener((ListChangeListener<T>) events::add);
+        return events;
+    }
+}
@@ -0,0 +1,87 @@
+package ploiu.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongMapTests {
+    @Test
+    @DisplayName("put returns the value that was replaced")
+    void testPut() {
+        var map = new LongMap<String>();
+        assertNull(map.put(1, "a"));
+        assertEquals("a", map.put(1, "b"));
+        assertEquals("b", map.get(1));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    @DisplayName("0 and negative keys work like any other key")
+    void testZeroAndNegativeKeys() {
+        var map = new LongMap<String>();
+        map.put(0, "zero");
+        map.put(-1, "negative");
+        map.put(Long.MIN_VALUE, "min");
+        assertEquals("zero", map.get(0));
+        assertEquals("negative", map.get(-1));
+        assertEquals("min", map.get(Long.MIN_VALUE));
+        assertNull(map.get(1));
+    }
+
+    @Test
+    @DisplayName("null values are rejected, since they'd look like an empty slot")
+    void testNullValue() {
+        var map = new LongMap<String>();
+        assertThrows(NullPointerException.class, () -> map.put(1, null));
+    }
+
+    @Test
+    @DisplayName("computeIfAbsent only makes a value when there isn't one")
+    void testComputeIfAbsent() {
+        var map = new LongMap<String>();
+        assertEquals("1", map.computeIfAbsent(1, String::valueOf));
+        assertEquals("1", map.computeIfAbsent(1, key -> fail("shouldn't make a new value")));
+    }
+
+    @Test
+    @DisplayName("keys can be removed while going through a copy of them")
+    void testRemoveWhileIterating() {
+        var map = new LongMap<String>();
+        for (int i = 0; i < 100; i++) {
+            map.put(i, String.valueOf(i));
+        }
+        for (var key : map.keys()) {
+            if (key % 2 == 0) {
+                map.remove(key);
+            }
+        }
+        assertEquals(50, map.size());
+        assertArrayEquals(new long[]{1, 3, 5, 7, 9}, Arrays.stream(map.keys()).sorted().limit(5).toArray());
+    }
+
+    @Test
+    @DisplayName("behaves the same as a HashMap through random puts and removes")
+    void testMatchesHashMap() {
+        var random = new SplittableRandom(42);
+        var map = new LongMap<Long>();
+        var expected = new HashMap<Long, Long>();
+        for (int i = 0; i < 100_000; i++) {
+            // a small key range so the same keys are hit over and over, which is where removing can break probing
+            long key = random.nextInt(1_000);
+            switch (random.nextInt(3)) {
+                case 0 -> assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+                case 1 -> assertEquals(expected.remove(key), map.remove(key));
+                default -> assertEquals(expected.get(key), map.get(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (var entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ploiu.util;
+
+import javafx.scene.image.WritableImage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.testfx.framework.junit5.ApplicationExtension;
+import ploiu.model.FileApi;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(ApplicationExtension.class)
+class PreviewCacheTests {
+    // a 10x10 preview takes up 400 bytes
+    static final long PREVIEW_BYTES = 400;
+
+    @Test
+    @DisplayName("a preview is only returned for the version of the file it was stored for")
+    void testVersioned() {
+        var cache = new PreviewCache(10_000);
+        var image = new WritableImage(10, 10);
+        cache.put(file(1, "2024-01-01"), image);
+        assertSame(image, cache.get(file(1, "2024-01-01")));
+        assertNull(cache.get(file(1, "2024-02-01")));
+        assertNull(cache.get(file(2, "2024-01-01")));
+    }
+
+    @Test
+    @DisplayName("the least recently used previews are dropped once their pixels go over budget")
+    void testEvictsByBytes() {
+        var cache = new PreviewCache(PREVIEW_BYTES * 2);
+        cache.put(file(1, "a"), new WritableImage(10, 10));
+        cache.put(file(2, "a"), new WritableImage(10, 10));
+        // makes 2 the least recently used
+        cache.get(file(1, "a"));
+        cache.put(file(3, "a"), new WritableImage(10, 10));
+        assertNotNull(cache.get(file(1, "a")));
+        assertNull(cache.get(file(2, "a")));
+        assertNotNull(cache.get(file(3, "a")));
+        assertEquals(PREVIEW_BYTES * 2, cache.getStats().bytes());
+        assertEquals(1, cache.getStats().evictions());
+    }
+
+    @Test
+    @DisplayName("a file known not to have a preview stays that way until it changes")
+    void testMissing() {
+        var cache = new PreviewCache(10_000);
+        cache.putMissing(file(1, "a"));
+        assertTrue(cache.isMissing(file(1, "a")));
+        assertNull(cache.get(file(1, "a")));
+        assertFalse(cache.isMissing(file(1, "b")));
+        assertFalse(cache.isMissing(file(2, "a")));
+        cache.put(file(1, "a"), new WritableImage(10, 10));
+        assertFalse(cache.isMissing(file(1, "a")));
+    }
+
+    @Test
+    @DisplayName("a file known not to have a preview is asked about again after a while, in case the server has made one since")
+    void testMissingExpires() {
+        var now = new AtomicLong(0);
+        var cache = new PreviewCache(10_000, now::get);
+        cache.putMissing(file(1, "a"));
+        now.set(Duration.ofSeconds(59).toNanos());
+        assertTrue(cache.isMissing(file(1, "a")));
+        now.set(Duration.ofMinutes(1).toNanos());
+        assertFalse(cache.isMissing(file(1, "a")));
+        assertEquals(0, cache.getStats().bytes());
+    }
+
+    @Test
+    @DisplayName("hits and misses are counted")
+    void testStats() {
+        var cache = new PreviewCache(10_000);
+        cache.put(file(1, "a"), new WritableImage(10, 10));
+        cache.get(file(1, "a"));
+        cache.get(file(1, "a"));
+        cache.get(file(1, "a"));
+        cache.get(file(2, "a"));
+        var stats = cache.getStats();
+        assertEquals(3, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(0.75, stats.hitRate());
+    }
+
+    private static FileApi file(long id, String dateCreated) {
+        return new FileApi(id, "test.png", List.of(), 0L, 0L, dateCreated, null);
+    }
+}
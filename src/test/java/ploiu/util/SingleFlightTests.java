@@ -0,0 +1,91 @@
+package ploiu.util;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.subjects.SingleSubject;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTests {
+
+    @Test
+    @DisplayName("concurrent calls with the same key share 1 request")
+    void testConcurrentCallsShareRequest() {
+        var flight = new SingleFlight<Long, String>();
+        var calls = new AtomicInteger(0);
+        var response = SingleSubject.<String>create();
+        var first = flight.get(1L, () -> {
+            calls.incrementAndGet();
+            return response;
+        }).test();
+        var second = flight.get(1L, () -> {
+            calls.incrementAndGet();
+            return response;
+        }).test();
+        response.onSuccess("folder");
+        first.assertValue("folder");
+        second.assertValue("folder");
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    @DisplayName("different keys don't share requests")
+    void testDifferentKeys() {
+        var flight = new SingleFlight<Long, String>();
+        var calls = new AtomicInteger(0);
+        var response = SingleSubject.<String>create();
+        flight.get(1L, () -> counted(calls, response)).test();
+        flight.get(2L, () -> counted(calls, response)).test();
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    @DisplayName("a completed request is not re-used without a ttl")
+    void testCompletedRequestNotReused() {
+        var flight = new SingleFlight<Long, String>();
+        var calls = new AtomicInteger(0);
+        flight.get(1L, () -> counted(calls, Single.just("a"))).blockingGet();
+        flight.get(1L, () -> counted(calls, Single.just("b"))).test().assertValue("b");
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    @DisplayName("a completed request is re-used while within its ttl")
+    void testTtl() {
+        var flight = new SingleFlight<String, String>();
+        var calls = new AtomicInteger(0);
+        flight.get("disk", Duration.ofMinutes(1), () -> counted(calls, Single.just("a"))).blockingGet();
+        flight.get("disk", Duration.ofMinutes(1), () -> counted(calls, Single.just("b"))).test().assertValue("a");
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    @DisplayName("a write stops later calls from joining an earlier request")
+    void testWriteInvalidates() {
+        var flight = new SingleFlight<String, String>();
+        var calls = new AtomicInteger(0);
+        var stale = SingleSubject.<String>create();
+        flight.get("disk", Duration.ofMinutes(1), () -> counted(calls, stale)).test();
+        SingleFlight.writeCompleted();
+        flight.get("disk", Duration.ofMinutes(1), () -> counted(calls, Single.just("fresh"))).test().assertValue("fresh");
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    @DisplayName("errors are not handed to later calls")
+    void testErrorsNotCached() {
+        var flight = new SingleFlight<Long, String>();
+        assertThrows(IllegalStateException.class, () -> flight.get(1L, Duration.ofMinutes(1), () -> Single.<String>error(new IllegalStateException())).blockingGet());
+        flight.get(1L, Duration.ofMinutes(1), () -> Single.just("ok")).test().assertValue("ok");
+    }
+
+    private static Single<String> counted(AtomicInteger calls, Single<String> response) {
+        calls.incrementAndGet();
+        return response;
+    }
+}
@@ -0,0 +1,72 @@
+package ploiu.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTests {
+    static final long SECOND = 1_000_000_000L;
+    final AtomicLong now = new AtomicLong(0);
+
+    @Test
+    @DisplayName("up to 1 second's worth of bytes go through without waiting")
+    void testBurst() {
+        var bucket = new TokenBucket(1000, now::get);
+        assertEquals(0, bucket.reserve(600));
+        assertEquals(0, bucket.reserve(400));
+        // the bucket is empty, so the next 500 bytes have to wait half a second
+        assertEquals(SECOND / 2, bucket.reserve(500));
+    }
+
+    @Test
+    @DisplayName("tokens refill over time, but never past 1 second's worth")
+    void testRefill() {
+        var bucket = new TokenBucket(1000, now::get);
+        bucket.reserve(1000);
+        now.addAndGet(SECOND / 4);
+        assertEquals(0, bucket.reserve(250));
+        now.addAndGet(10 * SECOND);
+        assertEquals(0, bucket.reserve(1000));
+        assertEquals(SECOND / 1000, bucket.reserve(1));
+    }
+
+    @Test
+    @DisplayName("a rate of 0 never waits")
+    void testUnlimited() {
+        var bucket = new TokenBucket(0, now::get);
+        assertEquals(0, bucket.reserve(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    @DisplayName("changing the rate applies to the next reservation")
+    void testSetRate() {
+        var bucket = new TokenBucket(1000, now::get);
+        bucket.reserve(1000);
+        bucket.setRate(2000);
+        assertEquals(SECOND / 2, bucket.reserve(1000));
+        bucket.setRate(0);
+        assertEquals(0, bucket.reserve(1_000_000));
+        // going back to limited starts with a full bucket
+        bucket.setRate(100);
+        assertEquals(0, bucket.reserve(100));
+        assertEquals(SECOND, bucket.reserve(100));
+    }
+
+    @Test
+    @DisplayName("the effective rate is what actually went through in the last second")
+    void testEffectiveRate() {
+        var bucket = new TokenBucket(0, now::get);
+        bucket.reserve(300);
+        now.addAndGet(SECOND / 2);
+        bucket.reserve(200);
+        now.addAndGet(SECOND / 2);
+        // ends the first window
+        bucket.reserve(0);
+        assertEquals(500, bucket.getEffectiveRate());
+        now.addAndGet(5 * SECOND);
+        assertEquals(0, bucket.getEffectiveRate());
+    }
+}